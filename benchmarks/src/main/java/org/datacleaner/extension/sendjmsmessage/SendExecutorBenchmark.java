@@ -0,0 +1,112 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks sending on a fixed pool of platform threads
+ * ({@link AsyncSendPipeline}) against sending on a thread per message
+ * ({@link VirtualThreadSendExecutor}), for a broker with a given latency. The
+ * latency is simulated by a send which blocks for that long, as the latency of
+ * an embedded broker cannot be set. Run it on Java 21 or later to use virtual
+ * threads, on older JVMs the executor falls back to platform threads.
+ *
+ * Both run at most {@link #MAX_IN_FLIGHT} sends at a time, the pipeline with
+ * that many sender threads, so that only the kind of thread differs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SendExecutorBenchmark {
+
+    public enum ExecutorType {
+        PLATFORM_THREADS, VIRTUAL_THREADS
+    }
+
+    private static final int MESSAGES_PER_INVOCATION = 1000;
+    private static final int MAX_IN_FLIGHT = 256;
+
+    @Param({ "PLATFORM_THREADS", "VIRTUAL_THREADS" })
+    ExecutorType executorType;
+
+    @Param({ "1", "10", "100" })
+    long latencyMillis;
+
+    private AsyncSendPipeline _pipeline;
+    private VirtualThreadSendExecutor _executor;
+
+    @Setup
+    public void setup() {
+        final AsyncSendPipeline.MessageHandler handler = new AsyncSendPipeline.MessageHandler() {
+            @Override
+            public void handle(String messageBody, String correlationId) {
+                try {
+                    // a blocking send, waiting for the broker to acknowledge
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final SendMessageCallback callback = new SendMessageCallback() {
+            @Override
+            public void onSuccess(String correlationId) {
+            }
+
+            @Override
+            public void onFailure(SendMessageToJMSQueueResult failure) {
+            }
+        };
+        switch (executorType) {
+        case VIRTUAL_THREADS:
+            _executor = new VirtualThreadSendExecutor(MAX_IN_FLIGHT, handler, callback);
+            break;
+        default:
+            _pipeline = new AsyncSendPipeline(MAX_IN_FLIGHT, MAX_IN_FLIGHT, handler, callback);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (_pipeline != null) {
+            _pipeline.close();
+        }
+        if (_executor != null) {
+            _executor.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES_PER_INVOCATION)
+    public void send() {
+        for (int i = 0; i < MESSAGES_PER_INVOCATION; i++) {
+            final String id = "benchmark-" + i;
+            if (_pipeline != null) {
+                _pipeline.submit("benchmark", id);
+            } else {
+                _executor.submit("benchmark", id);
+            }
+        }
+        if (_pipeline != null) {
+            _pipeline.awaitCompletion();
+        } else {
+            _executor.awaitCompletion();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link JMSMessageSender#sendMessage(String, String, String, String)}
+ * against an embedded, non-persistent broker on the vm:// transport, with
+ * different numbers of sending threads and producer tuning presets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendMessageBenchmark {
+
+    public enum SenderType {
+        CAMEL, DIRECT
+    }
+
+    private static final String BROKER_NAME = "benchmark";
+    private static final String BROKER_URL = "vm://" + BROKER_NAME + "?create=false";
+    private static final String QUEUE_NAME = "benchmark.queue";
+
+    @Param({ "CAMEL", "DIRECT" })
+    SenderType senderType;
+
+    @Param({ "100", "10000" })
+    int messageSize;
+
+    @Param({ "CUSTOM", "THROUGHPUT", "SAFETY" })
+    TuningPreset tuningPreset;
+
+    private BrokerService _broker;
+    private Connection _consumerConnection;
+    private JMSMessageSender _sender;
+    private String _messageBody;
+
+    @Setup
+    public void setup() throws Exception {
+        _broker = new BrokerService();
+        _broker.setBrokerName(BROKER_NAME);
+        _broker.setPersistent(false);
+        _broker.setUseJmx(false);
+        _broker.start();
+        _broker.waitUntilStarted();
+
+        // drain the queue, so that producer flow control does not kick in
+        _consumerConnection = new ActiveMQConnectionFactory(BROKER_URL).createConnection();
+        final Session session = _consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MessageConsumer consumer = session.createConsumer(session.createQueue(QUEUE_NAME));
+        consumer.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message) {
+            }
+        });
+        _consumerConnection.start();
+
+        final ProducerTuning tuning = new ProducerTuning().withPreset(tuningPreset);
+        switch (senderType) {
+        case DIRECT:
+            _sender = new JMSDirectMessageSender(BROKER_URL, QUEUE_NAME, null,
+                    Collections.<String, Object> emptyMap(), tuning);
+            break;
+        default:
+            _sender = new JMSMessageToQueueSender(BROKER_URL, QUEUE_NAME, null,
+                    Collections.<String, Object> emptyMap(), tuning);
+        }
+
+        final StringBuilder body = new StringBuilder(messageSize);
+        while (body.length() < messageSize) {
+            body.append("lorem ipsum ");
+        }
+        body.setLength(messageSize);
+        _messageBody = body.toString();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        _sender.close();
+        _consumerConnection.close();
+        _broker.stop();
+        _broker.waitUntilStopped();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SendMessageToJMSQueueResult send1Thread() {
+        return send();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SendMessageToJMSQueueResult send4Threads() {
+        return send();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public SendMessageToJMSQueueResult send16Threads() {
+        return send();
+    }
+
+    private SendMessageToJMSQueueResult send() {
+        return _sender.sendMessage(BROKER_URL, QUEUE_NAME, _messageBody, "benchmark-id");
+    }
+}
@@ -0,0 +1,108 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks rendering of message bodies from a template, for different
+ * template sizes, field counts and value types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateRenderingBenchmark {
+
+    public enum ValueType {
+        STRING, INTEGER, DECIMAL, DATE
+    }
+
+    @Param({ "5", "40" })
+    int fieldCount;
+
+    @Param({ "1000", "100000" })
+    int templateSize;
+
+    @Param({ "STRING", "INTEGER", "DECIMAL", "DATE" })
+    ValueType valueType;
+
+    @Param({ "true", "false" })
+    boolean includeTemplateAsHeader;
+
+    private SendMessageToJMSQueueAnalyzer _analyzer;
+    private String _templateString;
+    private String[] _keys;
+    private List<Object> _values;
+    private MessageTemplate _compiledTemplate;
+
+    @Setup
+    public void setup() {
+        _keys = new String[fieldCount];
+        _values = new ArrayList<Object>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            _keys[i] = "$field" + i + "$";
+            _values.add(createValue(i));
+        }
+
+        // spread the fields evenly over an XML-like template of the requested size
+        final int fillerLength = Math.max(0, templateSize / fieldCount - 20);
+        final StringBuilder filler = new StringBuilder(fillerLength);
+        while (filler.length() < fillerLength) {
+            filler.append("lorem ipsum ");
+        }
+        filler.setLength(fillerLength);
+
+        final StringBuilder template = new StringBuilder(templateSize);
+        template.append("<record>");
+        for (int i = 0; i < fieldCount; i++) {
+            template.append("<f").append(i).append('>').append(_keys[i]).append("</f").append(i).append('>');
+            template.append("<!--").append(filler).append("-->");
+        }
+        template.append("</record>");
+        _templateString = template.toString();
+
+        _analyzer = new SendMessageToJMSQueueAnalyzer();
+        _analyzer.includeTemplateAsHeader = includeTemplateAsHeader;
+        _compiledTemplate = MessageTemplate.compile(_templateString, _keys);
+    }
+
+    private Object createValue(int i) {
+        switch (valueType) {
+        case INTEGER:
+            return Integer.valueOf(1000000 + i);
+        case DECIMAL:
+            return new BigDecimal("12345.67").add(BigDecimal.valueOf(i));
+        case DATE:
+            return new Date(1400000000000L + i * 86400000L);
+        default:
+            return "value number " + i;
+        }
+    }
+
+    @Benchmark
+    public String buildMessageBodyFromTemplate() {
+        return _analyzer.buildMessageBodyFromTemplate(_templateString, _keys, _values);
+    }
+
+    @Benchmark
+    public String buildMessageBodyFromCompiledTemplate() {
+        return _analyzer.buildMessageBody(_compiledTemplate, _values);
+    }
+}
@@ -0,0 +1,140 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of sends in flight, adapting the limit to the latency
+ * observed at the broker in the style of AIMD: the limit grows steadily per
+ * round of sends while latency stays close to the lowest latency seen, and is
+ * halved when a send fails or takes considerably longer. Optionally the number
+ * of sends per second is capped as well.
+ */
+public class AdaptiveSendLimiter {
+
+    private static final double INITIAL_LIMIT = 10;
+    // a send taking longer than this multiple of the baseline latency is a sign of congestion
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BACKOFF_RATIO = 0.5;
+    // lets the baseline follow latency which increases for good, e.g. larger messages
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int _maxLimit;
+    private final boolean _adaptive;
+    private final long _sendIntervalNanos;
+    private double _limit;
+    private int _inFlight;
+    private long _baselineNanos;
+    private long _lastBackoffNanos;
+    private long _nextSendNanos;
+    private long _throttledNanos;
+
+    /**
+     * Constructor
+     *
+     * @param maxLimit
+     *            the max number of sends in flight
+     * @param adaptive
+     *            whether to adapt the limit to the broker latency, or to
+     *            always allow the max number of sends in flight
+     * @param maxSendsPerSecond
+     *            the max number of sends per second, or 0 for no limit
+     */
+    public AdaptiveSendLimiter(int maxLimit, boolean adaptive, int maxSendsPerSecond) {
+        _maxLimit = maxLimit;
+        _adaptive = adaptive;
+        _sendIntervalNanos = maxSendsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxSendsPerSecond : 0;
+        _limit = adaptive ? Math.min(INITIAL_LIMIT, maxLimit) : maxLimit;
+        _baselineNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * Waits until a send is allowed. Every call which returns normally must be
+     * followed by a call to {@link #release(long, boolean)}.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        final long startNanos = System.nanoTime();
+        final long waitNanos;
+        synchronized (this) {
+            while (_inFlight >= (int) _limit) {
+                wait();
+            }
+            _inFlight++;
+
+            final long now = System.nanoTime();
+            if (_sendIntervalNanos > 0) {
+                // reserves the next free slot at the max rate
+                final long sendNanos = Math.max(now, _nextSendNanos);
+                _nextSendNanos = sendNanos + _sendIntervalNanos;
+                waitNanos = sendNanos - now;
+            } else {
+                waitNanos = 0;
+            }
+            _throttledNanos += now - startNanos + waitNanos;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                // the caller does not release a send which was not acquired
+                synchronized (this) {
+                    _inFlight--;
+                    notifyAll();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Releases a send, adapting the limit to its outcome.
+     *
+     * @param sendNanos
+     *            the time the send took
+     * @param successful
+     */
+    public synchronized void release(long sendNanos, boolean successful) {
+        // the limit is only raised while it is actually used
+        final boolean limited = _inFlight * 2 >= _limit;
+        _inFlight--;
+        if (_adaptive) {
+            if (successful && sendNanos < _baselineNanos) {
+                _baselineNanos = sendNanos;
+            } else if (successful) {
+                _baselineNanos += (long) ((sendNanos - _baselineNanos) * BASELINE_DRIFT);
+            }
+
+            final long now = System.nanoTime();
+            if (!successful || sendNanos > _baselineNanos * LATENCY_TOLERANCE) {
+                // sends which started before the last backoff do not back off again
+                if (_lastBackoffNanos == 0 || now - _lastBackoffNanos > sendNanos) {
+                    _limit = Math.max(1, _limit * BACKOFF_RATIO);
+                    _lastBackoffNanos = now;
+                }
+            } else if (limited) {
+                // about half a send more in flight per round of sends
+                _limit = Math.min(_maxLimit, _limit + 1 / _limit);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the current number of sends allowed in flight.
+     *
+     * @return
+     */
+    public synchronized int getLimit() {
+        return (int) _limit;
+    }
+
+    /**
+     * Returns the total time sends had to wait for the limits.
+     *
+     * @return
+     */
+    public synchronized long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(_throttledNanos);
+    }
+}
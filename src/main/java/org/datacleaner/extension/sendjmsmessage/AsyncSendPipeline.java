@@ -0,0 +1,223 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pipeline which decouples rendering of messages from sending them. Messages
+ * are put on a bounded queue which is drained by a pool of sender threads.
+ * Submitting only blocks when the queue is full.
+ *
+ * When ordered by key, every sender thread drains a queue of its own, a lane,
+ * and messages go to the lane chosen by a hash of their correlation ID. The
+ * messages of an ID are then sent one at a time in the order they were
+ * submitted, while messages of different IDs are sent in parallel.
+ */
+public class AsyncSendPipeline {
+
+    /**
+     * Handler which sends a message and records its result.
+     */
+    public interface MessageHandler {
+
+        public void handle(String messageBody, String correlationId);
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSendPipeline.class);
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final List<BlockingQueue<String[]>> _lanes;
+    private final MessageHandler _handler;
+    private final SendMessageCallback _callback;
+    private final Thread[] _senderThreads;
+    private final AtomicInteger _inFlightCount;
+    private final Object _completionLock = new Object();
+    private volatile boolean _closed;
+
+    /**
+     * Constructor
+     *
+     * @param threadCount
+     *            the number of sender threads
+     * @param queueCapacity
+     *            the max number of messages waiting to be sent
+     * @param handler
+     *            the handler sending each message
+     * @param callback
+     *            callback for messages where the handler failed unexpectedly
+     */
+    public AsyncSendPipeline(int threadCount, int queueCapacity, MessageHandler handler, SendMessageCallback callback) {
+        this(threadCount, queueCapacity, false, handler, callback);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threadCount
+     *            the number of sender threads
+     * @param queueCapacity
+     *            the max number of messages waiting to be sent, split evenly
+     *            over the lanes when ordered by key
+     * @param orderedByKey
+     *            whether to send the messages of a correlation ID in order,
+     *            on a lane of their own
+     * @param handler
+     *            the handler sending each message
+     * @param callback
+     *            callback for messages where the handler failed unexpectedly
+     */
+    public AsyncSendPipeline(int threadCount, int queueCapacity, boolean orderedByKey, MessageHandler handler,
+            SendMessageCallback callback) {
+        _lanes = new ArrayList<BlockingQueue<String[]>>(threadCount);
+        if (orderedByKey) {
+            final int laneCapacity = Math.max(1, queueCapacity / threadCount);
+            for (int i = 0; i < threadCount; i++) {
+                _lanes.add(new ArrayBlockingQueue<String[]>(laneCapacity));
+            }
+        } else {
+            _lanes.add(new ArrayBlockingQueue<String[]>(queueCapacity));
+        }
+        _handler = handler;
+        _callback = callback;
+        _inFlightCount = new AtomicInteger();
+        _senderThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final BlockingQueue<String[]> queue = _lanes.get(i % _lanes.size());
+            _senderThreads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain(queue);
+                }
+            }, "AsyncSendPipeline-sender-" + (i + 1));
+            _senderThreads[i].setDaemon(true);
+            _senderThreads[i].start();
+        }
+    }
+
+    /**
+     * Submits a message for sending. Blocks while the queue is full.
+     *
+     * @param messageBody
+     * @param correlationId
+     */
+    public void submit(String messageBody, String correlationId) {
+        if (_closed) {
+            throw new IllegalStateException("Pipeline is closed");
+        }
+        _inFlightCount.incrementAndGet();
+        try {
+            _lanes.get(getLaneIndex(correlationId)).put(new String[] { messageBody, correlationId });
+        } catch (InterruptedException e) {
+            completed();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to submit message", e);
+        }
+    }
+
+    /**
+     * Returns the lane of a correlation ID.
+     *
+     * @param correlationId
+     * @return
+     */
+    int getLaneIndex(String correlationId) {
+        if (_lanes.size() == 1 || correlationId == null) {
+            return 0;
+        }
+        final int hash = correlationId.hashCode();
+        // mix the high bits into the low bits which pick the lane
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % _lanes.size();
+    }
+
+    /**
+     * Returns the number of messages submitted but not yet sent.
+     *
+     * @return
+     */
+    public int getInFlightCount() {
+        return _inFlightCount.get();
+    }
+
+    /**
+     * Returns the number of messages waiting for a sender thread.
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (BlockingQueue<String[]> lane : _lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Waits until all submitted messages have been sent.
+     */
+    public void awaitCompletion() {
+        synchronized (_completionLock) {
+            while (_inFlightCount.get() > 0) {
+                try {
+                    _completionLock.wait(POLL_TIMEOUT_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for messages to be sent", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until all submitted messages have been sent and stops the sender
+     * threads.
+     */
+    public void close() {
+        awaitCompletion();
+        _closed = true;
+        for (Thread thread : _senderThreads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void drain(BlockingQueue<String[]> queue) {
+        while (!_closed) {
+            final String[] message;
+            try {
+                message = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (message != null) {
+                try {
+                    _handler.handle(message[0], message[1]);
+                } catch (Throwable e) {
+                    // also errors, so that the lane keeps running
+                    LOGGER.warn("Sending message '{}' failed unexpectedly", message[1], e);
+                    _callback.onFailure(SendMessageToJMSQueueResult.failure(message[1], e));
+                } finally {
+                    completed();
+                }
+            }
+        }
+    }
+
+    private void completed() {
+        if (_inFlightCount.decrementAndGet() == 0) {
+            synchronized (_completionLock) {
+                _completionLock.notifyAll();
+            }
+        }
+    }
+}
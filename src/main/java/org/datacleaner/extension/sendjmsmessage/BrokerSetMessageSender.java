@@ -0,0 +1,355 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends messages to a set of brokers which all serve the same queue. Each
+ * message goes to a broker picked at random, weighted by the inverse of its
+ * recent send latency, so faster brokers receive more messages.
+ *
+ * A broker which fails a number of consecutive sends is taken out of rotation
+ * by its own {@link CircuitBreaker}, until a trial send succeeds. A failed send
+ * is handed to the next broker, so every call returns exactly one result.
+ * Brokers which could not be connected to are probed in the background until
+ * they can.
+ *
+ * Connected brokers are not probed: a broker which becomes unhealthy is only
+ * detected by failing sends, and only a trial send of an actual message puts
+ * it back into rotation.
+ */
+public class BrokerSetMessageSender implements JMSMessageSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrokerSetMessageSender.class);
+
+    // weight of the latest send in the moving average latency
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // keeps weights finite for brokers which have not been sent to yet
+    private static final long BASE_LATENCY_MICROS = 100;
+    // failures are often fast, they must not make a broker look fast
+    private static final long FAILURE_LATENCY_MICROS = 1000000;
+    private static final long PROBE_TERMINATION_SECONDS = 60;
+
+    /**
+     * Factory for the sender of a single broker.
+     */
+    public interface SenderFactory {
+
+        public JMSMessageSender createSender(String brokerUrl) throws Exception;
+    }
+
+    private final Member[] _members;
+    private final SenderFactory _senderFactory;
+    private final ScheduledExecutorService _prober;
+    private final AtomicInteger _failoverCount;
+    private boolean _closed;
+
+    /**
+     * Constructor
+     *
+     * @param brokerUrls
+     * @param senderFactory
+     * @param failureThreshold
+     *            the number of consecutive failures which takes a broker out
+     *            of rotation
+     * @param ejectionMillis
+     *            the time a broker is out of rotation before a trial send
+     * @param probeIntervalMillis
+     *            the interval of connection attempts to brokers which could
+     *            not be connected to
+     * @throws Exception
+     *             if none of the brokers could be connected to
+     */
+    public BrokerSetMessageSender(String[] brokerUrls, SenderFactory senderFactory, int failureThreshold,
+            long ejectionMillis, long probeIntervalMillis) throws Exception {
+        _senderFactory = senderFactory;
+        _failoverCount = new AtomicInteger();
+        _members = new Member[brokerUrls.length];
+
+        Exception connectError = null;
+        boolean connected = false;
+        for (int i = 0; i < brokerUrls.length; i++) {
+            _members[i] = new Member(brokerUrls[i], new CircuitBreaker(failureThreshold, ejectionMillis));
+            try {
+                _members[i].sender = senderFactory.createSender(brokerUrls[i]);
+                connected = true;
+            } catch (Exception e) {
+                LOGGER.warn("Could not connect to broker {}, will retry in the background", brokerUrls[i], e);
+                connectError = e;
+            }
+        }
+        if (!connected) {
+            throw connectError;
+        }
+
+        _prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "BrokerSetMessageSender-probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        _prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                probeDisconnectedMembers();
+            }
+        }, probeIntervalMillis, probeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void probeDisconnectedMembers() {
+        for (Member member : _members) {
+            if (member.sender == null) {
+                final JMSMessageSender sender;
+                try {
+                    sender = _senderFactory.createSender(member.brokerUrl);
+                } catch (Exception e) {
+                    LOGGER.debug("Broker {} is still unavailable", member.brokerUrl, e);
+                    continue;
+                }
+                synchronized (this) {
+                    if (!_closed) {
+                        member.sender = sender;
+                        LOGGER.info("Connected to broker {}, adding it to the rotation", member.brokerUrl);
+                        continue;
+                    }
+                }
+                // the set was closed while connecting
+                closeQuietly(sender, member.brokerUrl);
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The broker url argument is ignored in favor of the brokers of the set.
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(final String brokerUrl, final String jmsQueueName,
+            final String messageBody, final String correlationId) {
+        return send(new Attempt() {
+            @Override
+            public SendMessageToJMSQueueResult send(Member member) {
+                return member.sender.sendMessage(member.brokerUrl, jmsQueueName, messageBody, correlationId);
+            }
+        }, correlationId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(final String messageBody, final String correlationId,
+            final Map<String, Object> properties) {
+        return send(new Attempt() {
+            @Override
+            public SendMessageToJMSQueueResult send(Member member) {
+                return member.sender.sendMessage(messageBody, correlationId, properties);
+            }
+        }, correlationId);
+    }
+
+    private SendMessageToJMSQueueResult send(Attempt attempt, String correlationId) {
+        SendMessageToJMSQueueResult lastFailure = null;
+        final boolean[] tried = new boolean[_members.length];
+        for (int i = 0; i < _members.length; i++) {
+            final int index = pickMember(tried);
+            if (index == -1) {
+                break;
+            }
+            tried[index] = true;
+            final Member member = _members[index];
+            // may be refused if another thread is making the trial send
+            if (!member.circuitBreaker.allowRequest()) {
+                continue;
+            }
+            if (lastFailure != null) {
+                _failoverCount.incrementAndGet();
+            }
+
+            final long sendStartNanos = System.nanoTime();
+            SendMessageToJMSQueueResult result;
+            try {
+                result = attempt.send(member);
+            } catch (RuntimeException e) {
+                result = SendMessageToJMSQueueResult.failure(correlationId, e);
+            }
+            if (result.isSuccessful()) {
+                member.recordSuccess(sendStartNanos);
+                return result;
+            }
+            member.recordFailure(sendStartNanos);
+            lastFailure = result;
+        }
+        if (lastFailure != null) {
+            return lastFailure;
+        }
+        return SendMessageToJMSQueueResult.failure(correlationId, new CircuitBreakerOpenException(
+                "All brokers are unavailable"));
+    }
+
+    /**
+     * Picks a connected member which is in rotation and has not been tried
+     * yet, weighted by the inverse of its latency.
+     *
+     * @param tried
+     * @return the index of the member, or -1 if there is none
+     */
+    private int pickMember(boolean[] tried) {
+        final double[] weights = new double[_members.length];
+        double totalWeight = 0;
+        for (int i = 0; i < _members.length; i++) {
+            final Member member = _members[i];
+            if (!tried[i] && member.sender != null && member.circuitBreaker.getRemainingOpenMillis() == 0) {
+                weights[i] = 1d / (BASE_LATENCY_MICROS + member.latencyMicros);
+                totalWeight += weights[i];
+            }
+        }
+        if (totalWeight == 0) {
+            return -1;
+        }
+        double random = ThreadLocalRandom.current().nextDouble(totalWeight);
+        int last = -1;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] > 0) {
+                last = i;
+                random -= weights[i];
+                if (random < 0) {
+                    return i;
+                }
+            }
+        }
+        // rounding
+        return last;
+    }
+
+    /**
+     * Returns the number of sends which were handed to another broker after a
+     * failure.
+     *
+     * @return
+     */
+    public int getFailoverCount() {
+        return _failoverCount.get();
+    }
+
+    /**
+     * Returns the statistics of each broker.
+     *
+     * @return
+     */
+    public List<DestinationStatistics> getBrokerStatistics() {
+        final List<DestinationStatistics> statistics = new ArrayList<DestinationStatistics>(_members.length);
+        for (Member member : _members) {
+            statistics.add(new DestinationStatistics(member.brokerUrl, member.successCount.get(), member.failureCount
+                    .get(), member.sendTimes.snapshot()));
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops probing and closes the senders of all brokers.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void close() throws Exception {
+        synchronized (this) {
+            // a probe which is connecting closes its sender itself
+            _closed = true;
+        }
+        _prober.shutdownNow();
+        try {
+            _prober.awaitTermination(PROBE_TERMINATION_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Exception error = null;
+        for (Member member : _members) {
+            if (member.sender != null) {
+                try {
+                    member.sender.close();
+                } catch (Exception e) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static void closeQuietly(JMSMessageSender sender, String brokerUrl) {
+        try {
+            sender.close();
+        } catch (Exception e) {
+            LOGGER.debug("Closing sender of broker {} failed", brokerUrl, e);
+        }
+    }
+
+    /**
+     * A send to a single broker.
+     */
+    private interface Attempt {
+
+        public SendMessageToJMSQueueResult send(Member member);
+    }
+
+    /**
+     * A broker of the set, with its health.
+     */
+    private static final class Member {
+
+        final String brokerUrl;
+        final CircuitBreaker circuitBreaker;
+        final AtomicInteger successCount = new AtomicInteger();
+        final AtomicInteger failureCount = new AtomicInteger();
+        final LatencyHistogram sendTimes = new LatencyHistogram();
+        volatile JMSMessageSender sender;
+        // updated without synchronization, a lost update only skews the average slightly
+        volatile long latencyMicros;
+
+        Member(String brokerUrl, CircuitBreaker circuitBreaker) {
+            this.brokerUrl = brokerUrl;
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        void recordSuccess(long sendStartNanos) {
+            circuitBreaker.recordSuccess();
+            successCount.incrementAndGet();
+            recordLatency(sendStartNanos);
+        }
+
+        void recordFailure(long sendStartNanos) {
+            circuitBreaker.recordFailure();
+            failureCount.incrementAndGet();
+            recordLatency(sendStartNanos, FAILURE_LATENCY_MICROS);
+        }
+
+        private void recordLatency(long sendStartNanos) {
+            recordLatency(sendStartNanos, 0);
+        }
+
+        private void recordLatency(long sendStartNanos, long minWeightedMicros) {
+            final long micros = (System.nanoTime() - sendStartNanos) / 1000;
+            sendTimes.recordMicros(micros);
+            final long weightedMicros = Math.max(micros, minWeightedMicros);
+            latencyMicros = (long) (LATENCY_SMOOTHING * weightedMicros + (1 - LATENCY_SMOOTHING) * latencyMicros);
+        }
+    }
+}
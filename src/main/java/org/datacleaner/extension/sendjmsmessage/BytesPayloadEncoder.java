@@ -0,0 +1,245 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+/**
+ * Encodes message bodies into the payload of a {@link BytesMessage}. Bodies
+ * larger than a threshold are compressed with the zlib format of
+ * {@link Deflater}. The {@link #CODEC_PROPERTY} and {@link #CHARSET_PROPERTY}
+ * message properties tell consumers how to decode the payload.
+ *
+ * Deflaters and their buffers are kept in a bounded pool rather than per
+ * thread, so that sending on a thread per message neither creates a deflater
+ * per message nor leaves the native memory of deflaters to the finalizer.
+ */
+public class BytesPayloadEncoder {
+
+    public static final String CODEC_PROPERTY = "SendJMSMessageCodec";
+    public static final String CHARSET_PROPERTY = "SendJMSMessageCharset";
+    public static final String CODEC_NONE = "none";
+    public static final String CODEC_DEFLATE = "deflate";
+
+    private final String _encoding;
+    private final int _compressionThreshold;
+    private final byte[] _prefix;
+    static final int MAX_POOLED_COMPRESSORS = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final BlockingQueue<Compressor> _compressors;
+    private final AtomicLong _originalBytes;
+    private final AtomicLong _encodedBytes;
+
+    /**
+     * Constructor
+     *
+     * @param encoding
+     *            the character encoding of the payload
+     * @param compressionThreshold
+     *            the payload size in bytes above which payloads are compressed,
+     *            or a negative number to never compress
+     */
+    public BytesPayloadEncoder(String encoding, int compressionThreshold) {
+        this(encoding, compressionThreshold, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param encoding
+     *            the character encoding of the payload
+     * @param compressionThreshold
+     *            the payload size in bytes above which payloads are compressed,
+     *            or a negative number to never compress
+     * @param prefix
+     *            text to put in front of every message body, or null. It is
+     *            encoded only once.
+     */
+    public BytesPayloadEncoder(String encoding, int compressionThreshold, String prefix) {
+        _encoding = encoding;
+        _compressionThreshold = compressionThreshold;
+        _prefix = prefix == null ? new byte[0] : getBytes(prefix, encoding);
+        _compressors = new ArrayBlockingQueue<Compressor>(MAX_POOLED_COMPRESSORS);
+        _originalBytes = new AtomicLong();
+        _encodedBytes = new AtomicLong();
+    }
+
+    /**
+     * Encodes a message body.
+     *
+     * @param messageBody
+     * @return
+     */
+    public Payload encode(String messageBody) {
+        final byte[] bodyBytes = getBytes(messageBody, _encoding);
+        if (_prefix.length == 0) {
+            return encode(bodyBytes);
+        }
+        final byte[] bytes = new byte[_prefix.length + bodyBytes.length];
+        System.arraycopy(_prefix, 0, bytes, 0, _prefix.length);
+        System.arraycopy(bodyBytes, 0, bytes, _prefix.length, bodyBytes.length);
+        return encode(bytes);
+    }
+
+    private static byte[] getBytes(String str, String encoding) {
+        try {
+            return str.getBytes(encoding);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Unsupported encoding: " + encoding, e);
+        }
+    }
+
+    /**
+     * Encodes a message body which has already been converted to bytes with
+     * the encoding of this encoder. The prefix is not added.
+     *
+     * @param bytes
+     * @return
+     */
+    public Payload encode(byte[] bytes) {
+        _originalBytes.addAndGet(bytes.length);
+        if (_compressionThreshold >= 0 && bytes.length > _compressionThreshold) {
+            final byte[] compressed = compress(bytes);
+            if (compressed.length < bytes.length) {
+                _encodedBytes.addAndGet(compressed.length);
+                return new Payload(compressed, CODEC_DEFLATE);
+            }
+        }
+        _encodedBytes.addAndGet(bytes.length);
+        return new Payload(bytes, CODEC_NONE);
+    }
+
+    private byte[] compress(byte[] bytes) {
+        Compressor compressor = _compressors.poll();
+        if (compressor == null) {
+            compressor = new Compressor();
+        }
+        try {
+            return compressor.compress(bytes);
+        } finally {
+            if (!_compressors.offer(compressor)) {
+                // the pool is full, release the native memory right away
+                compressor.end();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of idle deflaters in the pool.
+     *
+     * @return
+     */
+    int getPooledCompressorCount() {
+        return _compressors.size();
+    }
+
+    /**
+     * Creates a {@link BytesMessage} with the encoded message body.
+     *
+     * @param session
+     * @param messageBody
+     * @return
+     * @throws JMSException
+     */
+    public BytesMessage createMessage(Session session, String messageBody) throws JMSException {
+        final Payload payload = encode(messageBody);
+        final BytesMessage message = session.createBytesMessage();
+        message.writeBytes(payload.getBytes());
+        message.setStringProperty(CODEC_PROPERTY, payload.getCodec());
+        message.setStringProperty(CHARSET_PROPERTY, _encoding);
+        return message;
+    }
+
+    /**
+     * Creates the message headers describing an encoded payload, for senders
+     * which do not create the JMS message themselves.
+     *
+     * @param payload
+     * @param correlationId
+     * @return
+     */
+    public Map<String, Object> createHeaders(Payload payload, String correlationId) {
+        final Map<String, Object> headers = new HashMap<String, Object>();
+        headers.put("JMSCorrelationID", correlationId);
+        headers.put(CODEC_PROPERTY, payload.getCodec());
+        headers.put(CHARSET_PROPERTY, _encoding);
+        return headers;
+    }
+
+    /**
+     * Returns the total size of all message bodies before compression.
+     *
+     * @return
+     */
+    public long getOriginalBytes() {
+        return _originalBytes.get();
+    }
+
+    /**
+     * Returns the total size of all encoded payloads.
+     *
+     * @return
+     */
+    public long getEncodedBytes() {
+        return _encodedBytes.get();
+    }
+
+    /**
+     * A deflater and the buffer it compresses into, used by one thread at a
+     * time.
+     */
+    private static final class Compressor {
+
+        private final Deflater _deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] _buffer = new byte[8192];
+
+        public byte[] compress(byte[] bytes) {
+            _deflater.reset();
+            _deflater.setInput(bytes);
+            _deflater.finish();
+            int length = 0;
+            while (!_deflater.finished()) {
+                if (length == _buffer.length) {
+                    _buffer = Arrays.copyOf(_buffer, _buffer.length * 2);
+                }
+                length += _deflater.deflate(_buffer, length, _buffer.length - length);
+            }
+            return Arrays.copyOf(_buffer, length);
+        }
+
+        public void end() {
+            _deflater.end();
+        }
+    }
+
+    /**
+     * An encoded payload and the codec it was encoded with.
+     */
+    public static final class Payload {
+
+        private final byte[] _bytes;
+        private final String _codec;
+
+        public Payload(byte[] bytes, String codec) {
+            _bytes = bytes;
+            _codec = codec;
+        }
+
+        public byte[] getBytes() {
+            return _bytes;
+        }
+
+        public String getCodec() {
+            return _codec;
+        }
+    }
+}
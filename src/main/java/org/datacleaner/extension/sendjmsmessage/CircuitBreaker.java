@@ -0,0 +1,120 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Circuit breaker around the broker. After a number of consecutive failures
+ * the circuit opens and requests are refused for a while. Once that time has
+ * passed a single trial request is allowed, which closes the circuit if it
+ * succeeds or opens it again if it fails.
+ */
+public class CircuitBreaker {
+
+    private final int _failureThreshold;
+    private final long _openMillis;
+    private final AtomicInteger _consecutiveFailures;
+    private final AtomicBoolean _trialInProgress;
+    private final AtomicInteger _openCount;
+    private volatile long _openUntilMillis;
+
+    /**
+     * Constructor
+     * 
+     * @param failureThreshold
+     *            the number of consecutive failures which opens the circuit,
+     *            or 0 to never open it
+     * @param openMillis
+     *            the time the circuit stays open before a trial request is
+     *            allowed
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        _failureThreshold = failureThreshold;
+        _openMillis = openMillis;
+        _consecutiveFailures = new AtomicInteger();
+        _trialInProgress = new AtomicBoolean();
+        _openCount = new AtomicInteger();
+    }
+
+    /**
+     * Determines if a request may be sent to the broker.
+     * 
+     * @return
+     */
+    public boolean allowRequest() {
+        final long openUntilMillis = _openUntilMillis;
+        if (openUntilMillis == 0) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntilMillis) {
+            return false;
+        }
+        // half open, let a single trial request through
+        return _trialInProgress.compareAndSet(false, true);
+    }
+
+    /**
+     * Records a successful request, which closes the circuit.
+     */
+    public void recordSuccess() {
+        if (_consecutiveFailures.get() != 0) {
+            _consecutiveFailures.set(0);
+        }
+        if (_openUntilMillis != 0) {
+            synchronized (this) {
+                _openUntilMillis = 0;
+                _trialInProgress.set(false);
+            }
+        }
+    }
+
+    /**
+     * Records a failed request.
+     */
+    public synchronized void recordFailure() {
+        if (_failureThreshold <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (_openUntilMillis != 0) {
+            if (now >= _openUntilMillis) {
+                // the trial request failed
+                open(now);
+            }
+            return;
+        }
+        if (_consecutiveFailures.incrementAndGet() >= _failureThreshold) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        _openUntilMillis = now + _openMillis;
+        _consecutiveFailures.set(0);
+        _trialInProgress.set(false);
+        _openCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the time until a trial request will be allowed, or 0 if the
+     * circuit is not open.
+     * 
+     * @return
+     */
+    public long getRemainingOpenMillis() {
+        final long openUntilMillis = _openUntilMillis;
+        if (openUntilMillis == 0) {
+            return 0;
+        }
+        return Math.max(0, openUntilMillis - System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the number of times the circuit has been opened.
+     * 
+     * @return
+     */
+    public int getOpenCount() {
+        return _openCount.get();
+    }
+}
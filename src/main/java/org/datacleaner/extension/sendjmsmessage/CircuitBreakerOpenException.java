@@ -0,0 +1,19 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+/**
+ * Exception for messages which were not sent because the circuit breaker
+ * around the broker was open.
+ */
+public class CircuitBreakerOpenException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor
+     * 
+     * @param message
+     */
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,21 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+/**
+ * Live state of the connection pool of a sender, for monitoring.
+ */
+public interface ConnectionPoolState {
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return
+     */
+    public int getConnectionCount();
+
+    /**
+     * Returns the number of open sessions, each with a producer.
+     *
+     * @return
+     */
+    public int getOpenSessionCount();
+}
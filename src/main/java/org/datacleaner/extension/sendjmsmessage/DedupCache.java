@@ -0,0 +1,214 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Bounded cache of the rows which have been sent, keyed on the row ID and a
+ * hash of the rendered message body, so that a re-run can skip the rows which
+ * were already sent.
+ *
+ * Each row is stored as a 64 bit fingerprint: a 32 bit hash of the ID and a 32
+ * bit hash of the body. Fingerprints are kept in buckets of a fixed size,
+ * chosen by the ID hash, and the least recently used fingerprint of a full
+ * bucket is evicted. Memory use is therefore fixed at 8 bytes per entry,
+ * however many rows are sent. Evicted rows are sent again, and a row is only
+ * skipped wrongly if both hashes collide.
+ */
+public class DedupCache {
+
+    private static final int MAGIC = 0x44445031;
+    private static final int BUCKET_SIZE = 8;
+    private static final int LOCK_STRIPES = 1024;
+    private static final long EMPTY = 0;
+
+    // murmur3 is defined independently of the JVM, so fingerprints can be persisted
+    private static final HashFunction ID_HASH = Hashing.murmur3_32(1);
+    private static final HashFunction BODY_HASH = Hashing.murmur3_32(2);
+
+    private final long[] _entries;
+    private final int _bucketCount;
+    private final Object[] _locks;
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries
+     *            the max number of rows to remember
+     */
+    public DedupCache(int maxEntries) {
+        _bucketCount = Math.max(1, maxEntries / BUCKET_SIZE);
+        _entries = new long[_bucketCount * BUCKET_SIZE];
+        _locks = new Object[Math.min(LOCK_STRIPES, _bucketCount)];
+        for (int i = 0; i < _locks.length; i++) {
+            _locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Creates a cache with the entries of a file saved by {@link #save(File)},
+     * or an empty cache if the file does not exist.
+     *
+     * @param file
+     * @param maxEntries
+     *            the max number of rows to remember, which may differ from
+     *            the size of the saved cache
+     * @return
+     * @throws IOException
+     */
+    public static DedupCache load(File file, int maxEntries) throws IOException {
+        final DedupCache cache = new DedupCache(maxEntries);
+        if (!file.exists()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a dedup cache file: " + file);
+            }
+            final int entryCount = in.readInt();
+            if (entryCount == cache._entries.length) {
+                for (int i = 0; i < entryCount; i++) {
+                    cache._entries[i] = in.readLong();
+                }
+            } else {
+                final long[] bucket = new long[BUCKET_SIZE];
+                for (int i = 0; i < entryCount / BUCKET_SIZE; i++) {
+                    for (int j = 0; j < BUCKET_SIZE; j++) {
+                        bucket[j] = in.readLong();
+                    }
+                    // least recently used first, so that the most recently used entries are kept
+                    for (int j = BUCKET_SIZE - 1; j >= 0; j--) {
+                        if (bucket[j] != EMPTY) {
+                            cache.mark(bucket[j]);
+                        }
+                    }
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Saves the entries of the cache to a file. The file is replaced only once
+     * it is completely written. Rows should not be marked while saving.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        final File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(_entries.length);
+            for (long entry : _entries) {
+                out.writeLong(entry);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace dedup cache file: " + file);
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not rename dedup cache file: " + tempFile);
+        }
+    }
+
+    /**
+     * Remembers a row, unless it is remembered already.
+     *
+     * @param id
+     * @param messageBody
+     * @return true if the row was not remembered yet, false if it is a
+     *         duplicate
+     */
+    public boolean markIfAbsent(String id, String messageBody) {
+        final long bodyHash = BODY_HASH.hashString(messageBody, StandardCharsets.UTF_8).asInt() & 0xFFFFFFFFL;
+        long entry = ((long) getIdHash(id) << 32) | bodyHash;
+        if (entry == EMPTY) {
+            entry = 1;
+        }
+        return mark(entry);
+    }
+
+    private boolean mark(long entry) {
+        final int bucket = getBucket((int) (entry >>> 32));
+        final int start = bucket * BUCKET_SIZE;
+        synchronized (_locks[bucket % _locks.length]) {
+            // entries are kept in order of use, the last one is evicted from a full bucket
+            int index = BUCKET_SIZE - 1;
+            boolean found = false;
+            for (int i = 0; i < BUCKET_SIZE; i++) {
+                final long existing = _entries[start + i];
+                if (existing == entry) {
+                    index = i;
+                    found = true;
+                    break;
+                }
+                if (existing == EMPTY) {
+                    index = i;
+                    break;
+                }
+            }
+            System.arraycopy(_entries, start, _entries, start + 1, index);
+            _entries[start] = entry;
+            return !found;
+        }
+    }
+
+    /**
+     * Forgets all rows with an ID, e.g. because sending one of them failed.
+     * Rows of other IDs with the same hash may be forgotten as well, so they
+     * are sent again.
+     *
+     * @param id
+     */
+    public void forget(String id) {
+        final int idHash = getIdHash(id);
+        final int bucket = getBucket(idHash);
+        final int start = bucket * BUCKET_SIZE;
+        synchronized (_locks[bucket % _locks.length]) {
+            int kept = 0;
+            for (int i = 0; i < BUCKET_SIZE; i++) {
+                final long existing = _entries[start + i];
+                if (existing != EMPTY && (int) (existing >>> 32) != idHash) {
+                    _entries[start + kept] = existing;
+                    kept++;
+                }
+            }
+            for (int i = kept; i < BUCKET_SIZE; i++) {
+                _entries[start + i] = EMPTY;
+            }
+        }
+    }
+
+    /**
+     * Returns the max number of rows the cache remembers.
+     *
+     * @return
+     */
+    public int getCapacity() {
+        return _entries.length;
+    }
+
+    private static int getIdHash(String id) {
+        if (id == null) {
+            return 0;
+        }
+        return ID_HASH.hashString(id, StandardCharsets.UTF_8).asInt();
+    }
+
+    private int getBucket(int idHash) {
+        // spreads ID hashes which only differ in their high bits
+        final int mixed = idHash * 0x9E3779B1;
+        return ((mixed ^ (mixed >>> 16)) & Integer.MAX_VALUE) % _bucketCount;
+    }
+}
@@ -0,0 +1,50 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.Serializable;
+
+/**
+ * Send statistics of a single destination, e.g. a shard of a
+ * {@link ShardedMessageSender}.
+ */
+public class DestinationStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String _name;
+    private final int _successCount;
+    private final int _failureCount;
+    private final LatencyHistogram.Snapshot _sendTimes;
+
+    /**
+     * Constructor
+     * 
+     * @param name
+     * @param successCount
+     *            the number of successful send attempts
+     * @param failureCount
+     *            the number of failed send attempts
+     * @param sendTimes
+     */
+    public DestinationStatistics(String name, int successCount, int failureCount, LatencyHistogram.Snapshot sendTimes) {
+        _name = name;
+        _successCount = successCount;
+        _failureCount = failureCount;
+        _sendTimes = sendTimes;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public int getSuccessCount() {
+        return _successCount;
+    }
+
+    public int getFailureCount() {
+        return _failureCount;
+    }
+
+    public LatencyHistogram.Snapshot getSendTimes() {
+        return _sendTimes;
+    }
+}
@@ -0,0 +1,136 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Packs rendered rows into envelopes, so that several rows can be sent as a
+ * single JMS message. Each worker thread fills its own envelope, which is
+ * handed to an {@link EnvelopeHandler} once it holds the max number of rows or
+ * would grow beyond the max size.
+ */
+public class EnvelopeAggregator {
+
+    /**
+     * Message property holding the number of rows in an envelope.
+     */
+    public static final String ROW_COUNT_PROPERTY = "SendJMSMessageRowCount";
+
+    /**
+     * Message property holding the row identifiers of an envelope, in order,
+     * separated by newlines.
+     */
+    public static final String ROW_IDS_PROPERTY = "SendJMSMessageRowIds";
+
+    /**
+     * Handler which sends a full envelope.
+     */
+    public interface EnvelopeHandler {
+
+        public void sendEnvelope(String envelopeBody, List<String> rowIds);
+    }
+
+    private final String _header;
+    private final String _rowSeparator;
+    private final String _footer;
+    private final int _maxRows;
+    private final int _maxChars;
+    private final EnvelopeHandler _handler;
+    private final Collection<Envelope> _envelopes;
+    private final ThreadLocal<Envelope> _threadEnvelope;
+
+    /**
+     * Constructor
+     *
+     * @param header
+     *            text at the start of each envelope
+     * @param rowSeparator
+     *            text between rows
+     * @param footer
+     *            text at the end of each envelope
+     * @param maxRows
+     *            the max number of rows per envelope
+     * @param maxChars
+     *            the size in characters which an envelope should not exceed,
+     *            unless it holds only a single row
+     * @param handler
+     */
+    public EnvelopeAggregator(String header, String rowSeparator, String footer, int maxRows, int maxChars,
+            EnvelopeHandler handler) {
+        _header = header == null ? "" : header;
+        _rowSeparator = rowSeparator == null ? "" : rowSeparator;
+        _footer = footer == null ? "" : footer;
+        _maxRows = maxRows;
+        _maxChars = maxChars;
+        _handler = handler;
+        _envelopes = new ConcurrentLinkedQueue<Envelope>();
+        _threadEnvelope = new ThreadLocal<Envelope>() {
+            @Override
+            protected Envelope initialValue() {
+                final Envelope envelope = new Envelope();
+                _envelopes.add(envelope);
+                return envelope;
+            }
+        };
+    }
+
+    /**
+     * Adds a rendered row to the envelope of the current thread.
+     *
+     * @param rowBody
+     * @param rowId
+     */
+    public void add(String rowBody, String rowId) {
+        _threadEnvelope.get().add(rowBody, rowId);
+    }
+
+    /**
+     * Sends all partially filled envelopes.
+     */
+    public void flush() {
+        for (Envelope envelope : _envelopes) {
+            envelope.flush();
+        }
+    }
+
+    /**
+     * The envelope being filled by a single worker thread.
+     */
+    private final class Envelope {
+
+        private final StringBuilder _body = new StringBuilder();
+        private final List<String> _rowIds = new ArrayList<String>(_maxRows);
+
+        public synchronized void add(String rowBody, String rowId) {
+            if (!_rowIds.isEmpty()
+                    && _body.length() + _rowSeparator.length() + rowBody.length() + _footer.length() > _maxChars) {
+                flush();
+            }
+            if (_rowIds.isEmpty()) {
+                _body.append(_header);
+            } else {
+                _body.append(_rowSeparator);
+            }
+            _body.append(rowBody);
+            _rowIds.add(rowId);
+
+            if (_rowIds.size() >= _maxRows) {
+                flush();
+            }
+        }
+
+        public synchronized void flush() {
+            if (_rowIds.isEmpty()) {
+                return;
+            }
+            _body.append(_footer);
+            final String envelopeBody = _body.toString();
+            final List<String> rowIds = new ArrayList<String>(_rowIds);
+            _body.setLength(0);
+            _rowIds.clear();
+            _handler.sendEnvelope(envelopeBody, rowIds);
+        }
+    }
+}
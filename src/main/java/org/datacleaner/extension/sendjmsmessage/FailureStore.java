@@ -0,0 +1,569 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.metamodel.util.FileHelper;
+
+/**
+ * Memory bounded store of failed messages.
+ *
+ * Only the first few failures are kept with their full exception. For all
+ * other failures only the message identifier and a reference to a distinct
+ * error (exception class and message) is kept. Once more than a threshold of
+ * failures is held in memory, they are spilled to a temporary file. Failures
+ * are counted per exception class.
+ *
+ * The offset of every chunk of spilled failures is indexed, so that a page of
+ * failures can be read from any position without reading the failures before
+ * it.
+ *
+ * The temporary file is deleted by {@link #delete()}, or else once the store
+ * is no longer referenced, when the next store spills.
+ */
+public class FailureStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 10000;
+    public static final int DEFAULT_SAMPLE_COUNT = 10;
+    public static final String UNKNOWN_ERROR_TYPE = "(unknown)";
+
+    private static final int MAX_DISTINCT_ERRORS = 1000;
+    private static final int NO_ERROR = -1;
+    private static final int OTHER_ERROR = -2;
+    private static final int READ_CHUNK_SIZE = 1024;
+
+    private static final ReferenceQueue<FailureStore> UNREFERENCED_STORES = new ReferenceQueue<FailureStore>();
+    private static final Set<SpillFileReference> SPILL_FILE_REFERENCES = Collections
+            .synchronizedSet(new HashSet<SpillFileReference>());
+
+    private final int _memoryThreshold;
+    private final int _sampleCount;
+    private final List<SendMessageToJMSQueueResult> _samples;
+    private final Map<String, Integer> _errorTypeCounts;
+    private final List<String> _errorTypes;
+    private final List<String> _errorMessages;
+    private final Map<String, Integer> _errorIndexes;
+    private List<String> _memoryIds;
+    private int[] _memoryErrors;
+    private int _count;
+    private int _spilledCount;
+    private long _spilledBytes;
+    private long[] _chunkOffsets;
+
+    private transient File _spillFile;
+    private transient SpillFileReference _spillFileReference;
+    private transient DataOutputStream _spillOutput;
+
+    /**
+     * Creates a store with the default threshold and sample count.
+     */
+    public FailureStore() {
+        this(DEFAULT_MEMORY_THRESHOLD, DEFAULT_SAMPLE_COUNT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param memoryThreshold
+     *            the number of failures to keep in memory before spilling to
+     *            disk
+     * @param sampleCount
+     *            the number of failures to keep with their full exception
+     */
+    public FailureStore(int memoryThreshold, int sampleCount) {
+        _memoryThreshold = memoryThreshold;
+        _sampleCount = sampleCount;
+        _samples = new ArrayList<SendMessageToJMSQueueResult>(sampleCount);
+        _errorTypeCounts = new LinkedHashMap<String, Integer>();
+        _errorTypes = new ArrayList<String>();
+        _errorMessages = new ArrayList<String>();
+        _errorIndexes = new HashMap<String, Integer>();
+        _memoryIds = new ArrayList<String>();
+        _memoryErrors = new int[16];
+        _chunkOffsets = new long[16];
+    }
+
+    /**
+     * Adds a failure to the store.
+     *
+     * @param failure
+     */
+    public synchronized void add(SendMessageToJMSQueueResult failure) {
+        final Exception error = failure.getError();
+        final String errorType = getErrorType(failure);
+        final Integer typeCount = _errorTypeCounts.get(errorType);
+        _errorTypeCounts.put(errorType, typeCount == null ? 1 : typeCount + 1);
+
+        if (_samples.size() < _sampleCount) {
+            _samples.add(failure);
+        }
+
+        if (_memoryIds.size() == _memoryErrors.length) {
+            _memoryErrors = Arrays.copyOf(_memoryErrors, _memoryErrors.length * 2);
+        }
+        _memoryErrors[_memoryIds.size()] = errorIndex(error);
+        _memoryIds.add(failure.getMessageIdentifier());
+        _count++;
+
+        if (_memoryIds.size() >= _memoryThreshold) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns the error type of a failure: the class name of its exception,
+     * also when the exception has been replaced by a
+     * {@link FailureSummaryException}.
+     *
+     * @param failure
+     * @return
+     */
+    public static String getErrorType(SendMessageToJMSQueueResult failure) {
+        final Exception error = failure.getError();
+        if (error == null) {
+            return UNKNOWN_ERROR_TYPE;
+        }
+        if (error instanceof FailureSummaryException) {
+            return ((FailureSummaryException) error).getErrorType();
+        }
+        return error.getClass().getName();
+    }
+
+    private int errorIndex(Exception error) {
+        if (error == null) {
+            return NO_ERROR;
+        }
+        final String type = error.getClass().getName();
+        final String message = error.getMessage();
+        final String key = type + ':' + message;
+        final Integer index = _errorIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (_errorTypes.size() >= MAX_DISTINCT_ERRORS) {
+            return OTHER_ERROR;
+        }
+        _errorTypes.add(type);
+        _errorMessages.add(message);
+        _errorIndexes.put(key, _errorTypes.size() - 1);
+        return _errorTypes.size() - 1;
+    }
+
+    private void spill() {
+        try {
+            if (_spillFile == null) {
+                createSpillFile();
+            }
+            if (_spillOutput == null) {
+                // appends to the file, also when the store was sealed before
+                _spillOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_spillFile,
+                        true)));
+            }
+            for (int i = 0; i < _memoryIds.size(); i++) {
+                indexChunk(_spilledCount + i);
+                _spilledBytes += writeRecord(_spillOutput, _memoryIds.get(i), _memoryErrors[i]);
+            }
+            _spilledCount += _memoryIds.size();
+            _memoryIds = new ArrayList<String>();
+            _memoryErrors = new int[16];
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to spill failures to disk", e);
+        }
+    }
+
+    private void createSpillFile() throws IOException {
+        deleteUnreferencedSpillFiles();
+        _spillFile = File.createTempFile("sendjmsmessage-failures", ".dat");
+        _spillFile.deleteOnExit();
+        _spillFileReference = new SpillFileReference(this, _spillFile);
+        SPILL_FILE_REFERENCES.add(_spillFileReference);
+    }
+
+    private static void deleteUnreferencedSpillFiles() {
+        Reference<? extends FailureStore> reference;
+        while ((reference = UNREFERENCED_STORES.poll()) != null) {
+            SPILL_FILE_REFERENCES.remove(reference);
+            ((SpillFileReference) reference).getFile().delete();
+        }
+    }
+
+    private void indexChunk(int position) {
+        if (position % READ_CHUNK_SIZE == 0) {
+            final int chunk = position / READ_CHUNK_SIZE;
+            if (chunk == _chunkOffsets.length) {
+                _chunkOffsets = Arrays.copyOf(_chunkOffsets, _chunkOffsets.length * 2);
+            }
+            _chunkOffsets[chunk] = _spilledBytes;
+        }
+    }
+
+    private static int writeRecord(DataOutputStream out, String id, int errorIndex) throws IOException {
+        int length = 0;
+        if (id == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            length = bytes.length;
+        }
+        out.writeInt(errorIndex);
+        return 8 + length;
+    }
+
+    /**
+     * Returns the number of failures.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return _count;
+    }
+
+    /**
+     * Returns the number of failures per exception class name.
+     *
+     * @return
+     */
+    public synchronized Map<String, Integer> getErrorTypeCounts() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(_errorTypeCounts));
+    }
+
+    /**
+     * Returns the first failures, including their full exception.
+     *
+     * @return
+     */
+    public synchronized List<SendMessageToJMSQueueResult> getSamples() {
+        return Collections.unmodifiableList(new ArrayList<SendMessageToJMSQueueResult>(_samples));
+    }
+
+    /**
+     * Returns a read-only view of all failures. Failures which were not kept
+     * as samples carry a {@link FailureSummaryException} with the class name
+     * and message of the original exception.
+     *
+     * @return
+     */
+    public Collection<SendMessageToJMSQueueResult> asCollection() {
+        return new AbstractCollection<SendMessageToJMSQueueResult>() {
+            @Override
+            public Iterator<SendMessageToJMSQueueResult> iterator() {
+                return createIterator();
+            }
+
+            @Override
+            public int size() {
+                return FailureStore.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns a page of failures, like the failures of {@link #asCollection()}
+     * at the given positions.
+     *
+     * @param fromIndex
+     *            the position of the first failure of the page
+     * @param count
+     *            the max number of failures of the page
+     * @return
+     */
+    public List<SendMessageToJMSQueueResult> getPage(int fromIndex, int count) {
+        final Iterator<SendMessageToJMSQueueResult> it = createIterator(fromIndex);
+        final List<SendMessageToJMSQueueResult> page = new ArrayList<SendMessageToJMSQueueResult>(Math.max(0,
+                Math.min(count, size() - fromIndex)));
+        while (page.size() < count && it.hasNext()) {
+            page.add(it.next());
+        }
+        return page;
+    }
+
+    private Iterator<SendMessageToJMSQueueResult> createIterator() {
+        return createIterator(0);
+    }
+
+    private synchronized Iterator<SendMessageToJMSQueueResult> createIterator(int fromIndex) {
+        if (fromIndex < 0) {
+            throw new IndexOutOfBoundsException("Negative index: " + fromIndex);
+        }
+        if (_spillOutput != null) {
+            try {
+                _spillOutput.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to flush spilled failures", e);
+            }
+        }
+        final FailureIterator iterator = new FailureIterator(_spillFile, _spilledCount, new ArrayList<String>(
+                _memoryIds), Arrays.copyOf(_memoryErrors, _memoryIds.size()), getSamples());
+        if (fromIndex > 0) {
+            final int chunk = Math.min(fromIndex, _spilledCount) / READ_CHUNK_SIZE;
+            iterator.skipTo(fromIndex, chunk * READ_CHUNK_SIZE, chunk < _chunkOffsets.length ? _chunkOffsets[chunk]
+                    : _spilledBytes);
+        }
+        return iterator;
+    }
+
+    private synchronized SendMessageToJMSQueueResult toResult(String id, int errorIndex) {
+        switch (errorIndex) {
+        case NO_ERROR:
+            return SendMessageToJMSQueueResult.failure(id, null);
+        case OTHER_ERROR:
+            return SendMessageToJMSQueueResult.failure(id, new FailureSummaryException("(other)", null));
+        default:
+            return SendMessageToJMSQueueResult.failure(id, new FailureSummaryException(_errorTypes.get(errorIndex),
+                    _errorMessages.get(errorIndex)));
+        }
+    }
+
+    /**
+     * Closes the temporary file of spilled failures for writing, once the
+     * failures are complete, so that no file handle is held while they are
+     * only read. Failures added after all are appended to the file.
+     */
+    public synchronized void seal() {
+        if (_spillOutput != null) {
+            try {
+                _spillOutput.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to close spilled failures", e);
+            } finally {
+                _spillOutput = null;
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary file of spilled failures. The spilled failures
+     * cannot be read afterwards.
+     */
+    public synchronized void delete() {
+        FileHelper.safeClose(_spillOutput);
+        _spillOutput = null;
+        if (_spillFile != null) {
+            SPILL_FILE_REFERENCES.remove(_spillFileReference);
+            _spillFileReference = null;
+            _spillFile.delete();
+            _spillFile = null;
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        if (_spilledCount > 0 && _spillFile == null) {
+            throw new NotSerializableException("Spilled failures have been deleted");
+        }
+        out.defaultWriteObject();
+        if (_spilledCount > 0) {
+            // copy the spilled records into the stream, without materializing them
+            if (_spillOutput != null) {
+                _spillOutput.flush();
+            }
+            out.writeLong(_spillFile.length());
+            final InputStream in = new FileInputStream(_spillFile);
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                FileHelper.safeClose(in);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (_spilledCount > 0) {
+            long remaining = in.readLong();
+            createSpillFile();
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(_spillFile));
+            try {
+                final byte[] buffer = new byte[8192];
+                while (remaining > 0) {
+                    final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new IOException("Unexpected end of spilled failures");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            } finally {
+                FileHelper.safeClose(out);
+            }
+        }
+    }
+
+    /**
+     * Reference to a store with a temporary file, to delete the file once the
+     * store is no longer referenced.
+     */
+    private static final class SpillFileReference extends PhantomReference<FailureStore> {
+
+        private final File _file;
+
+        public SpillFileReference(FailureStore store, File file) {
+            super(store, UNREFERENCED_STORES);
+            _file = file;
+        }
+
+        public File getFile() {
+            return _file;
+        }
+    }
+
+    /**
+     * Iterates the spilled failures in chunks, followed by the failures in
+     * memory.
+     */
+    private class FailureIterator implements Iterator<SendMessageToJMSQueueResult> {
+
+        private final File _file;
+        private final int _fileCount;
+        private final List<String> _ids;
+        private final int[] _errors;
+        private final List<SendMessageToJMSQueueResult> _iteratorSamples;
+        private final List<String> _chunkIds = new ArrayList<String>(READ_CHUNK_SIZE);
+        private final List<Integer> _chunkErrors = new ArrayList<Integer>(READ_CHUNK_SIZE);
+        private long _fileOffset;
+        private int _fileRead;
+        private int _chunkIndex;
+        private int _memoryIndex;
+        private int _position;
+
+        public FailureIterator(File file, int fileCount, List<String> ids, int[] errors,
+                List<SendMessageToJMSQueueResult> samples) {
+            _file = file;
+            _fileCount = fileCount;
+            _ids = ids;
+            _errors = errors;
+            _iteratorSamples = samples;
+        }
+
+        /**
+         * Positions the iterator at a failure, starting from an indexed chunk
+         * of spilled failures.
+         *
+         * @param position
+         * @param chunkPosition
+         *            the position of the first failure of the chunk
+         * @param chunkOffset
+         *            the offset of the chunk in the file
+         */
+        public void skipTo(int position, int chunkPosition, long chunkOffset) {
+            _position = position;
+            if (position >= _fileCount) {
+                _fileRead = _fileCount;
+                _memoryIndex = Math.min(position - _fileCount, _ids.size());
+                return;
+            }
+            _fileRead = chunkPosition;
+            _fileOffset = chunkOffset;
+            readChunk();
+            _chunkIndex = position - chunkPosition;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return _chunkIndex < _chunkIds.size() || _fileRead < _fileCount || _memoryIndex < _ids.size();
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult next() {
+            final String id;
+            final int error;
+            if (_chunkIndex < _chunkIds.size() || _fileRead < _fileCount) {
+                if (_chunkIndex >= _chunkIds.size()) {
+                    readChunk();
+                }
+                id = _chunkIds.get(_chunkIndex);
+                error = _chunkErrors.get(_chunkIndex);
+                _chunkIndex++;
+            } else if (_memoryIndex < _ids.size()) {
+                id = _ids.get(_memoryIndex);
+                error = _errors[_memoryIndex];
+                _memoryIndex++;
+            } else {
+                throw new NoSuchElementException();
+            }
+
+            final int position = _position++;
+            if (position < _iteratorSamples.size()) {
+                // the samples are the first failures, with their full exception
+                return _iteratorSamples.get(position);
+            }
+            return toResult(id, error);
+        }
+
+        private void readChunk() {
+            _chunkIds.clear();
+            _chunkErrors.clear();
+            _chunkIndex = 0;
+            final DataInputStream in;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(_file)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read spilled failures", e);
+            }
+            try {
+                long skipped = 0;
+                while (skipped < _fileOffset) {
+                    skipped += in.skip(_fileOffset - skipped);
+                }
+                while (_chunkIds.size() < READ_CHUNK_SIZE && _fileRead < _fileCount) {
+                    final int length = in.readInt();
+                    if (length == -1) {
+                        _chunkIds.add(null);
+                    } else {
+                        final byte[] bytes = new byte[length];
+                        in.readFully(bytes);
+                        _chunkIds.add(new String(bytes, StandardCharsets.UTF_8));
+                    }
+                    _chunkErrors.add(in.readInt());
+                    _fileRead++;
+                    _fileOffset += 8 + Math.max(0, length);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read spilled failures", e);
+            } finally {
+                FileHelper.safeClose(in);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
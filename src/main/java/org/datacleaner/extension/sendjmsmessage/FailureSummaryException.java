@@ -0,0 +1,34 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+/**
+ * Lightweight stand-in for an exception of a failed message, which only
+ * retains the class name and message of the original exception.
+ */
+public class FailureSummaryException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String _errorType;
+
+    /**
+     * Constructor
+     * 
+     * @param errorType
+     *            the class name of the original exception
+     * @param message
+     *            the message of the original exception
+     */
+    public FailureSummaryException(String errorType, String message) {
+        super(message, null, false, false);
+        _errorType = errorType;
+    }
+
+    /**
+     * Returns the class name of the original exception.
+     * 
+     * @return
+     */
+    public String getErrorType() {
+        return _errorType;
+    }
+}
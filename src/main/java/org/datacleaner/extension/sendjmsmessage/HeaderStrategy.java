@@ -0,0 +1,52 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import org.apache.metamodel.util.HasName;
+
+/**
+ * Defines how consumers are told which template a message was rendered from,
+ * when the template is included as a header.
+ */
+public enum HeaderStrategy implements HasName {
+
+    /**
+     * The template text is prepended to every message body.
+     */
+    INLINE("Inline in every message"),
+
+    /**
+     * The template text is sent once as a header message when the job starts,
+     * and every message refers to it with the {@link #TEMPLATE_ID_PROPERTY}.
+     */
+    HEADER_MESSAGE("One-time header message"),
+
+    /**
+     * Every message refers to the template with the
+     * {@link #TEMPLATE_ID_PROPERTY} only.
+     */
+    TEMPLATE_ID("Template ID property");
+
+    /**
+     * Message property holding the ID of the template a message was rendered
+     * from.
+     */
+    public static final String TEMPLATE_ID_PROPERTY = "SendJMSMessageTemplateId";
+
+    /**
+     * Message property which is set to {@link #MESSAGE_TYPE_HEADER} on header
+     * messages.
+     */
+    public static final String MESSAGE_TYPE_PROPERTY = "SendJMSMessageType";
+
+    public static final String MESSAGE_TYPE_HEADER = "header";
+
+    private final String _name;
+
+    private HeaderStrategy(String name) {
+        _name = name;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+}
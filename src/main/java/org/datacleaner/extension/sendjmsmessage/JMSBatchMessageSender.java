@@ -0,0 +1,290 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation for sending JMS messages to a queue in batches. Each worker
+ * thread collects messages in its own transacted session, which is committed
+ * every time the batch size is reached, or when the oldest message of the batch
+ * has lingered for longer than the max linger time.
+ *
+ * Results are reported to a {@link SendMessageCallback} when a batch is
+ * committed or rolled back.
+ */
+public class JMSBatchMessageSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMSBatchMessageSender.class);
+
+    private final ThreadSessions<Batch> _batches;
+    private final BytesPayloadEncoder _payloadEncoder;
+    private final Map<String, Object> _messageProperties;
+    private final int _batchSize;
+    private final long _maxLingerMillis;
+    private final SendMessageCallback _callback;
+    private final ScheduledExecutorService _lingerScheduler;
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param batchSize
+     *            the number of messages per commit
+     * @param maxLingerMillis
+     *            the max time a message may wait for its batch to be
+     *            committed, or 0 to only commit full batches
+     * @param callback
+     * @throws JMSException
+     */
+    public JMSBatchMessageSender(String broker, String queueName, int batchSize, long maxLingerMillis,
+            SendMessageCallback callback) throws JMSException {
+        this(broker, queueName, batchSize, maxLingerMillis, null, callback);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param batchSize
+     *            the number of messages per commit
+     * @param maxLingerMillis
+     *            the max time a message may wait for its batch to be
+     *            committed, or 0 to only commit full batches
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @param callback
+     * @throws JMSException
+     */
+    public JMSBatchMessageSender(String broker, String queueName, int batchSize, long maxLingerMillis,
+            BytesPayloadEncoder payloadEncoder, SendMessageCallback callback) throws JMSException {
+        this(broker, queueName, batchSize, maxLingerMillis, payloadEncoder, Collections.<String, Object> emptyMap(),
+                callback);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param batchSize
+     *            the number of messages per commit
+     * @param maxLingerMillis
+     *            the max time a message may wait for its batch to be
+     *            committed, or 0 to only commit full batches
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @param callback
+     * @throws JMSException
+     */
+    public JMSBatchMessageSender(String broker, String queueName, int batchSize, long maxLingerMillis,
+            BytesPayloadEncoder payloadEncoder, Map<String, Object> messageProperties, SendMessageCallback callback)
+            throws JMSException {
+        this(broker, queueName, batchSize, maxLingerMillis, payloadEncoder, messageProperties, new ProducerTuning(),
+                callback);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param batchSize
+     *            the number of messages per commit
+     * @param maxLingerMillis
+     *            the max time a message may wait for its batch to be
+     *            committed, or 0 to only commit full batches
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @param tuning
+     *            settings for the connections and producers
+     * @param callback
+     * @throws JMSException
+     */
+    public JMSBatchMessageSender(String broker, String queueName, int batchSize, long maxLingerMillis,
+            BytesPayloadEncoder payloadEncoder, Map<String, Object> messageProperties, ProducerTuning tuning,
+            SendMessageCallback callback) throws JMSException {
+        _payloadEncoder = payloadEncoder;
+        _messageProperties = messageProperties;
+        _batchSize = batchSize;
+        _maxLingerMillis = maxLingerMillis;
+        _callback = callback;
+        _batches = new ThreadSessions<Batch>(broker, queueName, tuning, true) {
+            @Override
+            protected Batch createThreadSession() {
+                return new Batch(this);
+            }
+        };
+
+        if (maxLingerMillis > 0) {
+            final long period = Math.max(1, maxLingerMillis / 2);
+            _lingerScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "JMSBatchMessageSender-linger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            _lingerScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    final long now = System.currentTimeMillis();
+                    for (Batch batch : _batches.getAll()) {
+                        batch.commitIfLingering(now);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            _lingerScheduler = null;
+        }
+    }
+
+    /**
+     * Adds a message to the batch of the current thread. The batch is
+     * committed if it is full.
+     *
+     * @param messageBody
+     * @param correlationId
+     */
+    public void addMessage(String messageBody, String correlationId) {
+        _batches.get().add(messageBody, correlationId);
+    }
+
+    /**
+     * Commits all partial batches.
+     */
+    public void flush() {
+        for (Batch batch : _batches.getAll()) {
+            batch.commit();
+        }
+    }
+
+    /**
+     * Returns the live state of the connection pool of this sender.
+     *
+     * @return
+     */
+    public ConnectionPoolState getPoolState() {
+        return _batches;
+    }
+
+    /**
+     * Commits all partial batches and closes the JMS resources.
+     *
+     * @throws Exception
+     */
+    public void close() throws Exception {
+        if (_lingerScheduler != null) {
+            _lingerScheduler.shutdownNow();
+        }
+        _batches.close();
+    }
+
+    private Message createMessage(Session session, String messageBody) throws JMSException {
+        if (_payloadEncoder == null) {
+            return session.createTextMessage(messageBody);
+        }
+        return _payloadEncoder.createMessage(session, messageBody);
+    }
+
+    /**
+     * The messages of a single worker thread which are not yet committed.
+     */
+    private final class Batch extends ThreadSession {
+
+        private final List<String> _correlationIds = new ArrayList<String>(_batchSize);
+        private long _firstMessageMillis;
+
+        public Batch(ThreadSessions<Batch> threadSessions) {
+            super(threadSessions);
+        }
+
+        public synchronized void add(String messageBody, String correlationId) {
+            if (_correlationIds.isEmpty()) {
+                _firstMessageMillis = System.currentTimeMillis();
+            }
+            _correlationIds.add(correlationId);
+            try {
+                final Message message = createMessage(getSession(), messageBody);
+                message.setJMSCorrelationID(correlationId);
+                setProperties(message, _messageProperties);
+                send(message);
+            } catch (JMSException e) {
+                rollback(e);
+                return;
+            }
+
+            if (_correlationIds.size() >= _batchSize) {
+                commit();
+            }
+        }
+
+        public synchronized void commitIfLingering(long now) {
+            if (!_correlationIds.isEmpty() && now - _firstMessageMillis >= _maxLingerMillis) {
+                commit();
+            }
+        }
+
+        public synchronized void commit() {
+            if (_correlationIds.isEmpty()) {
+                return;
+            }
+            try {
+                getSession().commit();
+            } catch (JMSException e) {
+                rollback(e);
+                return;
+            }
+            LOGGER.debug("Committed batch of {} messages", _correlationIds.size());
+            for (String correlationId : _correlationIds) {
+                _callback.onSuccess(correlationId);
+            }
+            _correlationIds.clear();
+        }
+
+        @Override
+        public synchronized void close() {
+            commit();
+            closeSession();
+        }
+
+        private void rollback(Exception error) {
+            LOGGER.warn("Rolling back batch of {} messages", _correlationIds.size(), error);
+            if (isOpen()) {
+                try {
+                    getSession().rollback();
+                } catch (JMSException e) {
+                    LOGGER.debug("Rollback failed", e);
+                }
+            }
+            // the session may be broken, start over with a new one
+            closeSession();
+            for (String correlationId : _correlationIds) {
+                _callback.onFailure(SendMessageToJMSQueueResult.failure(correlationId, error));
+            }
+            _correlationIds.clear();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation for sending JMS messages to a queue directly through the JMS
+ * API, without a Camel route in between. Each worker thread keeps its own
+ * {@link Session} and producer for the lifetime of the sender.
+ * The sessions are spread over the connections of the pool.
+ */
+public class JMSDirectMessageSender implements JMSMessageSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JMSDirectMessageSender.class);
+
+    private final ThreadSessions<ThreadProducer> _threadSessions;
+    private final BytesPayloadEncoder _payloadEncoder;
+    private final Map<String, Object> _messageProperties;
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @throws JMSException
+     */
+    public JMSDirectMessageSender(String broker, String queueName) throws JMSException {
+        this(broker, queueName, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @throws JMSException
+     */
+    public JMSDirectMessageSender(String broker, String queueName, BytesPayloadEncoder payloadEncoder)
+            throws JMSException {
+        this(broker, queueName, payloadEncoder, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @throws JMSException
+     */
+    public JMSDirectMessageSender(String broker, String queueName, BytesPayloadEncoder payloadEncoder,
+            Map<String, Object> messageProperties) throws JMSException {
+        this(broker, queueName, payloadEncoder, messageProperties, new ProducerTuning());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @param tuning
+     *            settings for the connections and producers
+     * @throws JMSException
+     */
+    public JMSDirectMessageSender(String broker, String queueName, BytesPayloadEncoder payloadEncoder,
+            Map<String, Object> messageProperties, ProducerTuning tuning) throws JMSException {
+        _payloadEncoder = payloadEncoder;
+        _messageProperties = messageProperties;
+        _threadSessions = new ThreadSessions<ThreadProducer>(broker, queueName, tuning, false) {
+            @Override
+            protected ThreadProducer createThreadSession() {
+                return new ThreadProducer(this);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+            String correlationId) {
+        LOGGER.debug("Broker URL {}, jmsQueueName {}, messageBody {}, correlationId {}", brokerUrl, jmsQueueName,
+                messageBody, correlationId);
+        return sendMessage(messageBody, correlationId, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+            Map<String, Object> properties) {
+        try {
+            _threadSessions.get().send(messageBody, correlationId, properties);
+            return SendMessageToJMSQueueResult.success();
+        } catch (JMSException e) {
+            return SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+    }
+
+    /**
+     * Returns the live state of the connection pool of this sender.
+     *
+     * @return
+     */
+    public ConnectionPoolState getPoolState() {
+        return _threadSessions;
+    }
+
+    /**
+     * Close the sessions and the connections.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void close() throws Exception {
+        _threadSessions.close();
+    }
+
+    private Message createMessage(Session session, String messageBody) throws JMSException {
+        if (_payloadEncoder == null) {
+            return session.createTextMessage(messageBody);
+        }
+        return _payloadEncoder.createMessage(session, messageBody);
+    }
+
+    /**
+     * The session and producer of a single worker thread.
+     */
+    private final class ThreadProducer extends ThreadSession {
+
+        public ThreadProducer(ThreadSessions<ThreadProducer> threadSessions) {
+            super(threadSessions);
+        }
+
+        public synchronized void send(String messageBody, String correlationId, Map<String, Object> properties)
+                throws JMSException {
+            try {
+                final Message message = createMessage(getSession(), messageBody);
+                message.setJMSCorrelationID(correlationId);
+                setProperties(message, _messageProperties);
+                setProperties(message, properties);
+                send(message);
+            } catch (JMSException e) {
+                // the session may be broken, start over with a new one
+                closeSession();
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Map;
+
+/**
+ * Interface for implementations sending JMS messages to a queue.
+ */
+public interface JMSMessageSender {
+
+    /**
+     * Send a message to a JMS queue.
+     * 
+     * @param brokerUrl
+     * @param jmsQueueName
+     * @param messageBody
+     * @param correlationId
+     * @return
+     */
+    public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+            String correlationId);
+
+    /**
+     * Send a message with additional message properties to a JMS queue.
+     * 
+     * @param messageBody
+     * @param correlationId
+     * @param properties
+     *            message properties, by name
+     * @return
+     */
+    public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+            Map<String, Object> properties);
+
+    /**
+     * Close the resources of the sender.
+     * 
+     * @throws Exception
+     */
+    public void close() throws Exception;
+}
@@ -1,5 +1,11 @@
 package org.datacleaner.extension.sendjmsmessage;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jms.JMSException;
+
 import org.apache.activemq.pool.PooledConnectionFactory;
 import org.apache.camel.CamelContext;
 import org.apache.camel.ProducerTemplate;
@@ -10,14 +16,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Implementation for sending JMS messages to a queue.
+ * Implementation for sending JMS messages to a queue through a Camel route.
  * 
  */
-public class JMSMessageToQueueSender {
+public class JMSMessageToQueueSender implements JMSMessageSender {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JMSMessageToQueueSender.class);
     private ProducerTemplate producerTemplate;
     private CamelContext camelContext;
+    private final BytesPayloadEncoder payloadEncoder;
+    private final Map<String, Object> messageProperties;
 
     /**
      * Constructor
@@ -27,14 +35,40 @@ public class JMSMessageToQueueSender {
      * @throws Exception
      */
     public JMSMessageToQueueSender(String broker, String queueName) throws Exception {
+        this(broker, queueName, null, Collections.<String, Object> emptyMap(), new ProducerTuning());
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param broker
+     * @param queueName
+     * @param payloadEncoder
+     *            encoder for sending bytes messages, or null to send text
+     *            messages
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @param tuning
+     *            settings for the connections and producers
+     * @throws Exception
+     */
+    public JMSMessageToQueueSender(String broker, String queueName, BytesPayloadEncoder payloadEncoder,
+            Map<String, Object> messageProperties, ProducerTuning tuning) throws Exception {
+        this.payloadEncoder = payloadEncoder;
+        this.messageProperties = messageProperties;
         camelContext = new DefaultCamelContext();
 
-        PooledConnectionFactory connectionFactory = new PooledConnectionFactory(broker);
-        connectionFactory.setMaxConnections(10);
+        PooledConnectionFactory connectionFactory = tuning.createConnectionFactory(broker);
         final StringBuilder toEndpointUrl = new StringBuilder("jms:queue:").append(queueName);
         LOGGER.debug("connectionFactory {}", connectionFactory);
+        final JmsComponent jmsComponent = JmsComponent.jmsComponentAutoAcknowledge(connectionFactory);
+        if (!tuning.isPersistentDelivery()) {
+            // the delivery mode is only applied when the QoS is explicit
+            jmsComponent.setDeliveryPersistent(false);
+            jmsComponent.setExplicitQosEnabled(true);
+        }
         // Note we can explicit name the component
-        camelContext.addComponent("jms", JmsComponent.jmsComponentAutoAcknowledge(connectionFactory));
+        camelContext.addComponent("jms", jmsComponent);
         camelContext.addRoutes(new RouteBuilder() {
             public void configure() {
                 from("direct:start").to(toEndpointUrl.toString());
@@ -42,20 +76,53 @@ public class JMSMessageToQueueSender {
         });
         producerTemplate = camelContext.createProducerTemplate();
         camelContext.start();
+        try {
+            // Camel only connects on the first message otherwise
+            tuning.prewarm(connectionFactory);
+        } catch (JMSException e) {
+            camelContext.stop();
+            throw e;
+        }
     }
 
     /**
-     * Send a message to a JMS queue.
-     * 
-     * @param brokerUrl
-     * @param jmsQueueName
-     * @param messageBody
-     * @param correlationId
-     * @return
+     * {@inheritDoc}
      */
+    @Override
     public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody, String correlationId) {
         LOGGER.debug("Broker URL {}, jmsQueueName {}, messageBody {}, correlationId {}", brokerUrl, jmsQueueName, messageBody, correlationId);
-        producerTemplate.sendBodyAndHeader("direct:start", messageBody, "JMSCorrelationID", correlationId);
+        if (!messageProperties.isEmpty()) {
+            return sendMessage(messageBody, correlationId, Collections.<String, Object> emptyMap());
+        }
+        if (payloadEncoder == null) {
+            producerTemplate.sendBodyAndHeader("direct:start", messageBody, "JMSCorrelationID", correlationId);
+        } else {
+            // Camel sends a byte[] body as a BytesMessage
+            final BytesPayloadEncoder.Payload payload = payloadEncoder.encode(messageBody);
+            producerTemplate.sendBodyAndHeaders("direct:start", payload.getBytes(),
+                    payloadEncoder.createHeaders(payload, correlationId));
+        }
+        return SendMessageToJMSQueueResult.success();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+            Map<String, Object> properties) {
+        LOGGER.debug("messageBody {}, correlationId {}, properties {}", messageBody, correlationId, properties);
+        final Map<String, Object> headers = new HashMap<String, Object>(messageProperties);
+        headers.putAll(properties);
+        Object body = messageBody;
+        if (payloadEncoder == null) {
+            headers.put("JMSCorrelationID", correlationId);
+        } else {
+            final BytesPayloadEncoder.Payload payload = payloadEncoder.encode(messageBody);
+            body = payload.getBytes();
+            headers.putAll(payloadEncoder.createHeaders(payload, correlationId));
+        }
+        producerTemplate.sendBodyAndHeaders("direct:start", body, headers);
         return SendMessageToJMSQueueResult.success();
     }
 
@@ -64,6 +131,7 @@ public class JMSMessageToQueueSender {
      * 
      * @throws Exception
      */
+    @Override
     public void close() throws Exception {
         camelContext.stop();
     }
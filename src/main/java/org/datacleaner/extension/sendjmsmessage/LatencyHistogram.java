@@ -0,0 +1,219 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Low overhead concurrent histogram of durations, recorded in microseconds.
+ *
+ * Buckets are log-linear: every power of two is split into 16 sub-buckets, so
+ * a reported percentile is within about 6% of the recorded value. Threads
+ * record into one of a fixed number of bucket arrays, picked by thread id, so
+ * that recording rarely contends with other threads, while the memory used
+ * stays the same however many threads record, e.g. a virtual thread per
+ * message. The arrays are only merged when taking a {@link Snapshot}.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    // slots at the end of each bucket array
+    private static final int COUNT_INDEX = BUCKET_COUNT;
+    private static final int SUM_INDEX = BUCKET_COUNT + 1;
+    private static final int MAX_INDEX = BUCKET_COUNT + 2;
+
+    static final int STRIPE_COUNT = Math.min(64, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final AtomicReferenceArray<AtomicLongArray> _stripes;
+
+    /**
+     * Constructor
+     */
+    public LatencyHistogram() {
+        _stripes = new AtomicReferenceArray<AtomicLongArray>(STRIPE_COUNT);
+    }
+
+    private AtomicLongArray getStripe() {
+        final int index = (int) (Thread.currentThread().getId() % STRIPE_COUNT);
+        final AtomicLongArray stripe = _stripes.get(index);
+        if (stripe != null) {
+            return stripe;
+        }
+        // created on first use, so that few recording threads use little memory
+        _stripes.compareAndSet(index, null, new AtomicLongArray(BUCKET_COUNT + 3));
+        return _stripes.get(index);
+    }
+
+    /**
+     * Returns the number of bucket arrays in use.
+     *
+     * @return
+     */
+    int getStripesInUse() {
+        int count = 0;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            if (_stripes.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records a duration measured with {@link System#nanoTime()}.
+     *
+     * @param startNanos
+     *            the value of {@link System#nanoTime()} when the measured
+     *            operation started
+     */
+    public void recordSince(long startNanos) {
+        recordMicros((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Records a duration in microseconds.
+     *
+     * @param micros
+     */
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        final AtomicLongArray buckets = getStripe();
+        buckets.incrementAndGet(bucketIndex(micros));
+        buckets.incrementAndGet(COUNT_INDEX);
+        buckets.addAndGet(SUM_INDEX, micros);
+        long max = buckets.get(MAX_INDEX);
+        while (micros > max && !buckets.compareAndSet(MAX_INDEX, max, micros)) {
+            max = buckets.get(MAX_INDEX);
+        }
+    }
+
+    /**
+     * Merges the recordings of all threads into a serializable snapshot.
+     *
+     * @return
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+            final AtomicLongArray buckets = _stripes.get(stripe);
+            if (buckets == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += buckets.get(i);
+            }
+            count += buckets.get(COUNT_INDEX);
+            sum += buckets.get(SUM_INDEX);
+            max = Math.max(max, buckets.get(MAX_INDEX));
+        }
+        return new Snapshot(counts, count, sum, max);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Immutable, merged view of a {@link LatencyHistogram}.
+     */
+    public static class Snapshot implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] _counts;
+        private final long _count;
+        private final long _sum;
+        private final long _max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            _counts = counts;
+            _count = count;
+            _sum = sum;
+            _max = max;
+        }
+
+        /**
+         * Creates an empty snapshot.
+         *
+         * @return
+         */
+        public static Snapshot empty() {
+            return new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+        }
+
+        /**
+         * Returns the number of recorded durations.
+         *
+         * @return
+         */
+        public long getCount() {
+            return _count;
+        }
+
+        /**
+         * Returns the longest recorded duration in microseconds.
+         *
+         * @return
+         */
+        public long getMaxMicros() {
+            return _max;
+        }
+
+        /**
+         * Returns the mean recorded duration in microseconds.
+         *
+         * @return
+         */
+        public long getMeanMicros() {
+            if (_count == 0) {
+                return 0;
+            }
+            return _sum / _count;
+        }
+
+        /**
+         * Returns the duration in microseconds which the given percentage of
+         * recordings did not exceed.
+         *
+         * @param percentile
+         *            between 0 and 100
+         * @return
+         */
+        public long getPercentileMicros(double percentile) {
+            if (_count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(_count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < _counts.length; i++) {
+                seen += _counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), _max);
+                }
+            }
+            return _max;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+
+import com.google.common.base.Strings;
+
+/**
+ * Sends the values of a row as a {@link MapMessage} of field name and value
+ * pairs, through the JMS API, so that no template is rendered and consumers
+ * do not have to parse the message. Values are set with their own type where
+ * JMS supports it: strings, booleans, numbers of the primitive types and
+ * byte arrays. Dates are set as milliseconds since the epoch, other values as
+ * their string representation. Null values are left out.
+ */
+public class MapMessageSender implements JMSMessageSender {
+
+    private final ThreadSessions<ThreadProducer> _threadSessions;
+    private final String[] _fieldNames;
+    private final Map<String, Object> _messageProperties;
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param fieldNames
+     *            the field name of each value. Values with a blank name are
+     *            left out.
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @param tuning
+     *            settings for the connections and producers
+     * @throws JMSException
+     */
+    public MapMessageSender(String broker, String queueName, String[] fieldNames,
+            Map<String, Object> messageProperties, ProducerTuning tuning) throws JMSException {
+        _fieldNames = new String[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            // blank names are left as null
+            if (fieldNames[i] != null && !Strings.isNullOrEmpty(fieldNames[i].trim())) {
+                _fieldNames[i] = fieldNames[i].trim();
+            }
+        }
+        _messageProperties = messageProperties;
+        _threadSessions = new ThreadSessions<ThreadProducer>(broker, queueName, tuning, false) {
+            @Override
+            protected ThreadProducer createThreadSession() {
+                return new ThreadProducer(this);
+            }
+        };
+    }
+
+    /**
+     * Sends the values of a row.
+     *
+     * @param values
+     *            the values, in the order of the field names
+     * @param correlationId
+     * @return
+     */
+    public SendMessageToJMSQueueResult sendValues(List<Object> values, String correlationId) {
+        try {
+            _threadSessions.get().sendValues(values, correlationId);
+            return SendMessageToJMSQueueResult.success();
+        } catch (JMSException e) {
+            return SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The message body is sent as a text message.
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+            String correlationId) {
+        return sendMessage(messageBody, correlationId, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The message body is sent as a text message.
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+            Map<String, Object> properties) {
+        try {
+            _threadSessions.get().sendText(messageBody, correlationId, properties);
+            return SendMessageToJMSQueueResult.success();
+        } catch (JMSException e) {
+            return SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+    }
+
+    /**
+     * Sets the values of a row on a map message.
+     *
+     * @param message
+     * @param values
+     * @throws JMSException
+     */
+    public void setValues(MapMessage message, List<Object> values) throws JMSException {
+        for (int i = 0; i < _fieldNames.length; i++) {
+            final Object value = values.get(i);
+            if (_fieldNames[i] != null && value != null) {
+                setValue(message, _fieldNames[i], value);
+            }
+        }
+    }
+
+    private static void setValue(MapMessage message, String name, Object value) throws JMSException {
+        if (value instanceof String || value instanceof Boolean || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Float || value instanceof Short
+                || value instanceof Byte || value instanceof Character || value instanceof byte[]) {
+            message.setObject(name, value);
+        } else if (value instanceof Date) {
+            message.setLong(name, ((Date) value).getTime());
+        } else {
+            // e.g. BigDecimal, which has no lossless JMS type
+            message.setString(name, value.toString());
+        }
+    }
+
+    /**
+     * Returns the live state of the connection pool of this sender.
+     *
+     * @return
+     */
+    public ConnectionPoolState getPoolState() {
+        return _threadSessions;
+    }
+
+    /**
+     * Close the sessions and the connections.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void close() throws Exception {
+        _threadSessions.close();
+    }
+
+    /**
+     * The session and producer of a single worker thread.
+     */
+    private final class ThreadProducer extends ThreadSession {
+
+        public ThreadProducer(ThreadSessions<ThreadProducer> threadSessions) {
+            super(threadSessions);
+        }
+
+        public synchronized void sendValues(List<Object> values, String correlationId) throws JMSException {
+            try {
+                final MapMessage message = getSession().createMapMessage();
+                setValues(message, values);
+                send(message, correlationId, Collections.<String, Object> emptyMap());
+            } catch (JMSException e) {
+                // the session may be broken, start over with a new one
+                closeSession();
+                throw e;
+            }
+        }
+
+        public synchronized void sendText(String messageBody, String correlationId, Map<String, Object> properties)
+                throws JMSException {
+            try {
+                send(getSession().createTextMessage(messageBody), correlationId, properties);
+            } catch (JMSException e) {
+                closeSession();
+                throw e;
+            }
+        }
+
+        private void send(Message message, String correlationId, Map<String, Object> properties)
+                throws JMSException {
+            message.setJMSCorrelationID(correlationId);
+            setProperties(message, _messageProperties);
+            setProperties(message, properties);
+            send(message);
+        }
+    }
+}
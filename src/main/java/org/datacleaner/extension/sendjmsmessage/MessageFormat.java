@@ -0,0 +1,27 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import org.apache.metamodel.util.HasName;
+
+/**
+ * The type of JMS message which rows are sent as: the rendered message body
+ * as text or bytes, or the values by field name as a map message.
+ */
+public enum MessageFormat implements HasName {
+
+    TEXT("Text message"),
+
+    BYTES("Bytes message"),
+
+    MAP("Map message");
+
+    private final String _name;
+
+    private MessageFormat(String name) {
+        _name = name;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+}
@@ -0,0 +1,268 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+
+/**
+ * A message template which has been compiled into literal segments and
+ * placeholder slots, so that a message body can be rendered in a single pass.
+ *
+ * Keys are matched as plain text. Keys are applied in their configured order,
+ * so an earlier key claims its occurrences before a later key is searched for
+ * in the remaining literal text, which is what repeatedly replacing each key in
+ * the template would produce.
+ *
+ * Values are formatted with their toString() method, unless the template has
+ * been given a {@link ValueFormatter} per key.
+ */
+public final class MessageTemplate {
+
+    private static final int INITIAL_VALUE_LENGTH_ESTIMATE = 16;
+    private static final int TEMPLATE_ID_LENGTH = 16;
+
+    private final String _templateString;
+    private final String _templateId;
+    private final String[] _literals;
+    private final int[] _slots;
+    private final ValueFormatter[] _slotFormatters;
+    private final int _literalLength;
+    private volatile int _renderedLengthHint;
+
+    /**
+     * Compiles a template.
+     *
+     * @param templateString
+     * @param keys
+     * @return
+     */
+    public static MessageTemplate compile(String templateString, String[] keys) {
+        if (templateString == null) {
+            throw new IllegalArgumentException("Template string cannot be null");
+        }
+
+        // segments alternate between literal text (String) and slots (Integer)
+        List<Object> segments = new ArrayList<Object>();
+        segments.add(templateString);
+
+        if (keys != null) {
+            for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+                final String key = keys[keyIndex];
+                if (key == null || Strings.isNullOrEmpty(key.trim())) {
+                    continue;
+                }
+                final List<Object> newSegments = new ArrayList<Object>(segments.size() + 2);
+                for (Object segment : segments) {
+                    if (segment instanceof String) {
+                        splitLiteral((String) segment, key, keyIndex, newSegments);
+                    } else {
+                        newSegments.add(segment);
+                    }
+                }
+                segments = newSegments;
+            }
+        }
+
+        final List<String> literals = new ArrayList<String>();
+        final List<Integer> slots = new ArrayList<Integer>();
+        final StringBuilder currentLiteral = new StringBuilder();
+        for (Object segment : segments) {
+            if (segment instanceof String) {
+                currentLiteral.append((String) segment);
+            } else {
+                literals.add(currentLiteral.toString());
+                currentLiteral.setLength(0);
+                slots.add((Integer) segment);
+            }
+        }
+        literals.add(currentLiteral.toString());
+
+        final int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+        final ValueFormatter[] slotFormatters = new ValueFormatter[slotArray.length];
+        Arrays.fill(slotFormatters, ValueFormatter.DEFAULT);
+        return new MessageTemplate(templateString, literals.toArray(new String[literals.size()]), slotArray,
+                slotFormatters);
+    }
+
+    private static void splitLiteral(String literal, String key, int keyIndex, List<Object> output) {
+        int start = 0;
+        int index = literal.indexOf(key);
+        while (index != -1) {
+            output.add(literal.substring(start, index));
+            output.add(keyIndex);
+            start = index + key.length();
+            index = literal.indexOf(key, start);
+        }
+        output.add(literal.substring(start));
+    }
+
+    private MessageTemplate(String templateString, String[] literals, int[] slots, ValueFormatter[] slotFormatters) {
+        _templateString = templateString;
+        _templateId = Hashing.sha256().hashString(templateString, StandardCharsets.UTF_8).toString()
+                .substring(0, TEMPLATE_ID_LENGTH);
+        _literals = literals;
+        _slots = slots;
+        _slotFormatters = slotFormatters;
+
+        int literalLength = 0;
+        for (String literal : literals) {
+            literalLength += literal.length();
+        }
+        _literalLength = literalLength;
+        _renderedLengthHint = literalLength + slots.length * INITIAL_VALUE_LENGTH_ESTIMATE;
+    }
+
+    /**
+     * Returns a copy of this template which formats values with the given
+     * formatters.
+     *
+     * @param formatters
+     *            the formatters, indexed by the position of their key. Keys
+     *            without a formatter use the toString() method of values.
+     * @return
+     */
+    public MessageTemplate withFormatters(ValueFormatter[] formatters) {
+        final ValueFormatter[] slotFormatters = new ValueFormatter[_slots.length];
+        for (int i = 0; i < _slots.length; i++) {
+            final int keyIndex = _slots[i];
+            final ValueFormatter formatter = keyIndex < formatters.length ? formatters[keyIndex] : null;
+            slotFormatters[i] = formatter == null ? ValueFormatter.DEFAULT : formatter;
+        }
+        return new MessageTemplate(_templateString, _literals, _slots, slotFormatters);
+    }
+
+    /**
+     * Returns the original (uncompiled) template string.
+     *
+     * @return
+     */
+    public String getTemplateString() {
+        return _templateString;
+    }
+
+    /**
+     * Returns a compact ID of the template, derived from a hash of the
+     * template string, so that it is the same for every job using the same
+     * template.
+     *
+     * @return
+     */
+    public String getTemplateId() {
+        return _templateId;
+    }
+
+    /**
+     * Returns the number of placeholder slots in the template.
+     *
+     * @return
+     */
+    public int getSlotCount() {
+        return _slots.length;
+    }
+
+    /**
+     * Returns the literal segments of the template encoded with a charset, so
+     * that they can be written as bytes without rendering a String. The
+     * literal at index i precedes slot i, the last literal follows the last
+     * slot.
+     *
+     * @param charset
+     * @return
+     */
+    public byte[][] encodeLiterals(Charset charset) {
+        final byte[][] encodedLiterals = new byte[_literals.length][];
+        for (int i = 0; i < _literals.length; i++) {
+            encodedLiterals[i] = _literals[i].getBytes(charset);
+        }
+        return encodedLiterals;
+    }
+
+    /**
+     * Returns the position of the key of a slot, which is the index of its
+     * value.
+     *
+     * @param slot
+     * @return
+     */
+    public int getSlotKeyIndex(int slot) {
+        return _slots[slot];
+    }
+
+    /**
+     * Formats the value of a slot as it is rendered.
+     *
+     * @param slot
+     * @param values
+     *            the values, indexed by the position of their key
+     * @return the formatted value, or null if the value is null
+     */
+    public String formatSlotValue(int slot, List<Object> values) {
+        final Object value = values.get(_slots[slot]);
+        if (value == null) {
+            return null;
+        }
+        return _slotFormatters[slot].format(value);
+    }
+
+    /**
+     * Returns the expected length of a rendered message, based on previously
+     * rendered messages.
+     *
+     * @return
+     */
+    public int getRenderedLengthHint() {
+        return _renderedLengthHint;
+    }
+
+    /**
+     * Renders the template with the given values into a new String.
+     *
+     * @param values
+     *            the values, indexed by the position of their key
+     * @return
+     */
+    public String render(List<Object> values) {
+        final StringBuilder sb = new StringBuilder(_renderedLengthHint);
+        renderTo(sb, values);
+        return sb.toString();
+    }
+
+    /**
+     * Renders the template with the given values, appending to a buffer.
+     *
+     * @param sb
+     * @param values
+     *            the values, indexed by the position of their key. Null values
+     *            are rendered as empty strings.
+     */
+    public void renderTo(StringBuilder sb, List<Object> values) {
+        final int startLength = sb.length();
+        sb.append(_literals[0]);
+        for (int i = 0; i < _slots.length; i++) {
+            final Object value = values.get(_slots[i]);
+            if (value != null) {
+                _slotFormatters[i].appendTo(sb, value);
+            }
+            sb.append(_literals[i + 1]);
+        }
+
+        final int renderedLength = sb.length() - startLength;
+        if (renderedLength > _renderedLengthHint) {
+            // benign race, this is only a sizing hint
+            _renderedLengthHint = renderedLength;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MessageTemplate[slots=" + _slots.length + ",literalLength=" + _literalLength + "]";
+    }
+}
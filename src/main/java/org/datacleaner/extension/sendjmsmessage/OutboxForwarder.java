@@ -0,0 +1,241 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background thread which drains an {@link OutboxJournal} to the broker, in
+ * order. A record is only acknowledged in the journal once it has been sent, so
+ * records are kept while the broker is unavailable, and failed sends are
+ * retried with exponential backoff. A record which still fails after the max
+ * number of retries is given up on, so that a message the broker always
+ * rejects does not block the records after it.
+ *
+ * Rows appended in this run are reported to a {@link SendMessageCallback} when
+ * they are sent. Rows replayed from a previous run are only counted. Corrupt
+ * records and records which are given up on are removed from the journal, and
+ * reported as failures if they were appended in this run.
+ */
+public class OutboxForwarder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxForwarder.class);
+
+    private static final long POLL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * Handler which sends a record of the journal to the broker.
+     */
+    public interface RecordHandler {
+
+        public SendMessageToJMSQueueResult forward(OutboxJournal.Record record) throws Exception;
+    }
+
+    private final OutboxJournal _journal;
+    private final RecordHandler _handler;
+    private final SendMessageCallback _callback;
+    private final long _initialBackoffMillis;
+    private final long _maxBackoffMillis;
+    private final int _maxRetries;
+    private final AtomicInteger _forwardedCount;
+    private final AtomicInteger _replayedCount;
+    private final AtomicInteger _failedCount;
+    private final Object _stopLock = new Object();
+    private final Thread _thread;
+    private volatile boolean _stopped;
+
+    /**
+     * Constructor, which starts the forwarding thread.
+     *
+     * @param journal
+     * @param handler
+     * @param callback
+     * @param initialBackoffMillis
+     *            the backoff after the first failed send of a record
+     * @param maxBackoffMillis
+     *            the max backoff between failed sends
+     * @param maxRetries
+     *            the max number of retries of a record before it is given up
+     *            on, or a negative number to retry until it is sent
+     */
+    public OutboxForwarder(OutboxJournal journal, RecordHandler handler, SendMessageCallback callback,
+            long initialBackoffMillis, long maxBackoffMillis, int maxRetries) {
+        _journal = journal;
+        _handler = handler;
+        _callback = callback;
+        _initialBackoffMillis = initialBackoffMillis;
+        _maxBackoffMillis = maxBackoffMillis;
+        _maxRetries = maxRetries;
+        _forwardedCount = new AtomicInteger();
+        _replayedCount = new AtomicInteger();
+        _failedCount = new AtomicInteger();
+        _thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                forwardRecords();
+            }
+        }, "OutboxForwarder");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    private void forwardRecords() {
+        long backoffMillis = 0;
+        int retries = 0;
+        try {
+            while (!_stopped) {
+                final OutboxJournal.Record record = _journal.awaitNext(POLL_MILLIS);
+                if (record == null) {
+                    continue;
+                }
+                if (record.isCorrupt()) {
+                    skipRecord(record, new IOException("Outbox record has a wrong checksum"));
+                    continue;
+                }
+
+                SendMessageToJMSQueueResult result;
+                try {
+                    result = _handler.forward(record);
+                } catch (Exception e) {
+                    result = SendMessageToJMSQueueResult.failure(record.getId(), e);
+                }
+
+                if (result.isSuccessful()) {
+                    // before acknowledging, so that the result is recorded when the journal is drained
+                    if (record.getType() == OutboxJournal.TYPE_ROW) {
+                        if (record.isReplayed()) {
+                            _replayedCount.incrementAndGet();
+                        } else {
+                            _forwardedCount.incrementAndGet();
+                            _callback.onSuccess(record.getId());
+                        }
+                    }
+                    _journal.acknowledge();
+                    backoffMillis = 0;
+                    retries = 0;
+                } else if (_maxRetries >= 0 && retries >= _maxRetries) {
+                    LOGGER.warn("Forwarding outbox record '{}' failed after {} retries, it is not sent",
+                            record.getId(), retries);
+                    skipRecord(record, result.getError());
+                    backoffMillis = 0;
+                    retries = 0;
+                } else {
+                    retries++;
+                    if (backoffMillis == 0) {
+                        LOGGER.warn("Forwarding from the outbox failed, retrying until the broker is available",
+                                result.getError());
+                        backoffMillis = _initialBackoffMillis;
+                    } else {
+                        backoffMillis = Math.min(_maxBackoffMillis, backoffMillis * 2);
+                    }
+                    synchronized (_stopLock) {
+                        if (!_stopped) {
+                            _stopLock.wait(backoffMillis);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Outbox forwarder interrupted");
+        }
+    }
+
+    private void skipRecord(OutboxJournal.Record record, Exception error) {
+        if (record.getType() == OutboxJournal.TYPE_ROW) {
+            if (record.isReplayed()) {
+                LOGGER.warn("Outbox record '{}' of a previous run is not sent: {}", record.getId(),
+                        error.getMessage());
+            } else {
+                _failedCount.incrementAndGet();
+                _callback.onFailure(SendMessageToJMSQueueResult.failure(record.getId(), error));
+            }
+        } else {
+            LOGGER.warn("Outbox header record is not sent: {}", error.getMessage());
+        }
+        _journal.acknowledge();
+    }
+
+    /**
+     * Waits until all records of the journal have been sent.
+     *
+     * @param timeoutMillis
+     * @return whether the journal was drained within the timeout
+     */
+    public boolean awaitDrained(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!_journal.isDrained()) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !_thread.isAlive()) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(remaining, POLL_MILLIS / 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the outbox", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of rows appended in this run which have been sent.
+     *
+     * @return
+     */
+    public int getForwardedCount() {
+        return _forwardedCount.get();
+    }
+
+    /**
+     * Returns the number of rows appended in this run which were corrupt in
+     * the journal, or still failed after the max number of retries.
+     *
+     * @return
+     */
+    public int getFailedCount() {
+        return _failedCount.get();
+    }
+
+    /**
+     * Returns the number of rows of previous runs which have been sent.
+     *
+     * @return
+     */
+    public int getReplayedCount() {
+        return _replayedCount.get();
+    }
+
+    /**
+     * Waits for the journal to be drained, and stops the forwarding thread.
+     * Records which were not sent in time are left in the journal.
+     *
+     * A send which is in progress is allowed to finish, so that its record is
+     * acknowledged. Only if it does not finish within a minute, the thread is
+     * interrupted, and the record may then be sent again by the next run.
+     *
+     * @param drainTimeoutMillis
+     */
+    public void close(long drainTimeoutMillis) {
+        awaitDrained(drainTimeoutMillis);
+        synchronized (_stopLock) {
+            _stopped = true;
+            _stopLock.notifyAll();
+        }
+        try {
+            _thread.join(STOP_TIMEOUT_MILLIS);
+            if (_thread.isAlive()) {
+                LOGGER.warn("Outbox forwarder did not stop, interrupting it. The record being sent may be sent "
+                        + "again by the next run.");
+                _thread.interrupt();
+                _thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while stopping the outbox forwarder", e);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local append-only journal of rendered messages which still have to be sent
+ * to the broker. Records are appended to memory-mapped segment files, each
+ * record with a CRC32 checksum. A single reader takes the records in order
+ * and acknowledges them once they are sent, and segments are deleted when all
+ * of their records have been acknowledged.
+ *
+ * Segments which are left over from a previous run, e.g. because the job
+ * crashed, are read first, starting after their last acknowledged record. The
+ * journal survives a crash of the JVM, but since segments are only forced to
+ * disk when they are full or closed, not necessarily a crash of the operating
+ * system. A directory can only be used by one journal at a time.
+ *
+ * A record with a wrong checksum is returned as a corrupt record, so that the
+ * records after it are still read. As the record length is not covered by the
+ * checksum, a damaged length ends the segment instead.
+ */
+public class OutboxJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxJournal.class);
+
+    public static final byte TYPE_ROW = 0;
+    public static final byte TYPE_HEADER = 1;
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String LOCK_FILE_NAME = "outbox.lock";
+    private static final int MAGIC = 0x4F424A31;
+
+    // segment header: magic, offset after the last acknowledged record
+    private static final int ACK_OFFSET_POSITION = 4;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    // record header: payload length, checksum of the payload
+    private static final int RECORD_HEADER_SIZE = 8;
+    // payload header: type, id length
+    private static final int PAYLOAD_HEADER_SIZE = 5;
+
+    private final File _directory;
+    private final int _segmentSize;
+    private final RandomAccessFile _lockFile;
+    private final FileLock _lock;
+    private final LinkedList<Segment> _segments;
+    private long _nextSegmentNumber;
+    private Segment _writeSegment;
+    private Record _current;
+    private int _appendedRowCount;
+
+    /**
+     * Opens the journal in a directory, including any segments left over from
+     * a previous run.
+     *
+     * @param directory
+     * @param segmentSize
+     *            the size of segment files in bytes. Records which are larger
+     *            get a segment of their own.
+     * @throws IOException
+     */
+    public OutboxJournal(File directory, int segmentSize) throws IOException {
+        _directory = directory;
+        _segmentSize = segmentSize;
+        _segments = new LinkedList<Segment>();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create outbox directory: " + directory);
+        }
+        _lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        FileLock lock;
+        try {
+            lock = _lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by another journal of this JVM
+            lock = null;
+        }
+        _lock = lock;
+        if (_lock == null) {
+            _lockFile.close();
+            throw new IOException("Outbox directory is in use by another job: " + directory);
+        }
+
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+        for (File file : files) {
+            final long segmentNumber = getSegmentNumber(file);
+            _nextSegmentNumber = Math.max(_nextSegmentNumber, segmentNumber + 1);
+            final Segment segment = openSegment(file);
+            if (segment != null) {
+                _segments.add(segment);
+            }
+        }
+        if (!_segments.isEmpty()) {
+            LOGGER.info("Replaying {} outbox segments from a previous run in {}", _segments.size(), directory);
+        }
+    }
+
+    private static long getSegmentNumber(File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Segment openSegment(File file) throws IOException {
+        final MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+        }
+        if (buffer.capacity() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            LOGGER.warn("Ignoring outbox file which is not a segment: {}", file);
+            return null;
+        }
+        final Segment segment = new Segment(file, buffer, true);
+        segment.readPosition = Math.max(SEGMENT_HEADER_SIZE, buffer.getInt(ACK_OFFSET_POSITION));
+        segment.writePosition = buffer.capacity();
+        segment.sealed = true;
+        return segment;
+    }
+
+    private Segment createSegment(int size) throws IOException {
+        final File file = new File(_directory, SEGMENT_PREFIX + String.format("%016d", _nextSegmentNumber++)
+                + SEGMENT_SUFFIX);
+        final MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(ACK_OFFSET_POSITION, SEGMENT_HEADER_SIZE);
+        final Segment segment = new Segment(file, buffer, false);
+        segment.readPosition = SEGMENT_HEADER_SIZE;
+        segment.writePosition = SEGMENT_HEADER_SIZE;
+        return segment;
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param type
+     *            {@link #TYPE_ROW} or {@link #TYPE_HEADER}
+     * @param id
+     * @param body
+     * @throws IOException
+     */
+    public void append(byte type, String id, String body) throws IOException {
+        final byte[] idBytes = id == null ? null : id.getBytes(StandardCharsets.UTF_8);
+        final byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        final int idLength = idBytes == null ? 0 : idBytes.length;
+
+        final ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_HEADER_SIZE + idLength + bodyBytes.length);
+        payload.put(type);
+        payload.putInt(idBytes == null ? -1 : idLength);
+        if (idBytes != null) {
+            payload.put(idBytes);
+        }
+        payload.put(bodyBytes);
+        final CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        final int recordLength = RECORD_HEADER_SIZE + payload.capacity();
+
+        synchronized (this) {
+            if (_writeSegment == null || _writeSegment.writePosition + recordLength > _writeSegment.buffer.capacity()) {
+                if (_writeSegment != null) {
+                    _writeSegment.seal();
+                }
+                _writeSegment = createSegment(Math.max(_segmentSize, SEGMENT_HEADER_SIZE + recordLength));
+                _segments.add(_writeSegment);
+            }
+            final ByteBuffer buffer = _writeSegment.buffer;
+            buffer.position(_writeSegment.writePosition);
+            buffer.putInt(payload.capacity());
+            buffer.putInt((int) crc.getValue());
+            buffer.put(payload.array());
+            _writeSegment.writePosition += recordLength;
+            if (type == TYPE_ROW) {
+                _appendedRowCount++;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the oldest record which has not been acknowledged, waiting for a
+     * record to be appended if there is none.
+     *
+     * @param timeoutMillis
+     * @return the record, or null if none was appended within the timeout
+     * @throws InterruptedException
+     */
+    public synchronized Record awaitNext(long timeoutMillis) throws InterruptedException {
+        Record record = peek();
+        if (record == null) {
+            wait(timeoutMillis);
+            record = peek();
+        }
+        return record;
+    }
+
+    /**
+     * Returns the oldest record which has not been acknowledged.
+     *
+     * @return the record, or null if all records have been acknowledged
+     */
+    public synchronized Record peek() {
+        if (_current != null) {
+            return _current;
+        }
+        while (!_segments.isEmpty()) {
+            final Segment segment = _segments.getFirst();
+            _current = readRecord(segment);
+            if (_current != null) {
+                return _current;
+            }
+            if (!segment.sealed) {
+                // the segment which is appended to
+                return null;
+            }
+            _segments.removeFirst();
+            segment.delete();
+        }
+        return null;
+    }
+
+    private Record readRecord(Segment segment) {
+        final ByteBuffer buffer = segment.buffer;
+        final int position = segment.readPosition;
+        if (position + RECORD_HEADER_SIZE > segment.writePosition) {
+            return null;
+        }
+        final int payloadLength = buffer.getInt(position);
+        if (payloadLength <= 0) {
+            // the zero filled end of a segment
+            return null;
+        }
+        if (payloadLength < PAYLOAD_HEADER_SIZE
+                || position + RECORD_HEADER_SIZE + payloadLength > segment.writePosition) {
+            LOGGER.warn("Outbox segment {} ends with an incomplete record", segment.file);
+            return null;
+        }
+        final byte[] payload = new byte[payloadLength];
+        final ByteBuffer payloadBuffer = buffer.duplicate();
+        payloadBuffer.position(position + RECORD_HEADER_SIZE);
+        payloadBuffer.get(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        final boolean corrupt = (int) crc.getValue() != buffer.getInt(position + 4);
+
+        final ByteBuffer in = ByteBuffer.wrap(payload);
+        final byte type = in.get();
+        final int idLength = in.getInt();
+        final String id;
+        if (idLength < 0 || idLength > payloadLength - PAYLOAD_HEADER_SIZE) {
+            // no id, or a damaged id length of a corrupt record
+            id = null;
+        } else {
+            id = new String(payload, PAYLOAD_HEADER_SIZE, idLength, StandardCharsets.UTF_8);
+        }
+        if (corrupt) {
+            LOGGER.warn("Outbox segment {} has a record with a wrong checksum at {}, skipping it (id {})",
+                    segment.file, position, id);
+            return new Record(type == TYPE_HEADER ? TYPE_HEADER : TYPE_ROW, id, null, segment.replayed,
+                    RECORD_HEADER_SIZE + payloadLength, true);
+        }
+        final int bodyOffset = PAYLOAD_HEADER_SIZE + Math.max(0, idLength);
+        final String body = new String(payload, bodyOffset, payloadLength - bodyOffset, StandardCharsets.UTF_8);
+        return new Record(type, id, body, segment.replayed, RECORD_HEADER_SIZE + payloadLength, false);
+    }
+
+    /**
+     * Acknowledges the record returned by {@link #peek()}, so that it is not
+     * returned again, not even after a restart.
+     */
+    public synchronized void acknowledge() {
+        if (_current == null) {
+            throw new IllegalStateException("No record to acknowledge");
+        }
+        final Segment segment = _segments.getFirst();
+        segment.readPosition += _current._length;
+        segment.buffer.putInt(ACK_OFFSET_POSITION, segment.readPosition);
+        _current = null;
+        notifyAll();
+    }
+
+    /**
+     * Determines if all records have been acknowledged.
+     *
+     * @return
+     */
+    public synchronized boolean isDrained() {
+        return peek() == null;
+    }
+
+    /**
+     * Returns the number of row records appended since the journal was
+     * opened.
+     *
+     * @return
+     */
+    public synchronized int getAppendedRowCount() {
+        return _appendedRowCount;
+    }
+
+    /**
+     * Closes the journal. Segments with records which have not been
+     * acknowledged are kept, to be replayed when the journal is opened again.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        // deletes fully acknowledged segments
+        peek();
+        for (Segment segment : _segments) {
+            if (!segment.replayed && segment.readPosition >= segment.writePosition) {
+                segment.delete();
+            } else {
+                segment.buffer.force();
+            }
+        }
+        _segments.clear();
+        _writeSegment = null;
+        _current = null;
+        try {
+            _lock.release();
+        } finally {
+            _lockFile.close();
+        }
+    }
+
+    /**
+     * A record of the journal.
+     */
+    public static final class Record {
+
+        private final byte _type;
+        private final String _id;
+        private final String _body;
+        private final boolean _replayed;
+        private final int _length;
+        private final boolean _corrupt;
+
+        Record(byte type, String id, String body, boolean replayed, int length, boolean corrupt) {
+            _type = type;
+            _id = id;
+            _body = body;
+            _replayed = replayed;
+            _length = length;
+            _corrupt = corrupt;
+        }
+
+        public byte getType() {
+            return _type;
+        }
+
+        public String getId() {
+            return _id;
+        }
+
+        public String getBody() {
+            return _body;
+        }
+
+        /**
+         * Determines if the record was appended in a previous run.
+         *
+         * @return
+         */
+        public boolean isReplayed() {
+            return _replayed;
+        }
+
+        /**
+         * Determines if the record has a wrong checksum. A corrupt record has
+         * no body, and its id may be damaged or missing.
+         *
+         * @return
+         */
+        public boolean isCorrupt() {
+            return _corrupt;
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+
+        final File file;
+        final MappedByteBuffer buffer;
+        final boolean replayed;
+        int readPosition;
+        int writePosition;
+        boolean sealed;
+
+        Segment(File file, MappedByteBuffer buffer, boolean replayed) {
+            this.file = file;
+            this.buffer = buffer;
+            this.replayed = replayed;
+        }
+
+        void seal() {
+            sealed = true;
+            buffer.force();
+        }
+
+        void delete() {
+            // the mapping is released when the buffer is garbage collected
+            if (!file.delete()) {
+                LOGGER.debug("Could not delete outbox segment {}, deleting it on exit", file);
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+
+import org.apache.activemq.pool.PooledConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The connections of a pooled connection factory, handed out round-robin to
+ * the worker threads of a sender, so that their sessions are spread over all
+ * connections of the pool rather than created on a single one.
+ */
+public class PooledConnections {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledConnections.class);
+
+    private final PooledConnectionFactory _connectionFactory;
+    private final Connection[] _connections;
+    private final AtomicInteger _nextConnection;
+
+    /**
+     * Creates a connection factory with the given settings and opens all of
+     * its connections.
+     *
+     * @param broker
+     * @param tuning
+     * @throws JMSException
+     */
+    public PooledConnections(String broker, ProducerTuning tuning) throws JMSException {
+        _connectionFactory = tuning.createConnectionFactory(broker);
+        LOGGER.debug("connectionFactory {}", _connectionFactory);
+        _connections = new Connection[tuning.getMaxConnections()];
+        _nextConnection = new AtomicInteger();
+        try {
+            // the pool opens a new connection for each request until it is full
+            for (int i = 0; i < _connections.length; i++) {
+                _connections[i] = _connectionFactory.createConnection();
+                _connections[i].start();
+            }
+        } catch (JMSException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the next connection, for a worker thread to create its session
+     * on.
+     *
+     * @return
+     */
+    public Connection next() {
+        final int index = (_nextConnection.getAndIncrement() & Integer.MAX_VALUE) % _connections.length;
+        return _connections[index];
+    }
+
+    /**
+     * Returns the number of connections.
+     *
+     * @return
+     */
+    public int getConnectionCount() {
+        return _connections.length;
+    }
+
+    /**
+     * Closes the connections and stops the connection factory.
+     */
+    public void close() {
+        try {
+            for (Connection connection : _connections) {
+                if (connection != null) {
+                    try {
+                        connection.close();
+                    } catch (JMSException e) {
+                        LOGGER.debug("Closing connection failed", e);
+                    }
+                }
+            }
+        } finally {
+            _connectionFactory.stop();
+        }
+    }
+}
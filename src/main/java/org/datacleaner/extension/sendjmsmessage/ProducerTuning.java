@@ -0,0 +1,190 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.pool.PooledConnectionFactory;
+
+/**
+ * Settings for the ActiveMQ connections and producers used to send messages.
+ * The defaults are the settings which were used before the producers could be
+ * tuned.
+ */
+public class ProducerTuning {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    public static final int DEFAULT_MAX_SESSIONS_PER_CONNECTION = 500;
+    public static final int THROUGHPUT_PRODUCER_WINDOW_SIZE = 1024 * 1024;
+
+    private final int _maxConnections;
+    private final int _maxSessionsPerConnection;
+    private final boolean _useAsyncSend;
+    private final int _producerWindowSize;
+    private final boolean _persistentDelivery;
+    private final boolean _optimizeAcknowledge;
+
+    /**
+     * Creates the default settings.
+     */
+    public ProducerTuning() {
+        this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_SESSIONS_PER_CONNECTION, false, 0, true, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxConnections
+     *            the max number of pooled connections
+     * @param maxSessionsPerConnection
+     *            the max number of active sessions per pooled connection
+     * @param useAsyncSend
+     *            whether to send without waiting for the broker to
+     *            acknowledge each message
+     * @param producerWindowSize
+     *            the max number of bytes sent asynchronously which the broker
+     *            has not acknowledged yet, or 0 for no limit
+     * @param persistentDelivery
+     *            whether messages are persisted by the broker
+     * @param optimizeAcknowledge
+     *            whether acknowledgements are sent in batches
+     */
+    public ProducerTuning(int maxConnections, int maxSessionsPerConnection, boolean useAsyncSend,
+            int producerWindowSize, boolean persistentDelivery, boolean optimizeAcknowledge) {
+        _maxConnections = maxConnections;
+        _maxSessionsPerConnection = maxSessionsPerConnection;
+        _useAsyncSend = useAsyncSend;
+        _producerWindowSize = producerWindowSize;
+        _persistentDelivery = persistentDelivery;
+        _optimizeAcknowledge = optimizeAcknowledge;
+    }
+
+    /**
+     * Returns these settings with the delivery settings of a preset applied.
+     * The pool sizes are always kept.
+     *
+     * @param preset
+     * @return
+     */
+    public ProducerTuning withPreset(TuningPreset preset) {
+        if (preset == null) {
+            return this;
+        }
+        switch (preset) {
+        case THROUGHPUT:
+            return new ProducerTuning(_maxConnections, _maxSessionsPerConnection, true, Math.max(
+                    _producerWindowSize, THROUGHPUT_PRODUCER_WINDOW_SIZE), false, true);
+        case SAFETY:
+            return new ProducerTuning(_maxConnections, _maxSessionsPerConnection, false, 0, true, false);
+        default:
+            return this;
+        }
+    }
+
+    /**
+     * Creates a pooled connection factory with these settings.
+     *
+     * @param broker
+     * @return
+     */
+    public PooledConnectionFactory createConnectionFactory(String broker) {
+        final ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(broker);
+        connectionFactory.setUseAsyncSend(_useAsyncSend);
+        connectionFactory.setProducerWindowSize(_producerWindowSize);
+        connectionFactory.setOptimizeAcknowledge(_optimizeAcknowledge);
+
+        final PooledConnectionFactory pooledConnectionFactory = new PooledConnectionFactory(connectionFactory);
+        pooledConnectionFactory.setMaxConnections(_maxConnections);
+        pooledConnectionFactory.setMaximumActiveSessionPerConnection(_maxSessionsPerConnection);
+        return pooledConnectionFactory;
+    }
+
+    /**
+     * Opens all connections of a pooled connection factory up front, so that
+     * the first messages do not wait for connections to be set up.
+     *
+     * @param connectionFactory
+     *            a factory created by {@link #createConnectionFactory(String)}
+     * @throws JMSException
+     */
+    public void prewarm(PooledConnectionFactory connectionFactory) throws JMSException {
+        // the pool opens a new connection for each request until it is full
+        for (int i = 0; i < _maxConnections; i++) {
+            final Connection connection = connectionFactory.createConnection();
+            try {
+                connection.start();
+                connection.createSession(false, Session.AUTO_ACKNOWLEDGE).close();
+            } finally {
+                // returns the connection to the pool
+                connection.close();
+            }
+        }
+    }
+
+    public int getMaxConnections() {
+        return _maxConnections;
+    }
+
+    public int getMaxSessionsPerConnection() {
+        return _maxSessionsPerConnection;
+    }
+
+    public boolean isUseAsyncSend() {
+        return _useAsyncSend;
+    }
+
+    public int getProducerWindowSize() {
+        return _producerWindowSize;
+    }
+
+    public boolean isPersistentDelivery() {
+        return _persistentDelivery;
+    }
+
+    /**
+     * Returns the JMS delivery mode for producers.
+     *
+     * @return
+     */
+    public int getDeliveryMode() {
+        return _persistentDelivery ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT;
+    }
+
+    public boolean isOptimizeAcknowledge() {
+        return _optimizeAcknowledge;
+    }
+
+    /**
+     * Returns a short human readable summary of these settings.
+     *
+     * @return
+     */
+    public String getSummary() {
+        final StringBuilder sb = new StringBuilder();
+        if (_useAsyncSend) {
+            sb.append("async send");
+            if (_producerWindowSize > 0) {
+                sb.append(" (window ").append(_producerWindowSize).append(" bytes)");
+            }
+        } else {
+            sb.append("sync send");
+        }
+        sb.append(_persistentDelivery ? ", persistent" : ", non persistent");
+        if (_optimizeAcknowledge) {
+            sb.append(", optimized acknowledge");
+        }
+        sb.append(", ").append(_maxConnections).append(" connections x ").append(_maxSessionsPerConnection)
+                .append(" sessions");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "ProducerTuning[maxConnections=" + _maxConnections + ",maxSessionsPerConnection="
+                + _maxSessionsPerConnection + ",useAsyncSend=" + _useAsyncSend + ",producerWindowSize="
+                + _producerWindowSize + ",persistentDelivery=" + _persistentDelivery + ",optimizeAcknowledge="
+                + _optimizeAcknowledge + "]";
+    }
+}
@@ -0,0 +1,360 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends messages through a {@link JMSMessageSender}, retrying failed sends
+ * with jittered exponential backoff and guarding the broker with a
+ * {@link CircuitBreaker}.
+ *
+ * The first attempt is made on the calling thread. Retries are scheduled on a
+ * small scheduler, so the calling thread never sleeps. Results are reported to
+ * a {@link SendMessageCallback}.
+ *
+ * Messages buffered while the circuit is open fail once they have waited for
+ * the max buffer time, so that a broker which does not recover fails the
+ * messages rather than holding them forever.
+ */
+public class RetryingMessageSender {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryingMessageSender.class);
+
+    private static final int SCHEDULER_THREADS = 2;
+    private static final long COMPLETION_POLL_MILLIS = 100;
+    private static final long HALF_OPEN_POLL_MILLIS = 50;
+
+    private final JMSMessageSender _delegate;
+    private final String _brokerUrl;
+    private final String _queueName;
+    private final int _maxRetries;
+    private final long _initialBackoffMillis;
+    private final long _maxBackoffMillis;
+    private final CircuitBreaker _circuitBreaker;
+    private final boolean _bufferWhileOpen;
+    private final long _maxBufferMillis;
+    private final SendMessageCallback _callback;
+    private final ScheduledExecutorService _scheduler;
+    private final Semaphore _pendingPermits;
+    private final AtomicInteger _pendingCount;
+    private final Set<PendingMessage> _pendingMessages;
+    private final AtomicInteger _retryCount;
+    private final Object _completionLock = new Object();
+
+    /**
+     * Constructor
+     *
+     * @param delegate
+     *            the sender to send messages with
+     * @param brokerUrl
+     * @param queueName
+     * @param maxRetries
+     *            the max number of retries per message
+     * @param initialBackoffMillis
+     *            the backoff before the first retry
+     * @param maxBackoffMillis
+     *            the max backoff between retries
+     * @param circuitBreaker
+     * @param bufferWhileOpen
+     *            whether messages should wait for the circuit to close, instead
+     *            of failing fast
+     * @param maxBufferMillis
+     *            the max time a message waits for the circuit to close, before
+     *            it fails
+     * @param maxPending
+     *            the max number of messages waiting for a retry, before
+     *            callers are blocked
+     * @param callback
+     */
+    public RetryingMessageSender(JMSMessageSender delegate, String brokerUrl, String queueName, int maxRetries,
+            long initialBackoffMillis, long maxBackoffMillis, CircuitBreaker circuitBreaker, boolean bufferWhileOpen,
+            long maxBufferMillis, int maxPending, SendMessageCallback callback) {
+        _delegate = delegate;
+        _brokerUrl = brokerUrl;
+        _queueName = queueName;
+        _maxRetries = maxRetries;
+        _initialBackoffMillis = initialBackoffMillis;
+        _maxBackoffMillis = maxBackoffMillis;
+        _circuitBreaker = circuitBreaker;
+        _bufferWhileOpen = bufferWhileOpen;
+        _maxBufferMillis = maxBufferMillis;
+        _callback = callback;
+        _pendingPermits = new Semaphore(maxPending);
+        _pendingCount = new AtomicInteger();
+        _pendingMessages = Collections.newSetFromMap(new ConcurrentHashMap<PendingMessage, Boolean>());
+        _retryCount = new AtomicInteger();
+        _scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS, new ThreadFactory() {
+            private final AtomicInteger _threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "RetryingMessageSender-" + _threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Sends a message. The result is reported to the callback, possibly after
+     * this method has returned.
+     *
+     * @param messageBody
+     * @param correlationId
+     */
+    public void send(String messageBody, String correlationId) {
+        if (!_circuitBreaker.allowRequest()) {
+            if (_bufferWhileOpen) {
+                final PendingMessage message = new PendingMessage(messageBody, correlationId);
+                message.bufferedSinceMillis = System.currentTimeMillis();
+                acquirePending(message);
+                schedule(message, Math.min(_maxBufferMillis, _circuitBreaker.getRemainingOpenMillis()));
+            } else {
+                _callback.onFailure(circuitOpenFailure(correlationId));
+            }
+            return;
+        }
+
+        final PendingMessage message = new PendingMessage(messageBody, correlationId);
+        final SendMessageToJMSQueueResult result = attempt(message);
+        if (result.isSuccessful()) {
+            _callback.onSuccess(correlationId);
+        } else if (message.attempts <= _maxRetries) {
+            acquirePending(message);
+            scheduleRetry(message);
+        } else {
+            _callback.onFailure(result);
+        }
+    }
+
+    private SendMessageToJMSQueueResult attempt(PendingMessage message) {
+        message.attempts++;
+        SendMessageToJMSQueueResult result;
+        try {
+            result = _delegate.sendMessage(_brokerUrl, _queueName, message.messageBody, message.correlationId);
+        } catch (RuntimeException e) {
+            result = SendMessageToJMSQueueResult.failure(message.correlationId, e);
+        }
+        if (result.isSuccessful()) {
+            _circuitBreaker.recordSuccess();
+        } else {
+            _circuitBreaker.recordFailure();
+        }
+        return result;
+    }
+
+    private void scheduleRetry(PendingMessage message) {
+        _retryCount.incrementAndGet();
+        final long backoff = Math.min(_maxBackoffMillis, _initialBackoffMillis << Math.min(30, message.attempts - 1));
+        // equal jitter, to spread out retries of messages which failed at the same time
+        final long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        schedule(message, delay);
+    }
+
+    private void schedule(final PendingMessage message, long delayMillis) {
+        _scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                retry(message);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void retry(PendingMessage message) {
+        if (message.completed) {
+            // failed by abandonPending()
+            return;
+        }
+        if (!_circuitBreaker.allowRequest()) {
+            if (_bufferWhileOpen) {
+                final long now = System.currentTimeMillis();
+                if (message.bufferedSinceMillis < 0) {
+                    message.bufferedSinceMillis = now;
+                }
+                final long remainingBufferMillis = message.bufferedSinceMillis + _maxBufferMillis - now;
+                if (remainingBufferMillis > 0) {
+                    // while a trial request is in progress the remaining open time is 0
+                    schedule(message, Math.min(remainingBufferMillis, Math.max(HALF_OPEN_POLL_MILLIS,
+                            _circuitBreaker.getRemainingOpenMillis())));
+                } else {
+                    LOGGER.debug("Giving up on message '{}' after buffering it for {} ms", message.correlationId,
+                            _maxBufferMillis);
+                    completePending(message, circuitOpenFailure(message.correlationId));
+                }
+            } else if (message.attempts <= _maxRetries) {
+                // counts as an attempt, so that a long outage fails the message eventually
+                message.attempts++;
+                scheduleRetry(message);
+            } else {
+                completePending(message, circuitOpenFailure(message.correlationId));
+            }
+            return;
+        }
+
+        final SendMessageToJMSQueueResult result = attempt(message);
+        if (result.isSuccessful()) {
+            completePending(message, result);
+        } else if (message.attempts <= _maxRetries) {
+            scheduleRetry(message);
+        } else {
+            LOGGER.debug("Giving up on message '{}' after {} attempts", message.correlationId, message.attempts);
+            completePending(message, result);
+        }
+    }
+
+    private SendMessageToJMSQueueResult circuitOpenFailure(String correlationId) {
+        return SendMessageToJMSQueueResult.failure(correlationId, new CircuitBreakerOpenException(
+                "Circuit breaker is open, broker is considered unavailable"));
+    }
+
+    private void acquirePending(PendingMessage message) {
+        try {
+            _pendingPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for pending retries", e);
+        }
+        _pendingCount.incrementAndGet();
+        _pendingMessages.add(message);
+    }
+
+    /**
+     * Reports the result of a pending message, unless it has been reported
+     * already.
+     *
+     * @param message
+     * @param result
+     */
+    private void completePending(PendingMessage message, SendMessageToJMSQueueResult result) {
+        synchronized (message) {
+            if (message.completed) {
+                return;
+            }
+            message.completed = true;
+        }
+        if (result.isSuccessful()) {
+            _callback.onSuccess(message.correlationId);
+        } else {
+            _callback.onFailure(result);
+        }
+        // after the callback, so that awaitCompletion() sees the recorded result
+        _pendingMessages.remove(message);
+        _pendingPermits.release();
+        if (_pendingCount.decrementAndGet() == 0) {
+            synchronized (_completionLock) {
+                _completionLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting for a retry.
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return _pendingCount.get();
+    }
+
+    /**
+     * Returns the number of retries made.
+     *
+     * @return
+     */
+    public int getRetryCount() {
+        return _retryCount.get();
+    }
+
+    /**
+     * Returns the number of times the circuit breaker has opened.
+     *
+     * @return
+     */
+    public int getCircuitOpenCount() {
+        return _circuitBreaker.getOpenCount();
+    }
+
+    /**
+     * Waits until all messages waiting for a retry have been sent or have
+     * failed, or until the timeout has passed.
+     *
+     * @param timeoutMillis
+     * @return true if no messages are waiting for a retry anymore
+     */
+    public boolean awaitCompletion(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (_completionLock) {
+            while (_pendingCount.get() > 0) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    _completionLock.wait(Math.min(remaining, COMPLETION_POLL_MILLIS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for retries", e);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fails all messages waiting for a retry. A retry which is in progress
+     * may still deliver its message, which is then reported as failed
+     * nevertheless.
+     *
+     * @param reason
+     */
+    public void abandonPending(String reason) {
+        for (PendingMessage message : new ArrayList<PendingMessage>(_pendingMessages)) {
+            completePending(message, SendMessageToJMSQueueResult.failure(message.correlationId,
+                    new TimeoutException(reason)));
+        }
+    }
+
+    /**
+     * Waits for pending retries until the timeout has passed, fails the
+     * messages still waiting and stops the scheduler. The delegate sender is
+     * not closed.
+     *
+     * @param timeoutMillis
+     */
+    public void close(long timeoutMillis) {
+        if (!awaitCompletion(timeoutMillis)) {
+            abandonPending("Retries did not complete within " + timeoutMillis + " ms");
+        }
+        _scheduler.shutdown();
+    }
+
+    /**
+     * A message and the number of attempts made to send it.
+     */
+    private static final class PendingMessage {
+
+        final String messageBody;
+        final String correlationId;
+        int attempts;
+        long bufferedSinceMillis = -1;
+        volatile boolean completed;
+
+        PendingMessage(String messageBody, String correlationId) {
+            this.messageBody = messageBody;
+            this.correlationId = correlationId;
+        }
+    }
+}
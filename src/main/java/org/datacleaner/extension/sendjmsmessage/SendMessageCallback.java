@@ -0,0 +1,22 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+/**
+ * Callback for senders that complete sending of a message at a later point
+ * than when it was handed to them, e.g. when committing a batch.
+ */
+public interface SendMessageCallback {
+
+    /**
+     * Invoked when a message has been delivered to the broker.
+     * 
+     * @param correlationId
+     */
+    public void onSuccess(String correlationId);
+
+    /**
+     * Invoked when a message could not be delivered to the broker.
+     * 
+     * @param failure
+     */
+    public void onFailure(SendMessageToJMSQueueResult failure);
+}
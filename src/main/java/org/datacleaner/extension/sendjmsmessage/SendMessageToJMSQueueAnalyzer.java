@@ -1,11 +1,14 @@
 package org.datacleaner.extension.sendjmsmessage;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
 
 import javax.inject.Named;
 
@@ -29,8 +32,6 @@ import org.datacleaner.api.Validate;
 import org.datacleaner.components.categories.WriteSuperCategory;
 import org.datacleaner.components.convert.ConvertToStringTransformer;
 
-import com.google.common.base.Strings;
-
 /**
  * Analyzer for sending messages to JMS queue.
  * 
@@ -43,6 +44,9 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
 
     private static final String PROPERTY_INPUT_COLUMNS = "Values";
     private static final String PROPERTY_FIELD_NAMES = "Fields";
+    private static final int MAX_PENDING_RETRIES = 10000;
+    private static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+    private static final long RATE_SAMPLE_INTERVAL_MILLIS = 10000;
 
     @Configured(PROPERTY_INPUT_COLUMNS)
     InputColumn<?>[] values;
@@ -51,6 +55,11 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
     @MappedProperty(PROPERTY_INPUT_COLUMNS)
     String[] fields;
 
+    @Configured(value = "Field formats", required = false)
+    @MappedProperty(PROPERTY_INPUT_COLUMNS)
+    @Description("Format pattern of each value merged into the template: a decimal format pattern for numbers, such as #0.00, or a date format pattern for dates, such as yyyy-MM-dd'T'HH:mm:ss. Leave empty to merge the value as it is.")
+    String[] fieldFormats;
+
     @Configured
     InputColumn<?> idColumn;
 
@@ -60,7 +69,32 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
     @Configured(value = "JMS queue name", order = 101)
     String jmsQueueName;
 
-    @Configured(value = "Message template", required = true)
+    @Configured(value = "Shard queue names", required = false, order = 102)
+    @Description("Send to several queues instead of the JMS queue name. Each row goes to the queue chosen by a hash of its ID, so the same ID always goes to the same queue.")
+    String[] shardQueueNames;
+
+    @Configured(value = "Shard broker urls", required = false, order = 103)
+    @Description("The broker url of each shard queue, in the same order. When empty, all shard queues are on the broker url.")
+    String[] shardBrokerUrls;
+
+    @Configured(value = "Additional broker urls", required = false, order = 104)
+    @Description("Brokers serving the same queue as the broker url. Messages are balanced over all brokers by their recent latency, and failing brokers are taken out of rotation.")
+    String[] additionalBrokerUrls;
+
+    @Configured(value = "Broker failure threshold", required = false, order = 105)
+    @Description("Number of consecutive failures which takes a broker out of rotation.")
+    int brokerFailureThreshold = 3;
+
+    @Configured(value = "Broker ejection time (ms)", required = false, order = 106)
+    @Description("Time a failing broker is out of rotation before a message is sent to it again.")
+    long brokerEjectionMillis = 10000;
+
+    @Configured(value = "Broker probe interval (ms)", required = false, order = 107)
+    @Description("Interval of connection attempts to brokers which could not be connected to.")
+    long brokerProbeIntervalMillis = 5000;
+
+    @Configured(value = "Message template", required = false)
+    @Description("Template in which the values are merged into the message body. Not used by the map message format.")
     Resource messageTemplate;
 
     @Configured
@@ -69,23 +103,396 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
     @Configured
     boolean includeTemplateAsHeader = true;
 
+    @Configured(value = "Template header strategy", required = false, order = 170)
+    @Description("How the template header is sent: prepended to every message, once as a header message when the job starts, or only as a template ID message property.")
+    HeaderStrategy headerStrategy = HeaderStrategy.INLINE;
+
+    @Configured(value = "Message format", required = false, order = 180)
+    @Description("Send the rendered body as a text message, or encoded with the template encoding as a bytes message. A map message contains the values by field name instead, without a template.")
+    MessageFormat messageFormat = MessageFormat.TEXT;
+
+    @Configured(value = "Compression threshold (bytes)", required = false, order = 181)
+    @Description("Bytes message bodies larger than this are compressed. Use -1 to never compress.")
+    int compressionThreshold = 4096;
+
+    @Configured(value = "Stream message bodies", required = false, order = 182)
+    @Description("Write the template straight into bytes messages instead of rendering each message into a String first, for large templates. Sends through the JMS API and does not compress.")
+    boolean streamMessageBodies = false;
+
+    @Configured(value = "Max chunk size (bytes)", required = false, order = 183)
+    @Description("Streamed message bodies larger than this are split into numbered chunk messages, sent in one transaction. Use 0 to never split bodies.")
+    int streamChunkBytes = 0;
+
+    @Configured(value = "Use Camel route", required = false, order = 190)
+    @Description("Send through a Camel route. When disabled, messages are sent directly with a JMS session per thread.")
+    boolean useCamelRoute = true;
+
+    @Configured(value = "Batch size", required = false, order = 200)
+    @Description("Number of messages to send per transacted session commit. Use 1 to send each message on its own.")
+    int batchSize = 1;
+
+    @Configured(value = "Max batch linger (ms)", required = false, order = 201)
+    @Description("Max time a message may wait for its batch to be committed. Use 0 to only commit full batches.")
+    long maxBatchLingerMillis = 1000;
+
+    @Configured(value = "Async sender threads", required = false, order = 210)
+    @Description("Number of background threads sending messages. Use 0 to send on the row processing threads.")
+    int asyncSenderThreads = 0;
+
+    @Configured(value = "Async queue capacity", required = false, order = 211)
+    @Description("Max number of rendered messages waiting for an async sender thread.")
+    int asyncQueueCapacity = 1000;
+
+    @Configured(value = "Ordered by ID", required = false, order = 212)
+    @Description("Send the messages of an ID in order, on the async sender thread chosen by a hash of the ID, while messages of different IDs are sent in parallel. The ID is also set as JMSXGroupID, so that the broker delivers the messages of an ID to the same consumer.")
+    boolean orderedById = false;
+
+    @Configured(value = "Send on virtual threads", required = false, order = 213)
+    @Description("Send each message on a thread of its own, so that blocking sends to a slow broker do not need more row processing or async sender threads. Uses virtual threads on Java 21 or later. Requires the Camel route.")
+    boolean virtualThreadSends = false;
+
+    @Configured(value = "Max virtual thread sends", required = false, order = 214)
+    @Description("Max number of messages sent on their own thread at the same time.")
+    int maxVirtualThreadSends = 256;
+
+    @Configured(value = "Max retries", required = false, order = 220)
+    @Description("Max number of times a failed message is retried, with exponential backoff.")
+    int maxRetries = 0;
+
+    @Configured(value = "Retry initial backoff (ms)", required = false, order = 221)
+    long retryInitialBackoffMillis = 100;
+
+    @Configured(value = "Retry max backoff (ms)", required = false, order = 222)
+    long retryMaxBackoffMillis = 10000;
+
+    @Configured(value = "Circuit breaker failure threshold", required = false, order = 223)
+    @Description("Number of consecutive failures which stops sending to the broker for a while. Use 0 to disable.")
+    int circuitBreakerFailureThreshold = 0;
+
+    @Configured(value = "Circuit breaker open time (ms)", required = false, order = 224)
+    long circuitBreakerOpenMillis = 5000;
+
+    @Configured(value = "Buffer while circuit open", required = false, order = 225)
+    @Description("Keep messages until the broker recovers instead of failing them while the circuit breaker is open.")
+    boolean bufferWhileCircuitOpen = false;
+
+    @Configured(value = "Max buffer time (ms)", required = false, order = 226)
+    @Description("Time a message is kept while the circuit breaker is open, before it fails.")
+    long maxBufferMillis = 300000;
+
+    @Configured(value = "Retry completion timeout (ms)", required = false, order = 227)
+    @Description("Time to wait for pending retries at the end of the job. Messages still waiting for a retry then fail.")
+    long retryCompletionTimeoutMillis = 600000;
+
+    @Configured(value = "Rows per envelope", required = false, order = 230)
+    @Description("Number of rows to pack into a single envelope message. Use 1 to send each row as its own message.")
+    int envelopeMaxRows = 1;
+
+    @Configured(value = "Max envelope size (chars)", required = false, order = 231)
+    @Description("An envelope is sent before it would grow beyond this size.")
+    int envelopeMaxChars = 1048576;
+
+    @Configured(value = "Envelope header", required = false, order = 232)
+    String envelopeHeader = "";
+
+    @Configured(value = "Envelope row separator", required = false, order = 233)
+    String envelopeRowSeparator = "\n";
+
+    @Configured(value = "Envelope footer", required = false, order = 234)
+    String envelopeFooter = "";
+
+    @Configured(value = "Tuning preset", required = false, order = 250)
+    @Description("Throughput sends asynchronously and non persistent, safety sends synchronously and persistent. Custom uses the producer settings below.")
+    TuningPreset tuningPreset = TuningPreset.CUSTOM;
+
+    @Configured(value = "Max connections", required = false, order = 251)
+    int maxConnections = ProducerTuning.DEFAULT_MAX_CONNECTIONS;
+
+    @Configured(value = "Max sessions per connection", required = false, order = 252)
+    int maxSessionsPerConnection = ProducerTuning.DEFAULT_MAX_SESSIONS_PER_CONNECTION;
+
+    @Configured(value = "Async send", required = false, order = 253)
+    @Description("Send without waiting for the broker to acknowledge each message.")
+    boolean useAsyncSend = false;
+
+    @Configured(value = "Producer window size (bytes)", required = false, order = 254)
+    @Description("Max number of asynchronously sent bytes not yet acknowledged by the broker. Use 0 for no limit.")
+    int producerWindowSize = 0;
+
+    @Configured(value = "Persistent delivery", required = false, order = 255)
+    boolean persistentDelivery = true;
+
+    @Configured(value = "Optimize acknowledge", required = false, order = 256)
+    boolean optimizeAcknowledge = false;
+
+    @Configured(value = "Outbox directory", required = false, order = 260)
+    @Description("Write messages to a journal in this directory, from which they are forwarded to the broker in the background. Messages left over from a previous run are sent first.")
+    File outboxDirectory;
+
+    @Configured(value = "Outbox segment size (MB)", required = false, order = 261)
+    int outboxSegmentSizeMb = 16;
+
+    @Configured(value = "Outbox drain timeout (ms)", required = false, order = 262)
+    @Description("Max time to wait for the outbox to be forwarded when the job ends. Messages not forwarded in time are sent by the next run.")
+    long outboxDrainTimeoutMillis = 60000;
+
+    @Configured(value = "Outbox max retries", required = false, order = 263)
+    @Description("Number of times a message is retried before it is removed from the outbox and reported as failed, so that a message the broker always rejects does not hold up the messages after it. Use -1 to retry until sent.")
+    int outboxMaxRetries = 100;
+
+    @Configured(value = "Dedup file", required = false, order = 270)
+    @Description("Skip rows which were sent before with the same ID and message body, as remembered in this file. The file is updated when the job ends.")
+    File dedupFile;
+
+    @Configured(value = "Dedup cache size (rows)", required = false, order = 271)
+    @Description("Max number of sent rows to remember, using 8 bytes of memory each. The least recently sent rows are forgotten first.")
+    int dedupMaxEntries = 4194304;
+
+    @Configured(value = "Adaptive concurrency", required = false, order = 280)
+    @Description("Adapt the number of sends in flight to the broker latency: raised while latency stays flat, halved when latency or failures rise.")
+    boolean adaptiveConcurrency = false;
+
+    @Configured(value = "Max in-flight sends", required = false, order = 281)
+    int maxInFlightSends = 64;
+
+    @Configured(value = "Max messages per second", required = false, order = 282)
+    @Description("Hard limit of the send rate. Use 0 for no limit.")
+    int maxMessagesPerSecond = 0;
+
+    @Configured(value = "Share senders", required = false, order = 290)
+    @Description("Share the connections of analyzers sending to the same queue with the same settings, instead of connecting for each analyzer.")
+    boolean shareSenders = false;
+
+    @Configured(value = "Shared sender idle time (ms)", required = false, order = 291)
+    @Description("Time a shared sender stays connected after the last job using it has finished, so that the next run can reuse it. Use 0 to disconnect right away.")
+    long sharedSenderIdleMillis = 0;
+
+    @Configured(value = "Progress interval (s)", required = false, order = 300)
+    @Description("Publish a summary of the progress to the execution log at this interval: the messages sent, failed and in flight, the message rate and the queue depth. Use 0 to not publish progress.")
+    int progressIntervalSeconds = 60;
+
+    @Configured(value = "Register JMX MBean", required = false, order = 301)
+    @Description("Register an MBean with the live counters of the job and the state of its senders, to watch the job with a JMX console.")
+    boolean registerMBean = true;
+
     @Provided
     ComponentContext _componentContext;
 
-    private String _messageTemplateString;
-    private JMSMessageToQueueSender _jmsMessageSender;
+    private MessageTemplate _messageTemplate;
+    private JMSMessageSender _jmsMessageSender;
+    private JMSBatchMessageSender _batchMessageSender;
+    private StreamingMessageSender _streamingSender;
+    private MapMessageSender _mapMessageSender;
+    private AsyncSendPipeline _asyncSendPipeline;
+    private VirtualThreadSendExecutor _virtualThreadSendExecutor;
+    private RetryingMessageSender _retryingMessageSender;
+    private BytesPayloadEncoder _payloadEncoder;
+    private EnvelopeAggregator _envelopeAggregator;
+    private OutboxJournal _outboxJournal;
+    private OutboxForwarder _outboxForwarder;
+    private DedupCache _dedupCache;
+    private AdaptiveSendLimiter _sendLimiter;
+    private Map<String, Object> _messageProperties;
+    private boolean _inlineTemplateHeader;
+    private ProducerTuning _producerTuning;
     private AtomicInteger _successCount;
     private AtomicInteger _skipCount;
-    private Collection<SendMessageToJMSQueueResult> _failures;
+    private FailureStore _failures;
+    private boolean _resultCreated;
+    private LatencyHistogram _renderTimes;
+    private LatencyHistogram _sendTimes;
+    private long _startTimeMillis;
+    private SendProgressMonitor _progressMonitor;
+    private List<ConnectionPoolState> _poolStates;
 
     /**
      * Performs validation.
      */
     @Validate
     public void validate() {
-        if (messageTemplate == null) {
+        if (messageTemplate == null && messageFormat != MessageFormat.MAP) {
             throw new IllegalStateException("Message template needs to be provided");
         }
+        try {
+            createValueFormatters();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Invalid field format: " + e.getMessage(), e);
+        }
+        if (batchSize < 1) {
+            throw new IllegalStateException("Batch size must be 1 or larger");
+        }
+        if (maxBatchLingerMillis < 0) {
+            throw new IllegalStateException("Max batch linger cannot be negative");
+        }
+        if (asyncSenderThreads < 0) {
+            throw new IllegalStateException("Async sender threads cannot be negative");
+        }
+        if (asyncSenderThreads > 0 && asyncQueueCapacity < 1) {
+            throw new IllegalStateException("Async queue capacity must be 1 or larger");
+        }
+        if (virtualThreadSends) {
+            if (maxVirtualThreadSends < 1) {
+                throw new IllegalStateException("Max virtual thread sends must be 1 or larger");
+            }
+            if (asyncSenderThreads > 0 || orderedById) {
+                throw new IllegalStateException("Sending on virtual threads cannot be combined with async sender "
+                        + "threads or ordering by ID");
+            }
+            if (!useCamelRoute || batchSize > 1) {
+                // these keep a JMS session per thread, which would be a session per message
+                throw new IllegalStateException("Sending on virtual threads requires the Camel route, "
+                        + "and cannot be combined with batches");
+            }
+            if (envelopeMaxRows > 1) {
+                // envelopes are collected per thread, which would be an envelope per row
+                throw new IllegalStateException("Sending on virtual threads cannot be combined with envelopes");
+            }
+        }
+        if (orderedById) {
+            if (asyncSenderThreads < 1) {
+                throw new IllegalStateException("Ordered by ID requires async sender threads");
+            }
+            if (batchSize > 1 || envelopeMaxRows > 1 || maxRetries > 0 || circuitBreakerFailureThreshold > 0
+                    || isBrokerSet() || isOutbox()) {
+                // these send the messages of an ID out of order, or not with an ID of their own
+                throw new IllegalStateException("Ordered by ID cannot be combined with batches, envelopes, "
+                        + "retries, additional brokers or the outbox");
+            }
+        }
+        if (maxRetries < 0) {
+            throw new IllegalStateException("Max retries cannot be negative");
+        }
+        if (maxRetries > 0 && (retryInitialBackoffMillis < 1 || retryMaxBackoffMillis < retryInitialBackoffMillis)) {
+            throw new IllegalStateException("Retry backoff must be 1 or larger, and max backoff cannot be smaller");
+        }
+        if (circuitBreakerFailureThreshold < 0) {
+            throw new IllegalStateException("Circuit breaker failure threshold cannot be negative");
+        }
+        if (bufferWhileCircuitOpen && maxBufferMillis < 1) {
+            throw new IllegalStateException("Max buffer time must be 1 or larger");
+        }
+        if (retryCompletionTimeoutMillis < 0) {
+            throw new IllegalStateException("Retry completion timeout cannot be negative");
+        }
+        if (batchSize > 1 && (maxRetries > 0 || circuitBreakerFailureThreshold > 0)) {
+            throw new IllegalStateException("Batches cannot be combined with retries or a circuit breaker");
+        }
+        if (envelopeMaxRows < 1) {
+            throw new IllegalStateException("Rows per envelope must be 1 or larger");
+        }
+        if (envelopeMaxRows > 1 && batchSize > 1) {
+            throw new IllegalStateException("Envelopes cannot be combined with batches");
+        }
+        if (envelopeMaxRows > 1 && envelopeMaxChars < 1) {
+            throw new IllegalStateException("Max envelope size must be 1 or larger");
+        }
+        if (envelopeMaxRows > 1 && (maxRetries > 0 || circuitBreakerFailureThreshold > 0)) {
+            throw new IllegalStateException("Envelopes cannot be combined with retries or a circuit breaker");
+        }
+        if (isSharded()) {
+            if (shardBrokerUrls != null && shardBrokerUrls.length > 0
+                    && shardBrokerUrls.length != shardQueueNames.length) {
+                throw new IllegalStateException("A broker url must be provided for every shard queue");
+            }
+            if (batchSize > 1 || envelopeMaxRows > 1) {
+                throw new IllegalStateException("Shards cannot be combined with batches or envelopes");
+            }
+            if (isBrokerSet()) {
+                throw new IllegalStateException("Shards cannot be combined with additional broker urls");
+            }
+        }
+        if (isBrokerSet()) {
+            if (batchSize > 1) {
+                throw new IllegalStateException("Additional broker urls cannot be combined with batches");
+            }
+            if (brokerFailureThreshold < 1 || brokerEjectionMillis < 1 || brokerProbeIntervalMillis < 1) {
+                throw new IllegalStateException(
+                        "Broker failure threshold, ejection time and probe interval must be 1 or larger");
+            }
+        }
+        if (maxConnections < 1 || maxSessionsPerConnection < 1) {
+            throw new IllegalStateException("Max connections and sessions per connection must be 1 or larger");
+        }
+        if (producerWindowSize < 0) {
+            throw new IllegalStateException("Producer window size cannot be negative");
+        }
+        if (adaptiveConcurrency || maxMessagesPerSecond > 0) {
+            if (batchSize > 1) {
+                throw new IllegalStateException(
+                        "Adaptive concurrency and max messages per second cannot be combined with batches");
+            }
+            if (maxInFlightSends < 1 || maxMessagesPerSecond < 0) {
+                throw new IllegalStateException(
+                        "Max in-flight sends must be 1 or larger, and max messages per second cannot be negative");
+            }
+        }
+        if (streamMessageBodies) {
+            if (messageFormat != MessageFormat.BYTES) {
+                throw new IllegalStateException("Streaming message bodies requires the bytes message format");
+            }
+            if (streamChunkBytes < 0) {
+                throw new IllegalStateException("Max chunk size cannot be negative");
+            }
+            if (isHoldingMessageBodies()) {
+                throw new IllegalStateException("Streaming message bodies cannot be combined with batches, "
+                        + "envelopes, async senders, retries, shards, additional brokers, the outbox, dedup or "
+                        + "send limits");
+            }
+        }
+        if (messageFormat == MessageFormat.MAP && isHoldingMessageBodies()) {
+            throw new IllegalStateException("The map message format cannot be combined with batches, envelopes, "
+                    + "async senders, retries, shards, additional brokers, the outbox, dedup or send limits");
+        }
+        if (sharedSenderIdleMillis < 0) {
+            throw new IllegalStateException("Shared sender idle time cannot be negative");
+        }
+        if (progressIntervalSeconds < 0) {
+            throw new IllegalStateException("Progress interval cannot be negative");
+        }
+        if (dedupFile != null && dedupMaxEntries < 1) {
+            throw new IllegalStateException("Dedup cache size must be 1 or larger");
+        }
+        if (isOutbox()) {
+            if (batchSize > 1 || envelopeMaxRows > 1) {
+                throw new IllegalStateException("The outbox cannot be combined with batches or envelopes");
+            }
+            if (outboxSegmentSizeMb < 1) {
+                throw new IllegalStateException("Outbox segment size must be 1 or larger");
+            }
+            if (retryInitialBackoffMillis < 1 || retryMaxBackoffMillis < retryInitialBackoffMillis) {
+                throw new IllegalStateException("Retry backoff must be 1 or larger, and max backoff cannot be smaller");
+            }
+        }
+    }
+
+    /**
+     * Resolves the formatter of each value from the data type of its column
+     * and its format pattern.
+     *
+     * @return
+     */
+    private ValueFormatter[] createValueFormatters() {
+        if (values == null) {
+            return new ValueFormatter[0];
+        }
+        final ValueFormatter[] formatters = new ValueFormatter[values.length];
+        for (int i = 0; i < values.length; i++) {
+            final String pattern = fieldFormats != null && i < fieldFormats.length ? fieldFormats[i] : null;
+            formatters[i] = ValueFormatter.create(values[i].getDataType(), pattern);
+        }
+        return formatters;
+    }
+
+    /**
+     * Determines if the configuration keeps rendered message bodies around,
+     * which streamed bodies and map messages do not have.
+     *
+     * @return
+     */
+    private boolean isHoldingMessageBodies() {
+        return batchSize > 1 || envelopeMaxRows > 1 || asyncSenderThreads > 0 || virtualThreadSends || maxRetries > 0
+                || circuitBreakerFailureThreshold > 0 || isSharded() || isBrokerSet() || isOutbox()
+                || dedupFile != null || adaptiveConcurrency || maxMessagesPerSecond > 0;
     }
 
     /**
@@ -93,15 +500,378 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
      */
     @Initialize
     public void init() {
-        _messageTemplateString = loadTemplate(messageTemplate);
-        try {
-            _jmsMessageSender = new JMSMessageToQueueSender(brokerUrl, jmsQueueName);
-        } catch (Exception e) {
-            throw new IllegalStateException("JMS sender could not be initialized", e);
+        final String messageTemplateString = loadTemplate(messageTemplate);
+        if (messageTemplateString == null || fields == null) {
+            _messageTemplate = null;
+        } else {
+            _messageTemplate = MessageTemplate.compile(messageTemplateString, fields).withFormatters(
+                    createValueFormatters());
         }
         _successCount = new AtomicInteger();
         _skipCount = new AtomicInteger();
-        _failures = new ConcurrentLinkedQueue<SendMessageToJMSQueueResult>();
+        _poolStates = new CopyOnWriteArrayList<ConnectionPoolState>();
+        _failures = new FailureStore();
+        _renderTimes = new LatencyHistogram();
+        _sendTimes = new LatencyHistogram();
+        _startTimeMillis = System.currentTimeMillis();
+        if (dedupFile != null) {
+            try {
+                _dedupCache = DedupCache.load(dedupFile, dedupMaxEntries);
+            } catch (IOException e) {
+                throw new IllegalStateException("Dedup file could not be read: " + dedupFile, e);
+            }
+        }
+
+        // map messages are not rendered from the template
+        final boolean templateHeader = includeTemplateAsHeader && _messageTemplate != null
+                && messageFormat != MessageFormat.MAP;
+        final boolean inlineHeader = templateHeader && headerStrategy == HeaderStrategy.INLINE;
+        if (templateHeader && !inlineHeader) {
+            _messageProperties = Collections.<String, Object> singletonMap(HeaderStrategy.TEMPLATE_ID_PROPERTY,
+                    _messageTemplate.getTemplateId());
+        } else {
+            _messageProperties = Collections.emptyMap();
+        }
+        // envelopes carry the inline header themselves, bytes messages get the header bytes encoded only once
+        final boolean inlineHeaderPerRow = inlineHeader && envelopeMaxRows == 1;
+        _inlineTemplateHeader = inlineHeaderPerRow && messageFormat != MessageFormat.BYTES;
+        final String bytesPrefix = inlineHeaderPerRow ? _messageTemplate.getTemplateString() + '\n' : null;
+        if (messageFormat == MessageFormat.BYTES && !streamMessageBodies) {
+            _payloadEncoder = new BytesPayloadEncoder(templateEncoding, compressionThreshold, bytesPrefix);
+        }
+
+        _producerTuning = new ProducerTuning(maxConnections, maxSessionsPerConnection, useAsyncSend,
+                producerWindowSize, persistentDelivery, optimizeAcknowledge).withPreset(tuningPreset);
+        if (adaptiveConcurrency || maxMessagesPerSecond > 0) {
+            _sendLimiter = new AdaptiveSendLimiter(maxInFlightSends, adaptiveConcurrency, maxMessagesPerSecond);
+        }
+
+        if (messageFormat == MessageFormat.MAP) {
+            try {
+                _mapMessageSender = new MapMessageSender(brokerUrl, jmsQueueName, fields, _messageProperties,
+                        _producerTuning);
+                _poolStates.add(_mapMessageSender.getPoolState());
+            } catch (Exception e) {
+                throw new IllegalStateException("JMS sender could not be initialized", e);
+            }
+            // to be closed
+            _jmsMessageSender = _mapMessageSender;
+        } else if (streamMessageBodies) {
+            final MessageTemplate template = _messageTemplate == null ? MessageTemplate.compile(
+                    messageTemplateString, null) : _messageTemplate;
+            try {
+                _streamingSender = new StreamingMessageSender(brokerUrl, jmsQueueName, template, templateEncoding,
+                        bytesPrefix, streamChunkBytes, _messageProperties, _producerTuning);
+                _poolStates.add(_streamingSender.getPoolState());
+            } catch (Exception e) {
+                throw new IllegalStateException("JMS sender could not be initialized", e);
+            }
+            // for the header message, and to be closed
+            _jmsMessageSender = _streamingSender;
+            if (templateHeader && headerStrategy == HeaderStrategy.HEADER_MESSAGE) {
+                sendHeaderMessage();
+            }
+        } else if (isOutbox()) {
+            // the sender is created by the forwarder, so that the job can start while the broker is unavailable
+            initOutbox(templateHeader && headerStrategy == HeaderStrategy.HEADER_MESSAGE);
+        } else {
+            try {
+                if (batchSize > 1) {
+                    _batchMessageSender = new JMSBatchMessageSender(brokerUrl, jmsQueueName, batchSize,
+                            maxBatchLingerMillis, _payloadEncoder, _messageProperties, _producerTuning,
+                            new SendResultRecorder());
+                    _poolStates.add(_batchMessageSender.getPoolState());
+                } else {
+                    _jmsMessageSender = createMessageSender();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("JMS sender could not be initialized", e);
+            }
+            if (templateHeader && headerStrategy == HeaderStrategy.HEADER_MESSAGE) {
+                sendHeaderMessage();
+            }
+        }
+
+        if (envelopeMaxRows > 1) {
+            String header = envelopeHeader == null ? "" : envelopeHeader;
+            if (inlineHeader) {
+                // the template is included once per envelope instead of once per row
+                header = header + _messageTemplate.getTemplateString() + '\n';
+            }
+            _envelopeAggregator = new EnvelopeAggregator(header, envelopeRowSeparator, envelopeFooter,
+                    envelopeMaxRows, envelopeMaxChars, new EnvelopeAggregator.EnvelopeHandler() {
+                        @Override
+                        public void sendEnvelope(String envelopeBody, List<String> rowIds) {
+                            SendMessageToJMSQueueAnalyzer.this.sendEnvelope(envelopeBody, rowIds);
+                        }
+                    });
+        } else if (_jmsMessageSender != null && (maxRetries > 0 || circuitBreakerFailureThreshold > 0)) {
+            final CircuitBreaker circuitBreaker = new CircuitBreaker(circuitBreakerFailureThreshold,
+                    circuitBreakerOpenMillis);
+            _retryingMessageSender = new RetryingMessageSender(_jmsMessageSender, brokerUrl, jmsQueueName,
+                    maxRetries, retryInitialBackoffMillis, retryMaxBackoffMillis, circuitBreaker,
+                    bufferWhileCircuitOpen, maxBufferMillis, MAX_PENDING_RETRIES, new SendResultRecorder());
+        }
+        final AsyncSendPipeline.MessageHandler asyncHandler = new AsyncSendPipeline.MessageHandler() {
+            @Override
+            public void handle(String messageBody, String correlationId) {
+                sendMessage(messageBody, correlationId);
+            }
+        };
+        if (asyncSenderThreads > 0) {
+            _asyncSendPipeline = new AsyncSendPipeline(asyncSenderThreads, asyncQueueCapacity, orderedById,
+                    asyncHandler, new SendResultRecorder());
+        } else if (virtualThreadSends) {
+            _virtualThreadSendExecutor = new VirtualThreadSendExecutor(maxVirtualThreadSends, asyncHandler,
+                    new SendResultRecorder());
+        }
+        if (progressIntervalSeconds > 0 || registerMBean) {
+            initProgressMonitor();
+        }
+    }
+
+    private void initProgressMonitor() {
+        _progressMonitor = new SendProgressMonitor(brokerUrl, jmsQueueName, tuningPreset.getName() + ": "
+                + _producerTuning.getSummary(), new SendProgressMonitor.Counters() {
+            @Override
+            public int getSentCount() {
+                return _successCount.get();
+            }
+
+            @Override
+            public int getFailedCount() {
+                return _failures.size();
+            }
+
+            @Override
+            public int getSkippedCount() {
+                return _skipCount.get();
+            }
+
+            @Override
+            public int getInFlightCount() {
+                int inFlightCount = 0;
+                if (_asyncSendPipeline != null) {
+                    // the queued messages are not being sent yet
+                    inFlightCount += Math.max(0, _asyncSendPipeline.getInFlightCount()
+                            - _asyncSendPipeline.getQueueDepth());
+                }
+                if (_virtualThreadSendExecutor != null) {
+                    inFlightCount += _virtualThreadSendExecutor.getInFlightCount();
+                }
+                if (_retryingMessageSender != null) {
+                    inFlightCount += _retryingMessageSender.getPendingCount();
+                }
+                return inFlightCount;
+            }
+
+            @Override
+            public int getQueueDepth() {
+                int queueDepth = 0;
+                if (_asyncSendPipeline != null) {
+                    queueDepth += _asyncSendPipeline.getQueueDepth();
+                }
+                if (_outboxForwarder != null) {
+                    queueDepth += getOutboxPendingCount();
+                }
+                return queueDepth;
+            }
+
+            @Override
+            public int getConcurrencyLimit() {
+                return _sendLimiter == null ? 0 : _sendLimiter.getLimit();
+            }
+
+            @Override
+            public int getOpenConnectionCount() {
+                int count = 0;
+                for (ConnectionPoolState poolState : _poolStates) {
+                    count += poolState.getConnectionCount();
+                }
+                return count;
+            }
+
+            @Override
+            public int getOpenSessionCount() {
+                int count = 0;
+                for (ConnectionPoolState poolState : _poolStates) {
+                    count += poolState.getOpenSessionCount();
+                }
+                return count;
+            }
+        });
+        if (registerMBean) {
+            _progressMonitor.registerMBean();
+        }
+        if (progressIntervalSeconds > 0) {
+            _progressMonitor.start(progressIntervalSeconds * 1000L, new SendProgressMonitor.ProgressListener() {
+                @Override
+                public void onProgress(String summary) {
+                    _componentContext.publishMessage(new ExecutionLogMessage(summary));
+                }
+            });
+        } else {
+            // only samples the message rate shown by the MBean
+            _progressMonitor.start(RATE_SAMPLE_INTERVAL_MILLIS, null);
+        }
+    }
+
+    private void initOutbox(boolean headerMessage) {
+        try {
+            _outboxJournal = new OutboxJournal(outboxDirectory, outboxSegmentSizeMb * 1024 * 1024);
+            if (headerMessage) {
+                _outboxJournal.append(OutboxJournal.TYPE_HEADER, _messageTemplate.getTemplateId(),
+                        _messageTemplate.getTemplateString());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Outbox could not be opened: " + outboxDirectory, e);
+        }
+        _outboxForwarder = new OutboxForwarder(_outboxJournal, new OutboxForwarder.RecordHandler() {
+            @Override
+            public SendMessageToJMSQueueResult forward(OutboxJournal.Record record) throws Exception {
+                return forwardOutboxRecord(record);
+            }
+        }, new SendResultRecorder(), retryInitialBackoffMillis, retryMaxBackoffMillis, outboxMaxRetries);
+    }
+
+    private int getOutboxPendingCount() {
+        return _outboxJournal.getAppendedRowCount() - _outboxForwarder.getForwardedCount()
+                - _outboxForwarder.getFailedCount();
+    }
+
+    private SendMessageToJMSQueueResult forwardOutboxRecord(OutboxJournal.Record record) throws Exception {
+        // only used by the forwarder thread
+        if (_jmsMessageSender == null) {
+            _jmsMessageSender = createMessageSender();
+        }
+        if (record.getType() == OutboxJournal.TYPE_HEADER) {
+            return sendHeader(_jmsMessageSender, record.getBody(), record.getId());
+        }
+        final long sendStartNanos = System.nanoTime();
+        final SendMessageToJMSQueueResult result = _jmsMessageSender.sendMessage(brokerUrl, jmsQueueName,
+                record.getBody(), record.getId());
+        _sendTimes.recordSince(sendStartNanos);
+        return result;
+    }
+
+    private boolean isOutbox() {
+        return outboxDirectory != null;
+    }
+
+    private boolean isBrokerSet() {
+        return additionalBrokerUrls != null && additionalBrokerUrls.length > 0;
+    }
+
+    private boolean isSharded() {
+        return shardQueueNames != null && shardQueueNames.length > 0;
+    }
+
+    private JMSMessageSender createUnsharedSender(String broker, String queueName,
+            Map<String, Object> messageProperties) throws Exception {
+        if (useCamelRoute) {
+            return new JMSMessageToQueueSender(broker, queueName, _payloadEncoder, messageProperties,
+                    _producerTuning);
+        }
+        final JMSDirectMessageSender sender = new JMSDirectMessageSender(broker, queueName, _payloadEncoder,
+                messageProperties, _producerTuning);
+        _poolStates.add(sender.getPoolState());
+        return sender;
+    }
+
+    private JMSMessageSender createMessageSender() throws Exception {
+        final Map<String, Object> messageProperties = _messageProperties;
+        if (isSharded()) {
+            final String[] brokerUrls = new String[shardQueueNames.length];
+            final JMSMessageSender[] senders = new JMSMessageSender[shardQueueNames.length];
+            for (int i = 0; i < shardQueueNames.length; i++) {
+                final boolean ownBroker = shardBrokerUrls != null && shardBrokerUrls.length > 0;
+                brokerUrls[i] = ownBroker ? shardBrokerUrls[i] : brokerUrl;
+                // every shard has its own connection pool
+                senders[i] = createSender(brokerUrls[i], shardQueueNames[i], messageProperties);
+            }
+            return new ShardedMessageSender(brokerUrls, shardQueueNames, senders);
+        }
+        if (isBrokerSet()) {
+            final String[] brokerUrls = new String[additionalBrokerUrls.length + 1];
+            brokerUrls[0] = brokerUrl;
+            System.arraycopy(additionalBrokerUrls, 0, brokerUrls, 1, additionalBrokerUrls.length);
+            return new BrokerSetMessageSender(brokerUrls, new BrokerSetMessageSender.SenderFactory() {
+                @Override
+                public JMSMessageSender createSender(String brokerUrl) throws Exception {
+                    return SendMessageToJMSQueueAnalyzer.this.createSender(brokerUrl, jmsQueueName,
+                            messageProperties);
+                }
+            }, brokerFailureThreshold, brokerEjectionMillis, brokerProbeIntervalMillis);
+        }
+        return createSender(brokerUrl, jmsQueueName, messageProperties);
+    }
+
+    private JMSMessageSender createSender(final String broker, final String queueName,
+            final Map<String, Object> messageProperties) throws Exception {
+        final JMSMessageSender sender;
+        // bytes senders are not shared, their encoder counts the bytes of this analyzer only
+        if (shareSenders && _payloadEncoder == null) {
+            final String configurationKey = (useCamelRoute ? "camel " : "direct ") + messageProperties + ' '
+                    + _producerTuning;
+            sender = SenderRegistry.getInstance().lease(broker, queueName, configurationKey,
+                    sharedSenderIdleMillis, new SenderRegistry.SenderFactory() {
+                        @Override
+                        public JMSMessageSender createSender() throws Exception {
+                            return createUnsharedSender(broker, queueName, messageProperties);
+                        }
+                    });
+        } else {
+            sender = createUnsharedSender(broker, queueName, messageProperties);
+        }
+        if (_sendLimiter != null) {
+            // a single limiter for all destinations
+            return new ThrottledMessageSender(sender, _sendLimiter);
+        }
+        return sender;
+    }
+
+    private void sendHeaderMessage() {
+        final SendMessageToJMSQueueResult result;
+        try {
+            if (_jmsMessageSender != null) {
+                result = sendHeader(_jmsMessageSender, _messageTemplate.getTemplateString(),
+                        _messageTemplate.getTemplateId());
+            } else {
+                // the batch sender only reports rows, so the header message is sent on its own
+                final JMSMessageSender headerSender = new JMSDirectMessageSender(brokerUrl, jmsQueueName,
+                        _payloadEncoder, _messageProperties, _producerTuning);
+                try {
+                    result = sendHeader(headerSender, _messageTemplate.getTemplateString(),
+                            _messageTemplate.getTemplateId());
+                } finally {
+                    headerSender.close();
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Template header message could not be sent", e);
+        }
+        if (!result.isSuccessful()) {
+            throw new IllegalStateException("Template header message could not be sent", result.getError());
+        }
+    }
+
+    private static SendMessageToJMSQueueResult sendHeader(JMSMessageSender sender, String templateString,
+            String templateId) {
+        final Map<String, Object> properties = Collections.<String, Object> singletonMap(
+                HeaderStrategy.MESSAGE_TYPE_PROPERTY, HeaderStrategy.MESSAGE_TYPE_HEADER);
+        if (sender instanceof ShardedMessageSender) {
+            // every shard receives the header message
+            SendMessageToJMSQueueResult result = SendMessageToJMSQueueResult.success();
+            for (JMSMessageSender shardSender : ((ShardedMessageSender) sender).getShardSenders()) {
+                final SendMessageToJMSQueueResult shardResult = shardSender.sendMessage(templateString,
+                        templateId, properties);
+                if (!shardResult.isSuccessful()) {
+                    result = shardResult;
+                }
+            }
+            return result;
+        }
+        return sender.sendMessage(templateString, templateId, properties);
     }
 
     private String loadTemplate(Resource res) {
@@ -121,63 +891,188 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
      */
     @Override
     public void run(InputRow row, int distinctCount) {
+        final long renderStartNanos = System.nanoTime();
         final List<Object> rowValues = row.getValues(values);
+        final Object idValue = row.getValue(idColumn);
+        // most IDs are strings already
+        final String id = idValue instanceof String ? (String) idValue : ConvertToStringTransformer
+                .transformValue(idValue);
+        if (_streamingSender != null || _mapMessageSender != null) {
+            // no body is rendered up front, so the send time includes building the message
+            sendRowValues(rowValues, id);
+            return;
+        }
 
-        final String messageBody = buildMessageBodyFromTemplate(_messageTemplateString, fields, rowValues);
-        final String id = ConvertToStringTransformer.transformValue(row.getValue(idColumn));
+        final String messageBody = buildMessageBody(_messageTemplate, rowValues, _inlineTemplateHeader);
+        _renderTimes.recordSince(renderStartNanos);
 
-        final SendMessageToJMSQueueResult result = _jmsMessageSender.sendMessage(brokerUrl, jmsQueueName, messageBody,
-                id);
+        if (_dedupCache != null && !_dedupCache.markIfAbsent(id, messageBody)) {
+            // sent before, or earlier in this run
+            _skipCount.incrementAndGet();
+            return;
+        }
+        if (_asyncSendPipeline != null) {
+            // only blocks when the queue is full
+            _asyncSendPipeline.submit(messageBody, id);
+        } else if (_virtualThreadSendExecutor != null) {
+            // only blocks when the max number of sends is in flight
+            _virtualThreadSendExecutor.submit(messageBody, id);
+        } else {
+            sendMessage(messageBody, id);
+        }
+    }
+
+    private void sendMessage(String messageBody, String id) {
+        if (_envelopeAggregator != null) {
+            // results are recorded when the envelope is sent
+            _envelopeAggregator.add(messageBody, id);
+            return;
+        }
+        if (_outboxJournal != null) {
+            // results are recorded when forwarded to the broker
+            try {
+                _outboxJournal.append(OutboxJournal.TYPE_ROW, id, messageBody);
+            } catch (IOException e) {
+                recordFailure(SendMessageToJMSQueueResult.failure(id, e));
+            }
+            return;
+        }
+        final long sendStartNanos = System.nanoTime();
+        if (_batchMessageSender != null) {
+            // results are recorded when the batch is committed
+            _batchMessageSender.addMessage(messageBody, id);
+            _sendTimes.recordSince(sendStartNanos);
+            return;
+        }
+        if (_retryingMessageSender != null) {
+            // results are recorded when sent, possibly after retrying
+            _retryingMessageSender.send(messageBody, id);
+            _sendTimes.recordSince(sendStartNanos);
+            return;
+        }
+
+        final SendMessageToJMSQueueResult result;
+        if (orderedById && id != null) {
+            // broker-side message groups keep the messages of an ID on one consumer
+            result = _jmsMessageSender.sendMessage(messageBody, id, Collections.<String, Object> singletonMap(
+                    GROUP_ID_PROPERTY, id));
+        } else {
+            result = _jmsMessageSender.sendMessage(brokerUrl, jmsQueueName, messageBody, id);
+        }
+        _sendTimes.recordSince(sendStartNanos);
         if (result.isSuccessful()) {
-            _successCount.incrementAndGet();
+            recordSuccess();
         } else {
-            _failures.add(result);
+            recordFailure(result);
+        }
+    }
 
-            // report to the execution log
-            final Exception error = result.getError();
-            _componentContext.publishMessage(new ExecutionLogMessage("Sending Message '"
-                    + result.getMessageIdentifier() + " failed! " + (error == null ? "" : error.getMessage())));
+    private void sendRowValues(List<Object> rowValues, String id) {
+        final long sendStartNanos = System.nanoTime();
+        SendMessageToJMSQueueResult result;
+        try {
+            if (_mapMessageSender != null) {
+                result = _mapMessageSender.sendValues(rowValues, id);
+            } else {
+                result = _streamingSender.sendTemplate(rowValues, id);
+            }
+        } catch (RuntimeException e) {
+            result = SendMessageToJMSQueueResult.failure(id, e);
+        }
+        _sendTimes.recordSince(sendStartNanos);
+        if (result.isSuccessful()) {
+            recordSuccess();
+        } else {
+            recordFailure(result);
         }
     }
 
-    protected String buildMessageBodyFromTemplate(String messageTemplateString, String[] keys, List<Object> values) {
-        StringBuilder message = new StringBuilder();
-        if (includeTemplateAsHeader) {
-            message.append(messageTemplateString).append("\n");
+    private void sendEnvelope(String envelopeBody, List<String> rowIds) {
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(EnvelopeAggregator.ROW_COUNT_PROPERTY, rowIds.size());
+        properties.put(EnvelopeAggregator.ROW_IDS_PROPERTY, joinRowIds(rowIds));
+
+        final long sendStartNanos = System.nanoTime();
+        SendMessageToJMSQueueResult result;
+        try {
+            result = _jmsMessageSender.sendMessage(envelopeBody, rowIds.get(0), properties);
+        } catch (RuntimeException e) {
+            result = SendMessageToJMSQueueResult.failure(rowIds.get(0), e);
         }
+        _sendTimes.recordSince(sendStartNanos);
 
+        // every row of the envelope shares its outcome
+        for (String rowId : rowIds) {
+            if (result.isSuccessful()) {
+                recordSuccess();
+            } else {
+                recordFailure(SendMessageToJMSQueueResult.failure(rowId, result.getError()));
+            }
+        }
+    }
+
+    private static String joinRowIds(List<String> rowIds) {
+        final StringBuilder sb = new StringBuilder();
+        for (String rowId : rowIds) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(rowId);
+        }
+        return sb.toString();
+    }
+
+    private void recordSuccess() {
+        _successCount.incrementAndGet();
+    }
+
+    private void recordFailure(SendMessageToJMSQueueResult result) {
+        _failures.add(result);
+        if (_dedupCache != null) {
+            // so that the row is sent again by the next run
+            _dedupCache.forget(result.getMessageIdentifier());
+        }
+
+        // report to the execution log
+        final Exception error = result.getError();
+        _componentContext.publishMessage(new ExecutionLogMessage("Sending Message '" + result.getMessageIdentifier()
+                + " failed! " + (error == null ? "" : error.getMessage())));
+    }
+
+    protected String buildMessageBodyFromTemplate(String messageTemplateString, String[] keys, List<Object> values) {
         if (messageTemplateString == null || keys == null || values == null) {
             return "";
         }
-        for (int i = 0; i < keys.length; i++) {
-            String key = keys[i];
-            Object value = values.get(i);
-            messageTemplateString = replaceAll(messageTemplateString, key, value);
-        }
-        message.append(messageTemplateString);
-        return message.toString();
+        return buildMessageBody(MessageTemplate.compile(messageTemplateString, keys), values);
     }
 
     /**
-     * Does a plain text replacement
+     * Renders a message body in a single pass using a compiled template.
      * 
      * @param template
-     * @param key
-     * @param value
+     * @param values
      * @return
      */
-    private String replaceAll(String template, String key, Object value) {
-        if (Strings.isNullOrEmpty(key.trim())) {
-            return template;
-        }
+    protected String buildMessageBody(MessageTemplate template, List<Object> values) {
+        return buildMessageBody(template, values, includeTemplateAsHeader);
+    }
 
-        if (value == null) {
-            value = "";
+    private String buildMessageBody(MessageTemplate template, List<Object> values, boolean includeHeader) {
+        if (template == null || values == null) {
+            return "";
+        }
+        final String templateString = template.getTemplateString();
+        int capacity = template.getRenderedLengthHint();
+        if (includeHeader) {
+            capacity += templateString.length() + 1;
         }
-        final String valueQuoteReplacement = Matcher.quoteReplacement(value.toString());
 
-        // template is not null, no check needed
-        return template.replaceAll(key, valueQuoteReplacement);
+        final StringBuilder message = new StringBuilder(capacity);
+        if (includeHeader) {
+            message.append(templateString).append('\n');
+        }
+        template.renderTo(message, values);
+        return message.toString();
     }
 
     /**
@@ -185,7 +1080,60 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
      */
     @Override
     public SendMessageToJMSQueueAnalyzerResult getResult() {
-        return new SendMessageToJMSQueueAnalyzerResult(_successCount.get(), _skipCount.get(), _failures);
+        if (_asyncSendPipeline != null) {
+            _asyncSendPipeline.awaitCompletion();
+        }
+        if (_virtualThreadSendExecutor != null) {
+            _virtualThreadSendExecutor.awaitCompletion();
+        }
+        if (_envelopeAggregator != null) {
+            _envelopeAggregator.flush();
+        }
+        final SendStatistics statistics = new SendStatistics();
+        statistics.setProducerTuning(tuningPreset.getName() + ": " + _producerTuning.getSummary());
+        if (_retryingMessageSender != null) {
+            if (!_retryingMessageSender.awaitCompletion(retryCompletionTimeoutMillis)) {
+                _retryingMessageSender.abandonPending("Retries did not complete within "
+                        + retryCompletionTimeoutMillis + " ms");
+            }
+            statistics.setRetryCount(_retryingMessageSender.getRetryCount());
+            statistics.setCircuitOpenCount(_retryingMessageSender.getCircuitOpenCount());
+        }
+        if (_batchMessageSender != null) {
+            _batchMessageSender.flush();
+        }
+        if (_outboxForwarder != null) {
+            _outboxForwarder.awaitDrained(outboxDrainTimeoutMillis);
+            statistics.setOutboxReplayedCount(_outboxForwarder.getReplayedCount());
+            statistics.setOutboxPendingCount(getOutboxPendingCount());
+        }
+        if (_jmsMessageSender instanceof ShardedMessageSender) {
+            statistics.setShardStatistics(((ShardedMessageSender) _jmsMessageSender).getShardStatistics());
+        }
+        if (_jmsMessageSender instanceof BrokerSetMessageSender) {
+            final BrokerSetMessageSender brokerSet = (BrokerSetMessageSender) _jmsMessageSender;
+            statistics.setBrokerStatistics(brokerSet.getBrokerStatistics());
+            statistics.setFailoverCount(brokerSet.getFailoverCount());
+        }
+        if (_sendLimiter != null) {
+            statistics.setConcurrencyLimit(_sendLimiter.getLimit());
+            statistics.setThrottledMillis(_sendLimiter.getThrottledMillis());
+        }
+        if (_streamingSender != null) {
+            // streamed bodies are not compressed
+            statistics.setOriginalBytes(_streamingSender.getSentBytes());
+            statistics.setEncodedBytes(_streamingSender.getSentBytes());
+        }
+        if (_payloadEncoder != null) {
+            statistics.setOriginalBytes(_payloadEncoder.getOriginalBytes());
+            statistics.setEncodedBytes(_payloadEncoder.getEncodedBytes());
+        }
+        final long wallTimeMillis = System.currentTimeMillis() - _startTimeMillis;
+        // the result owns the spilled failures from now on
+        _failures.seal();
+        _resultCreated = true;
+        return new SendMessageToJMSQueueAnalyzerResult(_successCount.get(), _skipCount.get(), _failures,
+                _renderTimes.snapshot(), _sendTimes.snapshot(), wallTimeMillis, statistics);
     }
 
     /**
@@ -193,12 +1141,82 @@ public class SendMessageToJMSQueueAnalyzer implements Analyzer<SendMessageToJMSQ
      */
     @Close
     public void close() {
+        if (_progressMonitor != null) {
+            _progressMonitor.close();
+        }
+        if (_asyncSendPipeline != null) {
+            // waits for in-flight messages
+            _asyncSendPipeline.close();
+        }
+        if (_virtualThreadSendExecutor != null) {
+            // waits for in-flight messages
+            _virtualThreadSendExecutor.close();
+        }
+        if (_envelopeAggregator != null) {
+            // sends any partial envelopes
+            _envelopeAggregator.flush();
+        }
+        if (_retryingMessageSender != null) {
+            // waits for pending retries
+            _retryingMessageSender.close(retryCompletionTimeoutMillis);
+        }
+        if (_outboxForwarder != null) {
+            // unsent messages stay in the journal for the next run
+            _outboxForwarder.close(outboxDrainTimeoutMillis);
+            final int pendingCount = getOutboxPendingCount();
+            if (pendingCount > 0) {
+                _componentContext.publishMessage(new ExecutionLogMessage(pendingCount
+                        + " messages were left in the outbox " + outboxDirectory + ", they are sent by the next run"));
+            }
+            try {
+                _outboxJournal.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Closing the outbox failed", e);
+            }
+        }
         try {
             if (_jmsMessageSender != null) {
                 _jmsMessageSender.close();
             }
+            if (_batchMessageSender != null) {
+                // commits any partial batches
+                _batchMessageSender.close();
+            }
         } catch (Exception e) {
-            throw new IllegalStateException("Stopping CamelContext failed", e);
+            throw new IllegalStateException("Stopping JMS sender failed", e);
+        }
+        if (_dedupCache != null) {
+            // after the senders are closed, so that no more failures are recorded
+            try {
+                _dedupCache.save(dedupFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Dedup file could not be written: " + dedupFile, e);
+            }
+        }
+        if (_failures != null) {
+            if (_resultCreated) {
+                // in case failures were recorded while closing
+                _failures.seal();
+            } else {
+                // no result refers to the spilled failures
+                _failures.delete();
+            }
+        }
+    }
+
+    /**
+     * Records results reported by senders which complete asynchronously.
+     */
+    private class SendResultRecorder implements SendMessageCallback {
+
+        @Override
+        public void onSuccess(String correlationId) {
+            recordSuccess();
+        }
+
+        @Override
+        public void onFailure(SendMessageToJMSQueueResult failure) {
+            recordFailure(failure);
         }
     }
 }
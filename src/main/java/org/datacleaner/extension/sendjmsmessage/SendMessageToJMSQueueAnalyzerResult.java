@@ -2,6 +2,8 @@ package org.datacleaner.extension.sendjmsmessage;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.datacleaner.api.AnalyzerResult;
 import org.datacleaner.api.Metric;
@@ -11,11 +13,16 @@ import org.datacleaner.api.Metric;
  */
 public class SendMessageToJMSQueueAnalyzerResult implements AnalyzerResult {
 
-    private static final long serialVersionUID = 1L;
+    // 2: failures are kept in a FailureStore instead of a collection
+    private static final long serialVersionUID = 2L;
 
     private final int _successCount;
     private final int _skipCount;
-    private final Collection<SendMessageToJMSQueueResult> _failures;
+    private final FailureStore _failures;
+    private final LatencyHistogram.Snapshot _renderTimes;
+    private final LatencyHistogram.Snapshot _sendTimes;
+    private final long _wallTimeMillis;
+    private final SendStatistics _statistics;
 
     /**
      * Constructor.
@@ -25,9 +32,56 @@ public class SendMessageToJMSQueueAnalyzerResult implements AnalyzerResult {
      * @param failures
      */
     public SendMessageToJMSQueueAnalyzerResult(int successCount, int skipCount, Collection<SendMessageToJMSQueueResult> failures) {
+        this(successCount, skipCount, toFailureStore(failures), LatencyHistogram.Snapshot.empty(),
+                LatencyHistogram.Snapshot.empty(), 0);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param successCount
+     * @param skipCount
+     * @param failures
+     * @param renderTimes
+     * @param sendTimes
+     * @param wallTimeMillis
+     */
+    public SendMessageToJMSQueueAnalyzerResult(int successCount, int skipCount, FailureStore failures,
+            LatencyHistogram.Snapshot renderTimes, LatencyHistogram.Snapshot sendTimes, long wallTimeMillis) {
+        this(successCount, skipCount, failures, renderTimes, sendTimes, wallTimeMillis, new SendStatistics());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param successCount
+     * @param skipCount
+     * @param failures
+     * @param renderTimes
+     * @param sendTimes
+     * @param wallTimeMillis
+     * @param statistics
+     */
+    public SendMessageToJMSQueueAnalyzerResult(int successCount, int skipCount, FailureStore failures,
+            LatencyHistogram.Snapshot renderTimes, LatencyHistogram.Snapshot sendTimes, long wallTimeMillis,
+            SendStatistics statistics) {
         _successCount = successCount;
         _skipCount = skipCount;
         _failures = failures;
+        _renderTimes = renderTimes;
+        _sendTimes = sendTimes;
+        _wallTimeMillis = wallTimeMillis;
+        _statistics = statistics;
+    }
+
+    private static FailureStore toFailureStore(Collection<SendMessageToJMSQueueResult> failures) {
+        final FailureStore failureStore = new FailureStore();
+        if (failures != null) {
+            for (SendMessageToJMSQueueResult failure : failures) {
+                failureStore.add(failure);
+            }
+        }
+        return failureStore;
     }
 
     /**
@@ -36,7 +90,38 @@ public class SendMessageToJMSQueueAnalyzerResult implements AnalyzerResult {
      * @return
      */
     public Collection<SendMessageToJMSQueueResult> getFailures() {
-        return Collections.unmodifiableCollection(_failures);
+        return _failures.asCollection();
+    }
+
+    /**
+     * Returns a page of failures, without reading the failures before it.
+     * 
+     * @param fromIndex
+     *            the position of the first failure of the page
+     * @param count
+     *            the max number of failures of the page
+     * @return
+     */
+    public List<SendMessageToJMSQueueResult> getFailures(int fromIndex, int count) {
+        return _failures.getPage(fromIndex, count);
+    }
+
+    /**
+     * Returns the first failures, including their full exception.
+     * 
+     * @return
+     */
+    public Collection<SendMessageToJMSQueueResult> getFailureSamples() {
+        return _failures.getSamples();
+    }
+
+    /**
+     * Returns failure counts per exception class name.
+     * 
+     * @return
+     */
+    public Map<String, Integer> getFailureCountsByErrorType() {
+        return _failures.getErrorTypeCounts();
     }
 
     /**
@@ -71,4 +156,305 @@ public class SendMessageToJMSQueueAnalyzerResult implements AnalyzerResult {
         }
         return _failures.size();
     }
+
+    /**
+     * Returns the time from initialization until the result was collected.
+     * 
+     * @return
+     */
+    @Metric(value = "Total wall time (ms)")
+    public long getWallTimeMillis() {
+        return _wallTimeMillis;
+    }
+
+    /**
+     * Returns the number of messages sent or failed per second of wall time.
+     * 
+     * @return
+     */
+    @Metric(value = "Messages per second")
+    public double getMessagesPerSecond() {
+        if (_wallTimeMillis <= 0) {
+            return 0;
+        }
+        return (getSuccessCount() + getFailureCount()) * 1000d / _wallTimeMillis;
+    }
+
+    /**
+     * Returns a summary of the producer settings messages were sent with, to
+     * compare with the number of messages per second.
+     * 
+     * @return
+     */
+    public String getProducerTuning() {
+        return _statistics.getProducerTuning();
+    }
+
+    /**
+     * Returns the statistics of each shard, or an empty list if messages were
+     * not sharded.
+     * 
+     * @return
+     */
+    public List<DestinationStatistics> getShardStatistics() {
+        final List<DestinationStatistics> shardStatistics = _statistics.getShardStatistics();
+        if (shardStatistics == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(shardStatistics);
+    }
+
+    /**
+     * Returns the number of messages sent to a shard.
+     * 
+     * @param shardName
+     * @return
+     */
+    @Metric(value = "Shard messages sent", supportsInClause = true)
+    public int getShardSuccessCount(String shardName) {
+        final DestinationStatistics shard = getShard(shardName);
+        return shard == null ? 0 : shard.getSuccessCount();
+    }
+
+    /**
+     * Returns the number of failed send attempts to a shard.
+     * 
+     * @param shardName
+     * @return
+     */
+    @Metric(value = "Shard send failures", supportsInClause = true)
+    public int getShardFailureCount(String shardName) {
+        final DestinationStatistics shard = getShard(shardName);
+        return shard == null ? 0 : shard.getFailureCount();
+    }
+
+    /**
+     * Returns the 99th percentile send time of a shard in microseconds.
+     * 
+     * @param shardName
+     * @return
+     */
+    @Metric(value = "Shard send time p99 (us)", supportsInClause = true)
+    public long getShardSendTimeP99(String shardName) {
+        final DestinationStatistics shard = getShard(shardName);
+        return shard == null ? 0 : shard.getSendTimes().getPercentileMicros(99);
+    }
+
+    /**
+     * Returns the statistics of each broker of a broker set, or an empty list
+     * if messages were sent to a single broker.
+     * 
+     * @return
+     */
+    public List<DestinationStatistics> getBrokerStatistics() {
+        final List<DestinationStatistics> brokerStatistics = _statistics.getBrokerStatistics();
+        if (brokerStatistics == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(brokerStatistics);
+    }
+
+    /**
+     * Returns the number of sends handed to another broker after a failure.
+     * 
+     * @return
+     */
+    @Metric(value = "Broker failovers")
+    public int getFailoverCount() {
+        return _statistics.getFailoverCount();
+    }
+
+    /**
+     * Returns the number of messages of previous runs sent from the outbox.
+     * 
+     * @return
+     */
+    @Metric(value = "Messages replayed from outbox")
+    public int getOutboxReplayedCount() {
+        return _statistics.getOutboxReplayedCount();
+    }
+
+    /**
+     * Returns the number of messages left in the outbox, to be sent by the
+     * next run.
+     * 
+     * @return
+     */
+    @Metric(value = "Messages left in outbox")
+    public int getOutboxPendingCount() {
+        return _statistics.getOutboxPendingCount();
+    }
+
+    /**
+     * Returns the number of sends allowed in flight at the end of the job, or
+     * 0 if sends were not limited.
+     * 
+     * @return
+     */
+    @Metric(value = "Concurrency limit")
+    public int getConcurrencyLimit() {
+        return _statistics.getConcurrencyLimit();
+    }
+
+    /**
+     * Returns the total time sends waited for the concurrency and rate limits.
+     * 
+     * @return
+     */
+    @Metric(value = "Throttled time (ms)")
+    public long getThrottledMillis() {
+        return _statistics.getThrottledMillis();
+    }
+
+    private DestinationStatistics getShard(String shardName) {
+        for (DestinationStatistics shard : getShardStatistics()) {
+            if (shard.getName().equals(shardName)) {
+                return shard;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the distribution of message rendering times.
+     * 
+     * @return
+     */
+    public LatencyHistogram.Snapshot getRenderTimes() {
+        return _renderTimes;
+    }
+
+    /**
+     * Returns the distribution of message sending times.
+     * 
+     * @return
+     */
+    public LatencyHistogram.Snapshot getSendTimes() {
+        return _sendTimes;
+    }
+
+    /**
+     * Returns the median render time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Render time p50 (us)")
+    public long getRenderTimeP50() {
+        return _renderTimes.getPercentileMicros(50);
+    }
+
+    /**
+     * Returns the 95th percentile render time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Render time p95 (us)")
+    public long getRenderTimeP95() {
+        return _renderTimes.getPercentileMicros(95);
+    }
+
+    /**
+     * Returns the 99th percentile render time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Render time p99 (us)")
+    public long getRenderTimeP99() {
+        return _renderTimes.getPercentileMicros(99);
+    }
+
+    /**
+     * Returns the longest render time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Render time max (us)")
+    public long getRenderTimeMax() {
+        return _renderTimes.getMaxMicros();
+    }
+
+    /**
+     * Returns the median send time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Send time p50 (us)")
+    public long getSendTimeP50() {
+        return _sendTimes.getPercentileMicros(50);
+    }
+
+    /**
+     * Returns the 95th percentile send time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Send time p95 (us)")
+    public long getSendTimeP95() {
+        return _sendTimes.getPercentileMicros(95);
+    }
+
+    /**
+     * Returns the 99th percentile send time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Send time p99 (us)")
+    public long getSendTimeP99() {
+        return _sendTimes.getPercentileMicros(99);
+    }
+
+    /**
+     * Returns the longest send time in microseconds.
+     * 
+     * @return
+     */
+    @Metric(value = "Send time max (us)")
+    public long getSendTimeMax() {
+        return _sendTimes.getMaxMicros();
+    }
+
+    /**
+     * Returns the number of send retries.
+     * 
+     * @return
+     */
+    @Metric(value = "Send retries")
+    public int getRetryCount() {
+        return _statistics.getRetryCount();
+    }
+
+    /**
+     * Returns the number of times the circuit breaker around the broker
+     * opened.
+     * 
+     * @return
+     */
+    @Metric(value = "Circuit breaker opened")
+    public int getCircuitOpenCount() {
+        return _statistics.getCircuitOpenCount();
+    }
+
+    /**
+     * Returns the size of bytes message bodies before compression divided by
+     * their size as sent.
+     * 
+     * @return
+     */
+    @Metric(value = "Compression ratio")
+    public double getCompressionRatio() {
+        if (_statistics.getEncodedBytes() == 0) {
+            return 1;
+        }
+        return (double) _statistics.getOriginalBytes() / _statistics.getEncodedBytes();
+    }
+
+    /**
+     * Returns the number of bytes saved by compressing bytes message bodies.
+     * 
+     * @return
+     */
+    @Metric(value = "Bytes saved by compression")
+    public long getBytesSavedByCompression() {
+        return _statistics.getOriginalBytes() - _statistics.getEncodedBytes();
+    }
 }
@@ -32,6 +32,21 @@ public class SendMessageToJMSQueueResult implements Serializable {
         return new SendMessageToJMSQueueResult(false, to, e);
     }
 
+    /**
+     * Result for failure scenario, where the send may also have thrown an
+     * {@link Error}, which is wrapped.
+     * 
+     * @param to
+     * @param t
+     * @return
+     */
+    public static SendMessageToJMSQueueResult failure(String to, Throwable t) {
+        if (t instanceof Exception) {
+            return failure(to, (Exception) t);
+        }
+        return failure(to, new IllegalStateException(String.valueOf(t), t));
+    }
+
     private final boolean _successful;
     private final Exception _error;
     private final String _messageIdentifier;
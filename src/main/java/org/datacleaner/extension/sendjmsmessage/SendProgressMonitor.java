@@ -0,0 +1,287 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Monitors the progress of a running send job. A background ticker samples
+ * the counters of the job at a fixed interval and reports a progress summary
+ * to a listener, so that the progress is known without waiting for the job to
+ * finish and without any work per row. The counters can also be watched live
+ * through JMX.
+ */
+public class SendProgressMonitor implements SendProgressMonitorMBean {
+
+    /**
+     * Supplies the live counters of the monitored job. Called from the ticker
+     * and JMX threads.
+     */
+    public static interface Counters {
+
+        public int getSentCount();
+
+        public int getFailedCount();
+
+        public int getSkippedCount();
+
+        public int getInFlightCount();
+
+        public int getQueueDepth();
+
+        public int getConcurrencyLimit();
+
+        public int getOpenConnectionCount();
+
+        public int getOpenSessionCount();
+    }
+
+    /**
+     * Receives the progress summaries published by the ticker.
+     */
+    public static interface ProgressListener {
+
+        public void onProgress(String summary);
+    }
+
+    public static final String OBJECT_NAME_DOMAIN = "org.datacleaner.extension.sendjmsmessage";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SendProgressMonitor.class);
+
+    private static final AtomicInteger MONITOR_IDS = new AtomicInteger();
+
+    private final String _brokerUrl;
+    private final String _queueName;
+    private final String _producerTuning;
+    private final Counters _counters;
+    private final long _startNanos;
+    private ScheduledExecutorService _ticker;
+    private ObjectName _objectName;
+    private long _lastSampleNanos;
+    private int _lastSampleCount;
+    private double _messagesPerSecond;
+
+    /**
+     * Constructor
+     *
+     * @param brokerUrl
+     * @param queueName
+     * @param producerTuning
+     *            summary of the producer settings of the senders
+     * @param counters
+     */
+    public SendProgressMonitor(String brokerUrl, String queueName, String producerTuning, Counters counters) {
+        _brokerUrl = brokerUrl;
+        _queueName = queueName;
+        _producerTuning = producerTuning;
+        _counters = counters;
+        _startNanos = System.nanoTime();
+        _lastSampleNanos = _startNanos;
+    }
+
+    /**
+     * Starts sampling the counters at a fixed interval.
+     *
+     * @param intervalMillis
+     * @param listener
+     *            listener to report a progress summary to after each sample,
+     *            or null to only sample the message rate
+     */
+    public synchronized void start(long intervalMillis, final ProgressListener listener) {
+        if (_ticker != null) {
+            throw new IllegalStateException("Monitor is already started");
+        }
+        _ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "SendProgressMonitor-ticker");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        _ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                // an exception would cancel the ticker
+                try {
+                    sample();
+                    if (listener != null) {
+                        listener.onProgress(getSummary());
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Reporting send progress failed", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers this monitor in the platform MBean server. A monitor which
+     * cannot be registered is logged and otherwise ignored, as it should not
+     * stop the job.
+     *
+     * @return the name the monitor is registered by, or null if it could not
+     *         be registered
+     */
+    public synchronized ObjectName registerMBean() {
+        if (_objectName != null) {
+            return _objectName;
+        }
+        try {
+            final ObjectName objectName = new ObjectName(OBJECT_NAME_DOMAIN + ":type=SendProgressMonitor,queue="
+                    + ObjectName.quote(String.valueOf(_queueName)) + ",id=" + MONITOR_IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            _objectName = objectName;
+        } catch (Exception e) {
+            LOGGER.warn("Registering the send progress MBean failed", e);
+        }
+        return _objectName;
+    }
+
+    /**
+     * Samples the counters, to determine the message rate since the previous
+     * sample.
+     */
+    public synchronized void sample() {
+        final long now = System.nanoTime();
+        final int count = getCompletedCount();
+        final long elapsedNanos = now - _lastSampleNanos;
+        if (elapsedNanos > 0) {
+            _messagesPerSecond = (count - _lastSampleCount) * 1000000000.0 / elapsedNanos;
+        }
+        _lastSampleNanos = now;
+        _lastSampleCount = count;
+    }
+
+    private int getCompletedCount() {
+        return _counters.getSentCount() + _counters.getFailedCount();
+    }
+
+    @Override
+    public String getBrokerUrl() {
+        return _brokerUrl;
+    }
+
+    @Override
+    public String getQueueName() {
+        return _queueName;
+    }
+
+    @Override
+    public int getSentCount() {
+        return _counters.getSentCount();
+    }
+
+    @Override
+    public int getFailedCount() {
+        return _counters.getFailedCount();
+    }
+
+    @Override
+    public int getSkippedCount() {
+        return _counters.getSkippedCount();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return _counters.getInFlightCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return _counters.getQueueDepth();
+    }
+
+    @Override
+    public synchronized double getMessagesPerSecond() {
+        return _messagesPerSecond;
+    }
+
+    @Override
+    public double getAverageMessagesPerSecond() {
+        final long elapsedNanos = System.nanoTime() - _startNanos;
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return getCompletedCount() * 1000000000.0 / elapsedNanos;
+    }
+
+    @Override
+    public long getElapsedSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - _startNanos);
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return _counters.getConcurrencyLimit();
+    }
+
+    @Override
+    public int getOpenConnectionCount() {
+        return _counters.getOpenConnectionCount();
+    }
+
+    @Override
+    public int getOpenSessionCount() {
+        return _counters.getOpenSessionCount();
+    }
+
+    @Override
+    public int getSharedSenderCount() {
+        return SenderRegistry.getInstance().getSenderCount();
+    }
+
+    @Override
+    public String getProducerTuning() {
+        return _producerTuning;
+    }
+
+    @Override
+    public String getSummary() {
+        final long elapsedSeconds = getElapsedSeconds();
+        final StringBuilder sb = new StringBuilder("Progress after ");
+        sb.append(String.format("%d:%02d:%02d", elapsedSeconds / 3600, elapsedSeconds / 60 % 60,
+                elapsedSeconds % 60));
+        sb.append(": ").append(getSentCount()).append(" sent, ");
+        sb.append(getFailedCount()).append(" failed, ");
+        sb.append(getSkippedCount()).append(" skipped, ");
+        sb.append(getInFlightCount()).append(" in flight, queue depth ").append(getQueueDepth());
+        sb.append(String.format(", %.1f msgs/sec (average %.1f msgs/sec)", getMessagesPerSecond(),
+                getAverageMessagesPerSecond()));
+        final int concurrencyLimit = getConcurrencyLimit();
+        if (concurrencyLimit > 0) {
+            sb.append(", concurrency limit ").append(concurrencyLimit);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Stops the ticker and unregisters the MBean.
+     */
+    public synchronized void close() {
+        if (_ticker != null) {
+            _ticker.shutdownNow();
+            _ticker = null;
+        }
+        if (_objectName != null) {
+            try {
+                final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+                if (mBeanServer.isRegistered(_objectName)) {
+                    mBeanServer.unregisterMBean(_objectName);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Unregistering the send progress MBean failed", e);
+            }
+            _objectName = null;
+        }
+    }
+}
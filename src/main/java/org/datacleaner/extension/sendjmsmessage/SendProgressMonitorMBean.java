@@ -0,0 +1,92 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+/**
+ * JMX management interface of a {@link SendProgressMonitor}, exposing the live
+ * counters of a running send job and the state of its senders.
+ */
+public interface SendProgressMonitorMBean {
+
+    public String getBrokerUrl();
+
+    public String getQueueName();
+
+    public int getSentCount();
+
+    public int getFailedCount();
+
+    public int getSkippedCount();
+
+    /**
+     * Returns the number of messages handed to sender threads or retries and
+     * not yet sent.
+     *
+     * @return
+     */
+    public int getInFlightCount();
+
+    /**
+     * Returns the number of messages waiting for a sender thread.
+     *
+     * @return
+     */
+    public int getQueueDepth();
+
+    /**
+     * Returns the number of messages sent or failed per second since the
+     * previous sample.
+     *
+     * @return
+     */
+    public double getMessagesPerSecond();
+
+    /**
+     * Returns the number of messages sent or failed per second since the job
+     * started.
+     *
+     * @return
+     */
+    public double getAverageMessagesPerSecond();
+
+    public long getElapsedSeconds();
+
+    /**
+     * Returns the number of sends allowed in flight, or 0 if sends are not
+     * limited.
+     *
+     * @return
+     */
+    public int getConcurrencyLimit();
+
+    /**
+     * Returns the number of connections open by the JMS senders of the job.
+     * Senders on the Camel route are not included, as their connections and
+     * sessions are pooled by Camel.
+     *
+     * @return
+     */
+    public int getOpenConnectionCount();
+
+    /**
+     * Returns the number of sessions, each with a producer, open by the JMS
+     * senders of the job. Senders on the Camel route are not included.
+     *
+     * @return
+     */
+    public int getOpenSessionCount();
+
+    /**
+     * Returns the number of shared senders connected, for all jobs.
+     *
+     * @return
+     */
+    public int getSharedSenderCount();
+
+    public String getProducerTuning();
+
+    /**
+     * Returns the progress summary, as published to the execution log.
+     *
+     * @return
+     */
+    public String getSummary();
+}
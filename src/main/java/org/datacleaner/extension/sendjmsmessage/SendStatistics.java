@@ -0,0 +1,248 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statistics about how messages were sent, collected by the
+ * {@link SendMessageToJMSQueueAnalyzer} for its result.
+ */
+public class SendStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int _retryCount;
+    private int _circuitOpenCount;
+    private long _originalBytes;
+    private long _encodedBytes;
+    private String _producerTuning;
+    private List<DestinationStatistics> _shardStatistics = new ArrayList<DestinationStatistics>();
+    private List<DestinationStatistics> _brokerStatistics = new ArrayList<DestinationStatistics>();
+    private int _failoverCount;
+    private int _outboxReplayedCount;
+    private int _outboxPendingCount;
+    private int _concurrencyLimit;
+    private long _throttledMillis;
+
+    /**
+     * Returns the number of send retries.
+     * 
+     * @return
+     */
+    public int getRetryCount() {
+        return _retryCount;
+    }
+
+    /**
+     * Sets the number of send retries.
+     * 
+     * @param retryCount
+     */
+    public void setRetryCount(int retryCount) {
+        _retryCount = retryCount;
+    }
+
+    /**
+     * Returns the number of times the circuit breaker opened.
+     * 
+     * @return
+     */
+    public int getCircuitOpenCount() {
+        return _circuitOpenCount;
+    }
+
+    /**
+     * Sets the number of times the circuit breaker opened.
+     * 
+     * @param circuitOpenCount
+     */
+    public void setCircuitOpenCount(int circuitOpenCount) {
+        _circuitOpenCount = circuitOpenCount;
+    }
+
+    /**
+     * Returns the total size of bytes message bodies before compression.
+     * 
+     * @return
+     */
+    public long getOriginalBytes() {
+        return _originalBytes;
+    }
+
+    /**
+     * Sets the total size of bytes message bodies before compression.
+     * 
+     * @param originalBytes
+     */
+    public void setOriginalBytes(long originalBytes) {
+        _originalBytes = originalBytes;
+    }
+
+    /**
+     * Returns the total size of bytes message bodies as sent.
+     * 
+     * @return
+     */
+    public long getEncodedBytes() {
+        return _encodedBytes;
+    }
+
+    /**
+     * Sets the total size of bytes message bodies as sent.
+     * 
+     * @param encodedBytes
+     */
+    public void setEncodedBytes(long encodedBytes) {
+        _encodedBytes = encodedBytes;
+    }
+
+    /**
+     * Returns a summary of the producer settings messages were sent with.
+     * 
+     * @return
+     */
+    public String getProducerTuning() {
+        return _producerTuning;
+    }
+
+    /**
+     * Sets a summary of the producer settings messages were sent with.
+     * 
+     * @param producerTuning
+     */
+    public void setProducerTuning(String producerTuning) {
+        _producerTuning = producerTuning;
+    }
+
+    /**
+     * Returns the statistics of each shard, or an empty list if messages were
+     * not sharded.
+     * 
+     * @return
+     */
+    public List<DestinationStatistics> getShardStatistics() {
+        return _shardStatistics;
+    }
+
+    /**
+     * Sets the statistics of each shard.
+     * 
+     * @param shardStatistics
+     */
+    public void setShardStatistics(List<DestinationStatistics> shardStatistics) {
+        _shardStatistics = new ArrayList<DestinationStatistics>(shardStatistics);
+    }
+
+    /**
+     * Returns the statistics of each broker of a broker set, or an empty list
+     * if messages were sent to a single broker.
+     * 
+     * @return
+     */
+    public List<DestinationStatistics> getBrokerStatistics() {
+        return _brokerStatistics;
+    }
+
+    /**
+     * Sets the statistics of each broker of a broker set.
+     * 
+     * @param brokerStatistics
+     */
+    public void setBrokerStatistics(List<DestinationStatistics> brokerStatistics) {
+        _brokerStatistics = new ArrayList<DestinationStatistics>(brokerStatistics);
+    }
+
+    /**
+     * Returns the number of sends handed to another broker after a failure.
+     * 
+     * @return
+     */
+    public int getFailoverCount() {
+        return _failoverCount;
+    }
+
+    /**
+     * Sets the number of sends handed to another broker after a failure.
+     * 
+     * @param failoverCount
+     */
+    public void setFailoverCount(int failoverCount) {
+        _failoverCount = failoverCount;
+    }
+
+    /**
+     * Returns the number of messages of previous runs sent from the outbox.
+     * 
+     * @return
+     */
+    public int getOutboxReplayedCount() {
+        return _outboxReplayedCount;
+    }
+
+    /**
+     * Sets the number of messages of previous runs sent from the outbox.
+     * 
+     * @param outboxReplayedCount
+     */
+    public void setOutboxReplayedCount(int outboxReplayedCount) {
+        _outboxReplayedCount = outboxReplayedCount;
+    }
+
+    /**
+     * Returns the number of messages left in the outbox when the result was
+     * created.
+     * 
+     * @return
+     */
+    public int getOutboxPendingCount() {
+        return _outboxPendingCount;
+    }
+
+    /**
+     * Sets the number of messages left in the outbox when the result was
+     * created.
+     * 
+     * @param outboxPendingCount
+     */
+    public void setOutboxPendingCount(int outboxPendingCount) {
+        _outboxPendingCount = outboxPendingCount;
+    }
+
+    /**
+     * Returns the number of sends allowed in flight when the result was
+     * created.
+     * 
+     * @return
+     */
+    public int getConcurrencyLimit() {
+        return _concurrencyLimit;
+    }
+
+    /**
+     * Sets the number of sends allowed in flight when the result was created.
+     * 
+     * @param concurrencyLimit
+     */
+    public void setConcurrencyLimit(int concurrencyLimit) {
+        _concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Returns the total time sends waited for the concurrency and rate limits.
+     * 
+     * @return
+     */
+    public long getThrottledMillis() {
+        return _throttledMillis;
+    }
+
+    /**
+     * Sets the total time sends waited for the concurrency and rate limits.
+     * 
+     * @param throttledMillis
+     */
+    public void setThrottledMillis(long throttledMillis) {
+        _throttledMillis = throttledMillis;
+    }
+}
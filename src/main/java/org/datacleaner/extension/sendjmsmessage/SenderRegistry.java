@@ -0,0 +1,224 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide registry of senders, so that analyzers sending to the same
+ * queue of the same broker share a sender, and with it the connections to the
+ * broker. Senders are reference counted: each analyzer gets a lease which it
+ * closes instead of the sender. A sender which is no longer leased is closed
+ * once it has been idle for a while, so that it can be reused by the next job
+ * run in the meantime.
+ */
+public class SenderRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SenderRegistry.class);
+
+    private static final SenderRegistry INSTANCE = new SenderRegistry();
+
+    /**
+     * Factory for a sender which is not in the registry yet.
+     */
+    public interface SenderFactory {
+
+        public JMSMessageSender createSender() throws Exception;
+    }
+
+    private final Map<String, Entry> _entries;
+    private ScheduledExecutorService _evictor;
+
+    /**
+     * Returns the registry of this process.
+     *
+     * @return
+     */
+    public static SenderRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Constructor, for a registry of its own rather than the one of the
+     * process.
+     */
+    SenderRegistry() {
+        _entries = new HashMap<String, Entry>();
+    }
+
+    /**
+     * Leases the sender of a queue, creating it if it is not in the registry.
+     *
+     * @param brokerUrl
+     * @param queueName
+     * @param configurationKey
+     *            the settings of the sender, senders are only shared if
+     *            these are equal
+     * @param idleMillis
+     *            the time the sender is kept after its last lease is closed,
+     *            or 0 to close it right away
+     * @param factory
+     * @return a lease of the sender, which must be closed instead of the
+     *         sender
+     * @throws Exception
+     *             if the sender could not be created
+     */
+    public JMSMessageSender lease(String brokerUrl, String queueName, String configurationKey, long idleMillis,
+            SenderFactory factory) throws Exception {
+        final String key = brokerUrl + '\n' + queueName + '\n' + configurationKey;
+        final Entry entry;
+        synchronized (this) {
+            Entry existing = _entries.get(key);
+            if (existing == null) {
+                existing = new Entry(key);
+                _entries.put(key, existing);
+            }
+            entry = existing;
+            entry.leaseCount++;
+            entry.idleMillis = Math.max(entry.idleMillis, idleMillis);
+        }
+
+        // only the sender being created is waited for, not the whole registry
+        synchronized (entry) {
+            if (entry.sender == null) {
+                try {
+                    entry.sender = factory.createSender();
+                } catch (Exception e) {
+                    release(entry);
+                    throw e;
+                }
+            } else {
+                LOGGER.debug("Reusing sender of queue {} on {}", queueName, brokerUrl);
+            }
+        }
+        return new Lease(entry);
+    }
+
+    private void release(final Entry entry) {
+        synchronized (this) {
+            entry.leaseCount--;
+            if (entry.leaseCount > 0) {
+                return;
+            }
+            if (entry.idleMillis > 0 && entry.sender != null) {
+                final long generation = ++entry.generation;
+                getEvictor().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        evict(entry, generation);
+                    }
+                }, entry.idleMillis, TimeUnit.MILLISECONDS);
+                return;
+            }
+            _entries.remove(entry.key);
+        }
+        closeSender(entry);
+    }
+
+    private void evict(Entry entry, long generation) {
+        synchronized (this) {
+            // leased again since, or evicted already
+            if (entry.leaseCount > 0 || entry.generation != generation || _entries.get(entry.key) != entry) {
+                return;
+            }
+            _entries.remove(entry.key);
+        }
+        LOGGER.debug("Closing idle sender {}", entry.key);
+        closeSender(entry);
+    }
+
+    private static void closeSender(Entry entry) {
+        synchronized (entry) {
+            if (entry.sender == null) {
+                return;
+            }
+            try {
+                entry.sender.close();
+            } catch (Exception e) {
+                LOGGER.warn("Closing sender {} failed", entry.key, e);
+            }
+            entry.sender = null;
+        }
+    }
+
+    private synchronized ScheduledExecutorService getEvictor() {
+        if (_evictor == null) {
+            _evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "SenderRegistry-evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return _evictor;
+    }
+
+    /**
+     * Returns the number of senders in the registry, leased or idle.
+     *
+     * @return
+     */
+    public synchronized int getSenderCount() {
+        return _entries.size();
+    }
+
+    /**
+     * A sender of the registry.
+     */
+    private static final class Entry {
+
+        final String key;
+        JMSMessageSender sender;
+        int leaseCount;
+        long idleMillis;
+        long generation;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A lease of a sender, which is released instead of closing the sender.
+     */
+    private final class Lease implements JMSMessageSender {
+
+        private final Entry _entry;
+        private final JMSMessageSender _sender;
+        private final AtomicBoolean _closed;
+
+        Lease(Entry entry) {
+            _entry = entry;
+            _sender = entry.sender;
+            _closed = new AtomicBoolean();
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+                String correlationId) {
+            return _sender.sendMessage(brokerUrl, jmsQueueName, messageBody, correlationId);
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+                Map<String, Object> properties) {
+            return _sender.sendMessage(messageBody, correlationId, properties);
+        }
+
+        @Override
+        public void close() {
+            if (_closed.compareAndSet(false, true)) {
+                release(_entry);
+            }
+        }
+    }
+}
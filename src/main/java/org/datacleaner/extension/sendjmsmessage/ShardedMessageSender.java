@@ -0,0 +1,175 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Sends messages to one of several destinations, each with its own
+ * {@link JMSMessageSender}. The destination is chosen by a stable hash of the
+ * correlation ID, so messages with the same ID always go to the same shard.
+ */
+public class ShardedMessageSender implements JMSMessageSender {
+
+    private final Shard[] _shards;
+
+    /**
+     * Constructor
+     * 
+     * @param brokerUrls
+     *            the broker url of each shard
+     * @param queueNames
+     *            the queue name of each shard
+     * @param senders
+     *            the sender of each shard
+     */
+    public ShardedMessageSender(String[] brokerUrls, String[] queueNames, JMSMessageSender[] senders) {
+        if (senders.length == 0 || brokerUrls.length != senders.length || queueNames.length != senders.length) {
+            throw new IllegalArgumentException("A broker url, queue name and sender is required for every shard");
+        }
+        _shards = new Shard[senders.length];
+        for (int i = 0; i < senders.length; i++) {
+            _shards[i] = new Shard(brokerUrls[i], queueNames[i], senders[i]);
+        }
+    }
+
+    /**
+     * Returns the index of the shard which messages with a correlation ID are
+     * sent to.
+     * 
+     * @param correlationId
+     * @return
+     */
+    public int getShardIndex(String correlationId) {
+        if (correlationId == null) {
+            return 0;
+        }
+        // murmur3 is defined independently of the JVM, unlike most hashCode()s
+        final int hash = Hashing.murmur3_32().hashString(correlationId, StandardCharsets.UTF_8).asInt();
+        return (hash & Integer.MAX_VALUE) % _shards.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * The broker url and queue name arguments are ignored in favor of those of
+     * the shard.
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+            String correlationId) {
+        final Shard shard = _shards[getShardIndex(correlationId)];
+        final long sendStartNanos = System.nanoTime();
+        SendMessageToJMSQueueResult result;
+        try {
+            result = shard.sender.sendMessage(shard.brokerUrl, shard.queueName, messageBody, correlationId);
+        } catch (RuntimeException e) {
+            result = SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+        return shard.record(result, sendStartNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+            Map<String, Object> properties) {
+        final Shard shard = _shards[getShardIndex(correlationId)];
+        final long sendStartNanos = System.nanoTime();
+        SendMessageToJMSQueueResult result;
+        try {
+            result = shard.sender.sendMessage(messageBody, correlationId, properties);
+        } catch (RuntimeException e) {
+            result = SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+        return shard.record(result, sendStartNanos);
+    }
+
+    /**
+     * Returns the senders of all shards, e.g. for messages which every shard
+     * should receive.
+     * 
+     * @return
+     */
+    public List<JMSMessageSender> getShardSenders() {
+        final List<JMSMessageSender> senders = new ArrayList<JMSMessageSender>(_shards.length);
+        for (Shard shard : _shards) {
+            senders.add(shard.sender);
+        }
+        return senders;
+    }
+
+    /**
+     * Returns the statistics of each shard.
+     * 
+     * @return
+     */
+    public List<DestinationStatistics> getShardStatistics() {
+        final List<DestinationStatistics> statistics = new ArrayList<DestinationStatistics>(_shards.length);
+        for (Shard shard : _shards) {
+            statistics.add(new DestinationStatistics(shard.getName(), shard.successCount.get(), shard.failureCount.get(),
+                    shard.sendTimes.snapshot()));
+        }
+        return statistics;
+    }
+
+    /**
+     * Closes the senders of all shards.
+     * 
+     * @throws Exception
+     */
+    @Override
+    public void close() throws Exception {
+        Exception error = null;
+        for (Shard shard : _shards) {
+            try {
+                shard.sender.close();
+            } catch (Exception e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * A destination with its sender and statistics.
+     */
+    private static final class Shard {
+
+        final String brokerUrl;
+        final String queueName;
+        final JMSMessageSender sender;
+        final AtomicInteger successCount = new AtomicInteger();
+        final AtomicInteger failureCount = new AtomicInteger();
+        final LatencyHistogram sendTimes = new LatencyHistogram();
+
+        Shard(String brokerUrl, String queueName, JMSMessageSender sender) {
+            this.brokerUrl = brokerUrl;
+            this.queueName = queueName;
+            this.sender = sender;
+        }
+
+        SendMessageToJMSQueueResult record(SendMessageToJMSQueueResult result, long sendStartNanos) {
+            sendTimes.recordSince(sendStartNanos);
+            if (result.isSuccessful()) {
+                successCount.incrementAndGet();
+            } else {
+                failureCount.incrementAndGet();
+            }
+            return result;
+        }
+
+        String getName() {
+            return queueName + "@" + brokerUrl;
+        }
+    }
+}
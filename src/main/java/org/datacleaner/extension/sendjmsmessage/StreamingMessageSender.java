@@ -0,0 +1,238 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * Sends rendered templates as bytes messages through the JMS API, writing
+ * the template straight into the message instead of rendering a String
+ * first. The literal text of the template is encoded only once, so per row
+ * only the merged values are encoded. This keeps memory use flat for large
+ * templates with few merged values.
+ *
+ * Optionally bodies are split into chunk messages of a max size, which are
+ * sent in a single transaction. The chunks of a body share a
+ * {@link #CHUNK_GROUP_PROPERTY}, which is also the JMSXGroupID so that a
+ * single consumer receives all of them, and are numbered by
+ * {@link #CHUNK_INDEX_PROPERTY} out of {@link #CHUNK_COUNT_PROPERTY}.
+ */
+public class StreamingMessageSender implements JMSMessageSender {
+
+    public static final String CHUNK_GROUP_PROPERTY = "SendJMSMessageChunkGroup";
+    public static final String CHUNK_INDEX_PROPERTY = "SendJMSMessageChunkIndex";
+    public static final String CHUNK_COUNT_PROPERTY = "SendJMSMessageChunkCount";
+
+    private static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ThreadSessions<ThreadProducer> _threadSessions;
+    private final MessageTemplate _template;
+    private final String _encoding;
+    private final Charset _charset;
+    private final byte[] _prefix;
+    private final byte[][] _literals;
+    private final int _chunkBytes;
+    private final Map<String, Object> _messageProperties;
+    private final AtomicLong _sentBytes;
+
+    /**
+     * Constructor
+     *
+     * @param broker
+     * @param queueName
+     * @param template
+     * @param encoding
+     *            the character encoding of the message bodies
+     * @param prefix
+     *            text to put in front of every rendered template, or null. It
+     *            is encoded only once.
+     * @param chunkBytes
+     *            the max size of a message in bytes, larger bodies are split
+     *            into chunk messages. Use 0 to never split bodies.
+     * @param messageProperties
+     *            message properties to set on every message, by name
+     * @param tuning
+     *            settings for the connections and producers
+     * @throws JMSException
+     */
+    public StreamingMessageSender(String broker, String queueName, MessageTemplate template, String encoding,
+            String prefix, int chunkBytes, Map<String, Object> messageProperties, ProducerTuning tuning)
+            throws JMSException {
+        _template = template;
+        _encoding = encoding;
+        _charset = Charset.forName(encoding);
+        _prefix = prefix == null ? EMPTY : prefix.getBytes(_charset);
+        _literals = template.encodeLiterals(_charset);
+        _chunkBytes = chunkBytes;
+        _messageProperties = messageProperties;
+        _sentBytes = new AtomicLong();
+        // chunks are sent in a transaction
+        _threadSessions = new ThreadSessions<ThreadProducer>(broker, queueName, tuning, chunkBytes > 0) {
+            @Override
+            protected ThreadProducer createThreadSession() {
+                return new ThreadProducer(this);
+            }
+        };
+    }
+
+    /**
+     * Renders the template with the values of a row into a message, and sends
+     * it.
+     *
+     * @param values
+     *            the values, indexed by the position of their key. Null values
+     *            are rendered as empty strings.
+     * @param correlationId
+     * @return
+     */
+    public SendMessageToJMSQueueResult sendTemplate(List<Object> values, String correlationId) {
+        // the prefix, then literals alternating with the values of the slots
+        final byte[][] parts = new byte[_literals.length * 2][];
+        parts[0] = _prefix;
+        long length = _prefix.length;
+        for (int i = 0; i < _literals.length; i++) {
+            if (i > 0) {
+                final String value = _template.formatSlotValue(i - 1, values);
+                parts[i * 2] = value == null ? EMPTY : value.getBytes(_charset);
+                length += parts[i * 2].length;
+            }
+            parts[i * 2 + 1] = _literals[i];
+            length += _literals[i].length;
+        }
+        return send(parts, length, correlationId, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The message body is sent as is, without the prefix.
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+            String correlationId) {
+        return sendMessage(messageBody, correlationId, Collections.<String, Object> emptyMap());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The message body is sent as is, without the prefix.
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+            Map<String, Object> properties) {
+        final byte[] bytes = messageBody.getBytes(_charset);
+        return send(new byte[][] { bytes }, bytes.length, correlationId, properties);
+    }
+
+    private SendMessageToJMSQueueResult send(byte[][] parts, long length, String correlationId,
+            Map<String, Object> properties) {
+        try {
+            _threadSessions.get().send(parts, length, correlationId, properties);
+            _sentBytes.addAndGet(length);
+            return SendMessageToJMSQueueResult.success();
+        } catch (JMSException e) {
+            return SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+    }
+
+    /**
+     * Returns the total size of all message bodies sent.
+     *
+     * @return
+     */
+    public long getSentBytes() {
+        return _sentBytes.get();
+    }
+
+    /**
+     * Returns the live state of the connection pool of this sender.
+     *
+     * @return
+     */
+    public ConnectionPoolState getPoolState() {
+        return _threadSessions;
+    }
+
+    /**
+     * Close the sessions and the connections.
+     *
+     * @throws Exception
+     */
+    @Override
+    public void close() throws Exception {
+        _threadSessions.close();
+    }
+
+    /**
+     * The session and producer of a single worker thread. The session is
+     * transacted when bodies are split into chunks.
+     */
+    private final class ThreadProducer extends ThreadSession {
+
+        public ThreadProducer(ThreadSessions<ThreadProducer> threadSessions) {
+            super(threadSessions);
+        }
+
+        public synchronized void send(byte[][] parts, long length, String correlationId,
+                Map<String, Object> properties) throws JMSException {
+            final boolean chunked = _chunkBytes > 0;
+            try {
+                final int chunkSize = chunked ? _chunkBytes : Integer.MAX_VALUE;
+                final int chunkCount = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+                final String chunkGroup = chunked ? UUID.randomUUID().toString() : null;
+                int chunkIndex = 0;
+                BytesMessage message = createMessage(correlationId, properties, chunkGroup, chunkIndex, chunkCount);
+                int messageLength = 0;
+                for (byte[] part : parts) {
+                    int offset = 0;
+                    while (offset < part.length) {
+                        if (messageLength == chunkSize) {
+                            send(message);
+                            chunkIndex++;
+                            message = createMessage(correlationId, properties, chunkGroup, chunkIndex, chunkCount);
+                            messageLength = 0;
+                        }
+                        final int count = Math.min(part.length - offset, chunkSize - messageLength);
+                        message.writeBytes(part, offset, count);
+                        offset += count;
+                        messageLength += count;
+                    }
+                }
+                send(message);
+                if (chunked) {
+                    // consumers only see the chunks once all of them are sent
+                    getSession().commit();
+                }
+            } catch (JMSException e) {
+                // the session may be broken, start over with a new one, which discards sent chunks
+                closeSession();
+                throw e;
+            }
+        }
+
+        private BytesMessage createMessage(String correlationId, Map<String, Object> properties, String chunkGroup,
+                int chunkIndex, int chunkCount) throws JMSException {
+            final BytesMessage message = getSession().createBytesMessage();
+            message.setJMSCorrelationID(correlationId);
+            message.setStringProperty(BytesPayloadEncoder.CODEC_PROPERTY, BytesPayloadEncoder.CODEC_NONE);
+            message.setStringProperty(BytesPayloadEncoder.CHARSET_PROPERTY, _encoding);
+            setProperties(message, _messageProperties);
+            setProperties(message, properties);
+            if (chunkGroup != null) {
+                message.setStringProperty(CHUNK_GROUP_PROPERTY, chunkGroup);
+                message.setStringProperty(GROUP_ID_PROPERTY, chunkGroup);
+                message.setIntProperty(CHUNK_INDEX_PROPERTY, chunkIndex);
+                message.setIntProperty(CHUNK_COUNT_PROPERTY, chunkCount);
+            }
+            return message;
+        }
+    }
+}
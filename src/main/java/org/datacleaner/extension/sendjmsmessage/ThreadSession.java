@@ -0,0 +1,117 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The session and producer of a single worker thread, created on first use.
+ * Senders extend it with the state they keep per thread. All methods
+ * synchronize on the thread session, as it is closed from other threads.
+ */
+public class ThreadSession {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadSession.class);
+
+    private final ThreadSessions<?> _threadSessions;
+    private Session _session;
+    private MessageProducer _producer;
+
+    /**
+     * Constructor
+     *
+     * @param threadSessions
+     *            the thread sessions of the sender this is part of
+     */
+    public ThreadSession(ThreadSessions<?> threadSessions) {
+        _threadSessions = threadSessions;
+    }
+
+    /**
+     * Returns the session, which is opened if needed.
+     *
+     * @return
+     * @throws JMSException
+     */
+    public synchronized Session getSession() throws JMSException {
+        if (_session == null) {
+            final Session session = _threadSessions.createSession();
+            try {
+                _producer = _threadSessions.createProducer(session);
+            } catch (JMSException e) {
+                closeQuietly(session);
+                throw e;
+            }
+            _session = session;
+        }
+        return _session;
+    }
+
+    /**
+     * Sends a message with the producer of the session.
+     *
+     * @param message
+     *            a message created by the session
+     * @throws JMSException
+     */
+    public synchronized void send(Message message) throws JMSException {
+        getSession();
+        _producer.send(message);
+    }
+
+    /**
+     * Returns whether the session is open.
+     *
+     * @return
+     */
+    public synchronized boolean isOpen() {
+        return _session != null;
+    }
+
+    /**
+     * Closes the session, after an error which may have broken it, so that
+     * the next send starts over with a new one.
+     */
+    public synchronized void closeSession() {
+        if (_session != null) {
+            closeQuietly(_session);
+            _session = null;
+            _producer = null;
+        }
+    }
+
+    /**
+     * Closes the session when the sender is closed.
+     */
+    public synchronized void close() {
+        closeSession();
+    }
+
+    /**
+     * Sets message properties on a message.
+     *
+     * @param message
+     * @param properties
+     *            the message properties, by name
+     * @throws JMSException
+     */
+    public static void setProperties(Message message, Map<String, Object> properties) throws JMSException {
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            message.setObjectProperty(property.getKey(), property.getValue());
+        }
+    }
+
+    private static void closeQuietly(Session session) {
+        try {
+            session.close();
+        } catch (JMSException e) {
+            LOGGER.debug("Closing session failed", e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+/**
+ * The {@link ThreadSession}s of the worker threads of a sender, with the
+ * pooled connections their sessions are opened on. Each worker thread keeps
+ * its own thread session for the lifetime of the sender.
+ *
+ * @param <S>
+ *            the type of thread session of the sender
+ */
+public abstract class ThreadSessions<S extends ThreadSession> implements ConnectionPoolState {
+
+    private final PooledConnections _connections;
+    private final String _queueName;
+    private final int _deliveryMode;
+    private final boolean _transacted;
+    private final Collection<S> _threadSessions;
+    private final ThreadLocal<S> _threadSession;
+    private volatile boolean _closed;
+
+    /**
+     * Constructor, which opens the connections.
+     *
+     * @param broker
+     * @param queueName
+     * @param tuning
+     *            settings for the connections and producers
+     * @param transacted
+     *            whether to open transacted sessions
+     * @throws JMSException
+     */
+    public ThreadSessions(String broker, String queueName, ProducerTuning tuning, boolean transacted)
+            throws JMSException {
+        _queueName = queueName;
+        _deliveryMode = tuning.getDeliveryMode();
+        _transacted = transacted;
+        _threadSessions = new ConcurrentLinkedQueue<S>();
+        _threadSession = new ThreadLocal<S>() {
+            @Override
+            protected S initialValue() {
+                final S threadSession = createThreadSession();
+                _threadSessions.add(threadSession);
+                return threadSession;
+            }
+        };
+
+        _connections = new PooledConnections(broker, tuning);
+    }
+
+    /**
+     * Creates the thread session of a worker thread.
+     *
+     * @return
+     */
+    protected abstract S createThreadSession();
+
+    /**
+     * Returns the thread session of the current thread.
+     *
+     * @return
+     */
+    public S get() {
+        return _threadSession.get();
+    }
+
+    /**
+     * Returns the thread sessions of all worker threads.
+     *
+     * @return
+     */
+    public Collection<S> getAll() {
+        return Collections.unmodifiableCollection(_threadSessions);
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return _closed ? 0 : _connections.getConnectionCount();
+    }
+
+    @Override
+    public int getOpenSessionCount() {
+        int count = 0;
+        for (S threadSession : _threadSessions) {
+            if (threadSession.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    Session createSession() throws JMSException {
+        return _connections.next().createSession(_transacted, _transacted ? Session.SESSION_TRANSACTED
+                : Session.AUTO_ACKNOWLEDGE);
+    }
+
+    MessageProducer createProducer(Session session) throws JMSException {
+        final MessageProducer producer = session.createProducer(session.createQueue(_queueName));
+        producer.setDeliveryMode(_deliveryMode);
+        return producer;
+    }
+
+    /**
+     * Closes the thread sessions and the connections.
+     */
+    public void close() {
+        _closed = true;
+        try {
+            for (S threadSession : _threadSessions) {
+                threadSession.close();
+            }
+        } finally {
+            _connections.close();
+        }
+    }
+}
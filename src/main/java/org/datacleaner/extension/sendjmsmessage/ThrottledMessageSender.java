@@ -0,0 +1,86 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.util.Map;
+
+/**
+ * Sender which waits for an {@link AdaptiveSendLimiter} before each send of
+ * the sender it wraps, and reports the outcome of the send back to it.
+ */
+public class ThrottledMessageSender implements JMSMessageSender {
+
+    private final JMSMessageSender _delegate;
+    private final AdaptiveSendLimiter _limiter;
+
+    /**
+     * Constructor
+     *
+     * @param delegate
+     * @param limiter
+     */
+    public ThrottledMessageSender(JMSMessageSender delegate, AdaptiveSendLimiter limiter) {
+        _delegate = delegate;
+        _limiter = limiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(final String brokerUrl, final String jmsQueueName,
+            final String messageBody, final String correlationId) {
+        return send(new Send() {
+            @Override
+            public SendMessageToJMSQueueResult send() {
+                return _delegate.sendMessage(brokerUrl, jmsQueueName, messageBody, correlationId);
+            }
+        }, correlationId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendMessageToJMSQueueResult sendMessage(final String messageBody, final String correlationId,
+            final Map<String, Object> properties) {
+        return send(new Send() {
+            @Override
+            public SendMessageToJMSQueueResult send() {
+                return _delegate.sendMessage(messageBody, correlationId, properties);
+            }
+        }, correlationId);
+    }
+
+    private SendMessageToJMSQueueResult send(Send send, String correlationId) {
+        try {
+            _limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return SendMessageToJMSQueueResult.failure(correlationId, e);
+        }
+        final long sendStartNanos = System.nanoTime();
+        boolean successful = false;
+        try {
+            final SendMessageToJMSQueueResult result = send.send();
+            successful = result.isSuccessful();
+            return result;
+        } finally {
+            _limiter.release(System.nanoTime() - sendStartNanos, successful);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws Exception {
+        _delegate.close();
+    }
+
+    /**
+     * A send of the wrapped sender.
+     */
+    private interface Send {
+
+        public SendMessageToJMSQueueResult send();
+    }
+}
@@ -0,0 +1,38 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import org.apache.metamodel.util.HasName;
+
+/**
+ * Presets for how messages are handed to the broker, trading delivery
+ * guarantees for send rate.
+ */
+public enum TuningPreset implements HasName {
+
+    /**
+     * The individually configured producer settings are used.
+     */
+    CUSTOM("Custom settings"),
+
+    /**
+     * Asynchronous, non persistent sends within a producer window. Messages
+     * can be lost if the broker fails.
+     */
+    THROUGHPUT("Throughput"),
+
+    /**
+     * Synchronous, persistent sends, which are acknowledged by the broker one
+     * by one.
+     */
+    SAFETY("Safety");
+
+    private final String _name;
+
+    private TuningPreset(String name) {
+        _name = name;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+}
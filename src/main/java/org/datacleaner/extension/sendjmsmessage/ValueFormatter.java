@@ -0,0 +1,190 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.google.common.base.Strings;
+
+/**
+ * Formats the values of a column into a message body. A formatter is resolved
+ * once per column from its data type and an optional format pattern, so that
+ * rendering a row does not have to inspect the values: strings are appended as
+ * they are, and integers and decimals are appended without creating a String
+ * first.
+ *
+ * Patterns are a {@link DecimalFormat} pattern for numbers, or a
+ * {@link SimpleDateFormat} pattern for dates. The format objects are not
+ * thread safe, so they are cached per thread. Values of another type than the
+ * column's are formatted with their toString() method.
+ */
+public abstract class ValueFormatter {
+
+    /**
+     * Formatter which uses the toString() method of values, as the templates
+     * always did.
+     */
+    public static final ValueFormatter DEFAULT = new ValueFormatter() {
+        @Override
+        public void appendTo(StringBuilder sb, Object value) {
+            sb.append(value.toString());
+        }
+
+        @Override
+        public String format(Object value) {
+            return value.toString();
+        }
+    };
+
+    /**
+     * Creates the formatter of a column.
+     *
+     * @param dataType
+     *            the data type of the column, or null if unknown
+     * @param pattern
+     *            the format pattern, or null or empty to format values as
+     *            they are
+     * @return
+     * @throws IllegalArgumentException
+     *             if the pattern is invalid
+     */
+    public static ValueFormatter create(Class<?> dataType, String pattern) {
+        final String trimmedPattern = pattern == null ? null : Strings.emptyToNull(pattern.trim());
+        if (dataType != null && Number.class.isAssignableFrom(dataType)) {
+            return new NumberFormatter(trimmedPattern);
+        }
+        if (dataType != null && Date.class.isAssignableFrom(dataType)) {
+            return trimmedPattern == null ? DEFAULT : new DateFormatter(trimmedPattern);
+        }
+        if (trimmedPattern == null || (dataType != null && CharSequence.class.isAssignableFrom(dataType))) {
+            return DEFAULT;
+        }
+        // the type is not known up front, so the pattern is chosen per value
+        return new MixedFormatter(trimmedPattern);
+    }
+
+    /**
+     * Appends a value to a buffer.
+     *
+     * @param sb
+     * @param value
+     *            the value, which is not null
+     */
+    public abstract void appendTo(StringBuilder sb, Object value);
+
+    /**
+     * Formats a value into a String.
+     *
+     * @param value
+     *            the value, which is not null
+     * @return
+     */
+    public String format(Object value) {
+        final StringBuilder sb = new StringBuilder();
+        appendTo(sb, value);
+        return sb.toString();
+    }
+
+    /**
+     * Formats numbers, printing integers and decimals straight into the
+     * buffer when there is no pattern.
+     */
+    private static final class NumberFormatter extends ValueFormatter {
+
+        private final ThreadLocal<DecimalFormat> _format;
+
+        public NumberFormatter(final String pattern) {
+            if (pattern == null) {
+                _format = null;
+            } else {
+                // fail early on invalid patterns
+                new DecimalFormat(pattern);
+                _format = new ThreadLocal<DecimalFormat>() {
+                    @Override
+                    protected DecimalFormat initialValue() {
+                        return new DecimalFormat(pattern);
+                    }
+                };
+            }
+        }
+
+        @Override
+        public void appendTo(StringBuilder sb, Object value) {
+            if (_format != null && value instanceof Number) {
+                sb.append(_format.get().format(value));
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte) {
+                sb.append(((Number) value).longValue());
+            } else if (value instanceof Double) {
+                sb.append(((Double) value).doubleValue());
+            } else if (value instanceof Float) {
+                sb.append(((Float) value).floatValue());
+            } else {
+                sb.append(value.toString());
+            }
+        }
+    }
+
+    /**
+     * Formats dates with a pattern.
+     */
+    private static final class DateFormatter extends ValueFormatter {
+
+        private final ThreadLocal<SimpleDateFormat> _format;
+
+        public DateFormatter(final String pattern) {
+            // fail early on invalid patterns
+            new SimpleDateFormat(pattern);
+            _format = new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    return new SimpleDateFormat(pattern);
+                }
+            };
+        }
+
+        @Override
+        public void appendTo(StringBuilder sb, Object value) {
+            if (value instanceof Date) {
+                sb.append(_format.get().format((Date) value));
+            } else {
+                sb.append(value.toString());
+            }
+        }
+    }
+
+    /**
+     * Applies a pattern to the numbers and dates of a column of unknown type.
+     */
+    private static final class MixedFormatter extends ValueFormatter {
+
+        private final NumberFormatter _numberFormatter;
+        private final DateFormatter _dateFormatter;
+
+        public MixedFormatter(String pattern) {
+            // a pattern is usually valid for either numbers or dates, not both
+            _numberFormatter = isValidNumberPattern(pattern) ? new NumberFormatter(pattern) : null;
+            _dateFormatter = _numberFormatter == null ? new DateFormatter(pattern) : null;
+        }
+
+        private static boolean isValidNumberPattern(String pattern) {
+            try {
+                new DecimalFormat(pattern);
+                return pattern.indexOf('#') != -1 || pattern.indexOf('0') != -1;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void appendTo(StringBuilder sb, Object value) {
+            if (_numberFormatter != null && value instanceof Number) {
+                _numberFormatter.appendTo(sb, value);
+            } else if (_dateFormatter != null && value instanceof Date) {
+                _dateFormatter.appendTo(sb, value);
+            } else {
+                sb.append(value.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends every message on a thread of its own, so that blocking sends to a
+ * slow broker do not tie up the row processing threads, nor a fixed pool of
+ * sender threads. The number of messages in flight is limited by a semaphore,
+ * so submitting blocks while the limit is reached.
+ *
+ * Virtual threads are used when the JVM has them (Java 21 or later), looked up
+ * by reflection as this extension is built for older Java versions. On older
+ * JVMs a pool of platform threads is used instead, which the limit keeps
+ * bounded.
+ */
+public class VirtualThreadSendExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadSendExecutor.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private final ExecutorService _executor;
+    private final boolean _virtualThreads;
+    private final Semaphore _permits;
+    private final int _maxInFlight;
+    private final AsyncSendPipeline.MessageHandler _handler;
+    private final SendMessageCallback _callback;
+    private volatile boolean _closed;
+
+    /**
+     * Determines if the JVM has virtual threads.
+     *
+     * @return
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxInFlight
+     *            the max number of messages being sent at the same time
+     * @param handler
+     *            the handler sending each message and recording its result
+     * @param callback
+     *            callback for messages where the handler failed unexpectedly
+     */
+    public VirtualThreadSendExecutor(int maxInFlight, AsyncSendPipeline.MessageHandler handler,
+            SendMessageCallback callback) {
+        _maxInFlight = maxInFlight;
+        _permits = new Semaphore(maxInFlight);
+        _handler = handler;
+        _callback = callback;
+        final ExecutorService virtualThreadExecutor = createVirtualThreadExecutor();
+        _virtualThreads = virtualThreadExecutor != null;
+        _executor = _virtualThreads ? virtualThreadExecutor : createPlatformThreadExecutor();
+    }
+
+    private static ExecutorService createVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR == null) {
+            LOGGER.info("Virtual threads require Java 21 or later, sending on platform threads instead");
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (Exception e) {
+            LOGGER.warn("Virtual threads could not be used, sending on platform threads instead", e);
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformThreadExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "VirtualThreadSendExecutor-sender-"
+                        + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits a message for sending. Blocks while the max number of messages
+     * is in flight.
+     *
+     * @param messageBody
+     * @param correlationId
+     */
+    public void submit(final String messageBody, final String correlationId) {
+        if (_closed) {
+            throw new IllegalStateException("Executor is closed");
+        }
+        try {
+            _permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to submit message", e);
+        }
+        try {
+            _executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        _handler.handle(messageBody, correlationId);
+                    } catch (Throwable e) {
+                        LOGGER.warn("Sending message '{}' failed unexpectedly", correlationId, e);
+                        _callback.onFailure(SendMessageToJMSQueueResult.failure(correlationId, e));
+                    } finally {
+                        _permits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            _permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Determines if messages are sent on virtual threads, rather than platform
+     * threads.
+     *
+     * @return
+     */
+    public boolean isUsingVirtualThreads() {
+        return _virtualThreads;
+    }
+
+    /**
+     * Returns the number of messages submitted but not yet sent.
+     *
+     * @return
+     */
+    public int getInFlightCount() {
+        return _maxInFlight - _permits.availablePermits();
+    }
+
+    /**
+     * Waits until all submitted messages have been sent.
+     */
+    public void awaitCompletion() {
+        try {
+            // all permits are only available when no message is in flight
+            _permits.acquire(_maxInFlight);
+            _permits.release(_maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for messages to be sent", e);
+        }
+    }
+
+    /**
+     * Waits until all submitted messages have been sent and stops the
+     * executor.
+     */
+    public void close() {
+        awaitCompletion();
+        _closed = true;
+        _executor.shutdown();
+        try {
+            _executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
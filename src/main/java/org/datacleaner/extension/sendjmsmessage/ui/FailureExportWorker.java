@@ -0,0 +1,93 @@
+package org.datacleaner.extension.sendjmsmessage.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+
+import javax.swing.SwingWorker;
+
+import org.apache.metamodel.util.FileHelper;
+import org.datacleaner.extension.sendjmsmessage.FailureStore;
+import org.datacleaner.extension.sendjmsmessage.SendMessageToJMSQueueAnalyzerResult;
+import org.datacleaner.extension.sendjmsmessage.SendMessageToJMSQueueResult;
+
+/**
+ * Exports the failures of a result to a CSV file in the background, writing
+ * each failure as it is read so that the failures are never all in memory.
+ * The progress is reported as the percentage of failures read.
+ */
+public class FailureExportWorker extends SwingWorker<Integer, Void> {
+
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    private final SendMessageToJMSQueueAnalyzerResult _result;
+    private final String _errorType;
+    private final File _file;
+
+    /**
+     * Constructor
+     *
+     * @param result
+     * @param errorType
+     *            the error type of the failures to export, or null to export
+     *            all failures
+     * @param file
+     */
+    public FailureExportWorker(SendMessageToJMSQueueAnalyzerResult result, String errorType, File file) {
+        _result = result;
+        _errorType = errorType;
+        _file = file;
+    }
+
+    /**
+     * Writes the failures, returning the number of failures written.
+     */
+    @Override
+    protected Integer doInBackground() throws IOException {
+        final int total = _result.getFailureCount();
+        final Writer writer = FileHelper.getBufferedWriter(_file);
+        int read = 0;
+        int written = 0;
+        try {
+            writer.write("recipient,error type,error message\n");
+            final Iterator<SendMessageToJMSQueueResult> it = _result.getFailures().iterator();
+            while (it.hasNext() && !isCancelled()) {
+                final SendMessageToJMSQueueResult failure = it.next();
+                final String errorType = FailureStore.getErrorType(failure);
+                if (_errorType == null || _errorType.equals(errorType)) {
+                    final Exception error = failure.getError();
+                    writeValue(writer, failure.getMessageIdentifier());
+                    writer.write(',');
+                    writeValue(writer, errorType);
+                    writer.write(',');
+                    writeValue(writer, error == null ? null : error.getMessage());
+                    writer.write('\n');
+                    written++;
+                }
+                read++;
+                if (read % PROGRESS_INTERVAL == 0) {
+                    setProgress((int) (read * 100L / total));
+                }
+            }
+        } finally {
+            FileHelper.safeClose(writer);
+        }
+        setProgress(100);
+        return written;
+    }
+
+    private static void writeValue(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1
+                && value.indexOf('\r') == -1) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,262 @@
+package org.datacleaner.extension.sendjmsmessage.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+import org.datacleaner.extension.sendjmsmessage.FailureStore;
+import org.datacleaner.extension.sendjmsmessage.SendMessageToJMSQueueAnalyzerResult;
+import org.datacleaner.extension.sendjmsmessage.SendMessageToJMSQueueResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table model of the failures of a result, which loads the failures a page at
+ * a time in the background, only when the table shows them. Only the last
+ * shown pages are kept.
+ *
+ * The failures can be filtered by error type. The positions of the failures
+ * of the type are then searched for in the background, and added to the table
+ * while they are found.
+ */
+public class FailureTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FailureTableModel.class);
+
+    private static final String[] COLUMN_NAMES = { "Recipient", "Error type", "Error message" };
+    private static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 20;
+    private static final int READ_SIZE = 1024;
+    private static final int PUBLISH_SIZE = 1000;
+
+    private final SendMessageToJMSQueueAnalyzerResult _result;
+    private final Map<Integer, List<SendMessageToJMSQueueResult>> _pages;
+    private final Set<Integer> _loadingPages;
+    private String _errorType;
+    private int[] _positions;
+    private int _rowCount;
+    private int _generation;
+    private SwingWorker<Void, int[]> _filterWorker;
+
+    /**
+     * Constructor
+     *
+     * @param result
+     */
+    public FailureTableModel(SendMessageToJMSQueueAnalyzerResult result) {
+        _result = result;
+        _pages = new LinkedHashMap<Integer, List<SendMessageToJMSQueueResult>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<SendMessageToJMSQueueResult>> eldest) {
+                return size() > MAX_CACHED_PAGES;
+            }
+        };
+        _loadingPages = new HashSet<Integer>();
+        _rowCount = result.getFailureCount();
+    }
+
+    /**
+     * Returns the error type the failures are filtered by.
+     *
+     * @return the error type, or null if all failures are shown
+     */
+    public String getErrorType() {
+        return _errorType;
+    }
+
+    /**
+     * Filters the failures by error type.
+     *
+     * @param errorType
+     *            the error type, or null to show all failures
+     */
+    public void setErrorType(final String errorType) {
+        _errorType = errorType;
+        // pages being loaded for the previous filter are discarded
+        final int generation = ++_generation;
+        _pages.clear();
+        _loadingPages.clear();
+        if (_filterWorker != null) {
+            _filterWorker.cancel(false);
+            _filterWorker = null;
+        }
+
+        if (errorType == null) {
+            _positions = null;
+            _rowCount = _result.getFailureCount();
+            fireTableDataChanged();
+            return;
+        }
+
+        final Integer expectedCount = _result.getFailureCountsByErrorType().get(errorType);
+        _positions = new int[expectedCount == null ? 16 : expectedCount];
+        _rowCount = 0;
+        fireTableDataChanged();
+
+        _filterWorker = new SwingWorker<Void, int[]>() {
+            @Override
+            protected Void doInBackground() {
+                final Iterator<SendMessageToJMSQueueResult> it = _result.getFailures().iterator();
+                int[] batch = new int[PUBLISH_SIZE];
+                int batchSize = 0;
+                int position = 0;
+                while (it.hasNext() && !isCancelled()) {
+                    if (errorType.equals(FailureStore.getErrorType(it.next()))) {
+                        batch[batchSize++] = position;
+                        if (batchSize == batch.length) {
+                            publish(batch);
+                            batch = new int[PUBLISH_SIZE];
+                            batchSize = 0;
+                        }
+                    }
+                    position++;
+                }
+                if (batchSize > 0) {
+                    publish(Arrays.copyOf(batch, batchSize));
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<int[]> batches) {
+                if (generation != _generation) {
+                    return;
+                }
+                final int firstRow = _rowCount;
+                for (int[] batch : batches) {
+                    if (_rowCount + batch.length > _positions.length) {
+                        _positions = Arrays.copyOf(_positions, Math.max(_positions.length * 2, _rowCount
+                                + batch.length));
+                    }
+                    System.arraycopy(batch, 0, _positions, _rowCount, batch.length);
+                    _rowCount += batch.length;
+                }
+                fireTableRowsInserted(firstRow, _rowCount - 1);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    get();
+                } catch (Exception e) {
+                    LOGGER.warn("Filtering failures by error type {} failed", errorType, e);
+                }
+            }
+        };
+        _filterWorker.execute();
+    }
+
+    @Override
+    public int getRowCount() {
+        return _rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        final int page = rowIndex / PAGE_SIZE;
+        final List<SendMessageToJMSQueueResult> failures = _pages.get(page);
+        if (failures == null || rowIndex % PAGE_SIZE >= failures.size()) {
+            // not loaded, or loaded before more failures of the type were found
+            loadPage(page);
+            return columnIndex == 0 ? "Loading..." : "";
+        }
+
+        final SendMessageToJMSQueueResult failure = failures.get(rowIndex % PAGE_SIZE);
+        switch (columnIndex) {
+        case 0:
+            return failure.getMessageIdentifier();
+        case 1:
+            return FailureStore.getErrorType(failure);
+        default:
+            final Exception error = failure.getError();
+            return error == null ? "" : error.getMessage();
+        }
+    }
+
+    private void loadPage(final int page) {
+        if (!_loadingPages.add(page)) {
+            return;
+        }
+        final int generation = _generation;
+        final int firstRow = page * PAGE_SIZE;
+        final int lastRow = Math.min(firstRow + PAGE_SIZE, _rowCount) - 1;
+        final int[] positions = _positions == null ? null : Arrays.copyOfRange(_positions, firstRow, lastRow + 1);
+
+        new SwingWorker<List<SendMessageToJMSQueueResult>, Void>() {
+            @Override
+            protected List<SendMessageToJMSQueueResult> doInBackground() {
+                if (positions == null) {
+                    return _result.getFailures(firstRow, lastRow - firstRow + 1);
+                }
+                return readFailures(positions);
+            }
+
+            @Override
+            protected void done() {
+                if (generation != _generation) {
+                    return;
+                }
+                _loadingPages.remove(page);
+                try {
+                    _pages.put(page, get());
+                    fireTableRowsUpdated(firstRow, lastRow);
+                } catch (Exception e) {
+                    LOGGER.warn("Loading failures {} to {} failed", firstRow, lastRow, e);
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * Reads the failures at the given positions, which are in ascending
+     * order, skipping the failures in between in reads of a bounded size.
+     *
+     * @param positions
+     * @return
+     */
+    private List<SendMessageToJMSQueueResult> readFailures(int[] positions) {
+        final List<SendMessageToJMSQueueResult> failures = new ArrayList<SendMessageToJMSQueueResult>(
+                positions.length);
+        int next = 0;
+        while (next < positions.length) {
+            final int fromIndex = positions[next];
+            final int count = Math.min(READ_SIZE, positions[positions.length - 1] - fromIndex + 1);
+            final List<SendMessageToJMSQueueResult> read = _result.getFailures(fromIndex, count);
+            if (read.isEmpty()) {
+                break;
+            }
+            for (int i = 0; i < read.size() && next < positions.length; i++) {
+                if (fromIndex + i == positions[next]) {
+                    failures.add(read.get(i));
+                    next++;
+                }
+            }
+        }
+        return failures;
+    }
+}
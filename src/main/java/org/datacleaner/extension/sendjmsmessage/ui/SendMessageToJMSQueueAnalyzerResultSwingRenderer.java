@@ -1,23 +1,28 @@
 package org.datacleaner.extension.sendjmsmessage.ui;
 
+import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Font;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.util.Collection;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 import javax.swing.Icon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
 
-import org.apache.metamodel.util.FileHelper;
 import org.datacleaner.api.RendererBean;
+import org.datacleaner.extension.sendjmsmessage.LatencyHistogram;
 import org.datacleaner.extension.sendjmsmessage.SendMessageToJMSQueueAnalyzerResult;
-import org.datacleaner.extension.sendjmsmessage.SendMessageToJMSQueueResult;
+import org.datacleaner.extension.sendjmsmessage.DestinationStatistics;
 import org.datacleaner.panels.DCPanel;
 import org.datacleaner.result.renderer.AbstractRenderer;
 import org.datacleaner.result.renderer.SwingRenderingFormat;
@@ -36,6 +41,8 @@ import org.jdesktop.swingx.VerticalLayout;
 @RendererBean(SwingRenderingFormat.class)
 public class SendMessageToJMSQueueAnalyzerResultSwingRenderer extends AbstractRenderer<SendMessageToJMSQueueAnalyzerResult, JComponent> {
 
+    private static final String ALL_ERROR_TYPES = "(all error types)";
+
     /**
      * {@inheritDoc}
      */
@@ -49,73 +56,134 @@ public class SendMessageToJMSQueueAnalyzerResultSwingRenderer extends AbstractRe
         panel.add(createMetricText("Messages sent: ", successCount));
         panel.add(createMetricText("Messages skipped: ", skipCount));
         panel.add(createMetricText("Messages failed: ", failureCount));
+        panel.add(createMetricText("Messages per second: ", String.format("%.1f", analyzerResult.getMessagesPerSecond())));
+        if (analyzerResult.getProducerTuning() != null) {
+            panel.add(createMetricText("Producer tuning: ", analyzerResult.getProducerTuning()));
+        }
+        panel.add(createMetricText("Total wall time (ms): ", "" + analyzerResult.getWallTimeMillis()));
+        panel.add(createMetricText("Render time p50 / p95 / p99 / max (us): ",
+                createLatencyText(analyzerResult.getRenderTimes())));
+        panel.add(createMetricText("Send time p50 / p95 / p99 / max (us): ",
+                createLatencyText(analyzerResult.getSendTimes())));
+        for (DestinationStatistics shard : analyzerResult.getShardStatistics()) {
+            panel.add(createMetricText("Shard " + shard.getName() + " sent / failed / send time (us): ",
+                    shard.getSuccessCount() + " / " + shard.getFailureCount() + " / "
+                            + createLatencyText(shard.getSendTimes())));
+        }
+        for (DestinationStatistics broker : analyzerResult.getBrokerStatistics()) {
+            panel.add(createMetricText("Broker " + broker.getName() + " sent / failed / send time (us): ",
+                    broker.getSuccessCount() + " / " + broker.getFailureCount() + " / "
+                            + createLatencyText(broker.getSendTimes())));
+        }
+        if (analyzerResult.getFailoverCount() > 0) {
+            panel.add(createMetricText("Broker failovers: ", analyzerResult.getFailoverCount()));
+        }
+        if (analyzerResult.getOutboxReplayedCount() > 0) {
+            panel.add(createMetricText("Messages replayed from outbox: ", analyzerResult.getOutboxReplayedCount()));
+        }
+        if (analyzerResult.getOutboxPendingCount() > 0) {
+            panel.add(createMetricText("Messages left in outbox: ", analyzerResult.getOutboxPendingCount()));
+        }
+        if (analyzerResult.getConcurrencyLimit() > 0) {
+            panel.add(createMetricText("Concurrency limit / throttled time (ms): ",
+                    analyzerResult.getConcurrencyLimit() + " / " + analyzerResult.getThrottledMillis()));
+        }
 
-        final Collection<SendMessageToJMSQueueResult> failures = analyzerResult.getFailures();
-
-        if (!failures.isEmpty()) {
-            final Icon icon = ImageManager.get().getImageIcon(IconUtils.CSV_IMAGEPATH, IconUtils.ICON_SIZE_MEDIUM);
-            final JButton exportButton = new JButton("Export failure recipients", icon);
-            exportButton.addActionListener(new ActionListener() {
-                @Override
-                public void actionPerformed(ActionEvent e) {
-                    final DCFileChooser fileChooser = new DCFileChooser();
-                    fileChooser.addChoosableFileFilter(FileFilters.TXT);
-                    final int result = fileChooser.showSaveDialog(panel);
-                    if (result == DCFileChooser.APPROVE_OPTION) {
-                        final File selectedFile = fileChooser.getSelectedFile();
-                        final BufferedWriter writer = FileHelper.getBufferedWriter(selectedFile);
+        if (failureCount > 0) {
+            panel.add(createFailurePanel(analyzerResult));
+        }
+        return panel;
+    }
+
+    private Component createFailurePanel(final SendMessageToJMSQueueAnalyzerResult analyzerResult) {
+        final FailureTableModel tableModel = new FailureTableModel(analyzerResult);
+        final JTable table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        final JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(800, 400));
+
+        final JComboBox<String> errorTypeComboBox = new JComboBox<String>();
+        errorTypeComboBox.addItem(ALL_ERROR_TYPES);
+        for (String errorType : analyzerResult.getFailureCountsByErrorType().keySet()) {
+            errorTypeComboBox.addItem(errorType);
+        }
+        errorTypeComboBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final Object selected = errorTypeComboBox.getSelectedItem();
+                tableModel.setErrorType(ALL_ERROR_TYPES.equals(selected) ? null : (String) selected);
+            }
+        });
+
+        final DCPanel panel = new DCPanel();
+        final JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        final Icon icon = ImageManager.get().getImageIcon(IconUtils.CSV_IMAGEPATH, IconUtils.ICON_SIZE_MEDIUM);
+        final JButton exportButton = new JButton("Export failure recipients", icon);
+        exportButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final DCFileChooser fileChooser = new DCFileChooser();
+                fileChooser.addChoosableFileFilter(FileFilters.CSV);
+                final int result = fileChooser.showSaveDialog(panel);
+                if (result != DCFileChooser.APPROVE_OPTION) {
+                    return;
+                }
+                exportButton.setEnabled(false);
+                progressBar.setValue(0);
+                progressBar.setVisible(true);
+
+                // the failures of the shown error type are exported
+                final FailureExportWorker worker = new FailureExportWorker(analyzerResult,
+                        tableModel.getErrorType(), fileChooser.getSelectedFile()) {
+                    @Override
+                    protected void done() {
+                        exportButton.setEnabled(true);
+                        progressBar.setVisible(false);
                         try {
-                            writer.write("recipient");
-                            for (SendMessageToJMSQueueResult sendMessage : failures) {
-                                writer.write('\n' + sendMessage.getMessageIdentifier());
-                            }
+                            get();
                         } catch (Exception ex) {
                             WidgetUtils.showErrorMessage("Failed to export failure recipients", ex);
-                        } finally {
-                            FileHelper.safeClose(writer);
                         }
                     }
-                }
-            });
-
-            final DCPanel exportButtonPanel = new DCPanel();
-            exportButtonPanel.setLayout(new FlowLayout(FlowLayout.RIGHT));
-            exportButtonPanel.add(exportButton);
-            panel.add(exportButtonPanel);
-        }
-
-        int failuresPresented = 0;
-        for (SendMessageToJMSQueueResult failureSendMessageResult : failures) {
-            panel.add(createFailureText(failureSendMessageResult));
-            failuresPresented++;
-            if (failuresPresented > 20) {
-                // prevent too many errors on page
-                break;
+                };
+                worker.addPropertyChangeListener(new PropertyChangeListener() {
+                    @Override
+                    public void propertyChange(PropertyChangeEvent evt) {
+                        if ("progress".equals(evt.getPropertyName())) {
+                            progressBar.setValue((Integer) evt.getNewValue());
+                        }
+                    }
+                });
+                worker.execute();
             }
-        }
+        });
+
+        final DCPanel toolbarPanel = new DCPanel();
+        toolbarPanel.setLayout(new FlowLayout(FlowLayout.RIGHT));
+        toolbarPanel.add(new JLabel("Error type: "));
+        toolbarPanel.add(errorTypeComboBox);
+        toolbarPanel.add(progressBar);
+        toolbarPanel.add(exportButton);
+
+        panel.setLayout(new BorderLayout());
+        panel.add(toolbarPanel, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
         return panel;
     }
 
-    private Component createFailureText(SendMessageToJMSQueueResult failureSendMessageResult) {
-        final JLabel recipientLabel = new JLabel(failureSendMessageResult.getMessageIdentifier());
-        recipientLabel.setFont(WidgetUtils.FONT_NORMAL.deriveFont(Font.BOLD));
-
-        DCPanel panel = new DCPanel(WidgetUtils.BG_COLOR_BRIGHTEST);
-        panel.setLayout(new FlowLayout(Alignment.LEFT.getFlowLayoutAlignment()));
-        panel.add(new JLabel("Failed to send message to: "));
-        panel.add(recipientLabel);
-
-        final Exception error = failureSendMessageResult.getError();
-        if (error != null) {
-            String message = error.getMessage();
-            panel.add(new JLabel("Error message (see log for details): " + message));
-        }
-
-        return WidgetUtils.decorateWithShadow(panel, false, 2);
+    private String createLatencyText(LatencyHistogram.Snapshot latencies) {
+        return latencies.getPercentileMicros(50) + " / " + latencies.getPercentileMicros(95) + " / "
+                + latencies.getPercentileMicros(99) + " / " + latencies.getMaxMicros();
     }
 
     private Component createMetricText(String metric, int value) {
-        final JLabel valueLabel = new JLabel("" + value);
+        return createMetricText(metric, "" + value);
+    }
+
+    private Component createMetricText(String metric, String value) {
+        final JLabel valueLabel = new JLabel(value);
         valueLabel.setFont(WidgetUtils.FONT_NORMAL.deriveFont(Font.BOLD));
 
         DCPanel panel = new DCPanel(WidgetUtils.BG_COLOR_BRIGHTEST);
@@ -0,0 +1,130 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveSendLimiterTest {
+
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void testIncreasesWhileLatencyIsFlat() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(64, true, 0);
+        assertEquals(10, limiter.getLimit());
+
+        for (int round = 0; round < 20; round++) {
+            sendRound(limiter, FAST_NANOS, true);
+        }
+        assertEquals(19, limiter.getLimit());
+    }
+
+    @Test
+    public void testNeverExceedsMax() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(12, true, 0);
+        for (int round = 0; round < 20; round++) {
+            sendRound(limiter, FAST_NANOS, true);
+        }
+        assertEquals(12, limiter.getLimit());
+    }
+
+    @Test
+    public void testBacksOffOnLatency() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(64, true, 0);
+        sendRound(limiter, FAST_NANOS, true);
+        assertEquals(10, limiter.getLimit());
+
+        // only the first slow send of a round backs off
+        sendRound(limiter, SLOW_NANOS, true);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testBacksOffOnFailure() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(64, true, 0);
+        limiter.acquire();
+        limiter.release(FAST_NANOS, false);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testFixedLimit() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(3, false, 0);
+        sendRound(limiter, SLOW_NANOS, false);
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void testMaxSendsPerSecond() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(10, false, 100);
+        final long startMillis = System.currentTimeMillis();
+        for (int i = 0; i < 11; i++) {
+            limiter.acquire();
+            limiter.release(FAST_NANOS, true);
+        }
+        // the first send is not delayed, the others 10 ms each
+        final long elapsedMillis = System.currentTimeMillis() - startMillis;
+        assertTrue("Elapsed: " + elapsedMillis, elapsedMillis >= 95);
+        // minus the time sleeping overshoots
+        assertTrue("Throttled: " + limiter.getThrottledMillis(), limiter.getThrottledMillis() >= 80);
+    }
+
+    @Test
+    public void testThrottledSenderReleasesOnException() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(1, false, 0);
+        final JMSMessageSender failingSender = new BrokerSetMessageSenderTest.FakeBrokerSender("exception") {
+            @Override
+            public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName,
+                    String messageBody, String correlationId) {
+                throw new IllegalStateException("connection lost");
+            }
+        };
+        final ThrottledMessageSender sender = new ThrottledMessageSender(failingSender, limiter);
+        for (int i = 0; i < 2; i++) {
+            try {
+                sender.sendMessage("url", "queue", "body", "id");
+            } catch (IllegalStateException e) {
+                assertEquals("connection lost", e.getMessage());
+            }
+        }
+        // would block if the permits were not released
+        limiter.acquire();
+    }
+
+    @Test
+    public void testInterruptedRateWaitGivesBackTheSend() throws Exception {
+        final AdaptiveSendLimiter limiter = new AdaptiveSendLimiter(1, false, 10);
+        limiter.acquire();
+        limiter.release(FAST_NANOS, true);
+
+        // interrupted while waiting for the max rate
+        Thread.currentThread().interrupt();
+        try {
+            limiter.acquire();
+            fail("Exception expected");
+        } catch (InterruptedException e) {
+            // expected
+        }
+        // would block if the send had not been given back
+        limiter.acquire();
+        limiter.release(FAST_NANOS, true);
+    }
+
+    /**
+     * Fills the current limit with sends and releases them all.
+     */
+    private void sendRound(AdaptiveSendLimiter limiter, long sendNanos, boolean successful) throws Exception {
+        final int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < limit; i++) {
+            limiter.release(sendNanos, successful);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AsyncSendPipelineTest {
+
+    final AtomicInteger handled = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final SendMessageCallback callback = new SendMessageCallback() {
+        @Override
+        public void onSuccess(String correlationId) {
+        }
+
+        @Override
+        public void onFailure(SendMessageToJMSQueueResult failure) {
+            failed.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void testAllSubmittedMessagesAreHandledBeforeCompletion() {
+        AsyncSendPipeline pipeline = new AsyncSendPipeline(4, 10, new AsyncSendPipeline.MessageHandler() {
+            @Override
+            public void handle(String messageBody, String correlationId) {
+                if ("fail".equals(messageBody)) {
+                    throw new IllegalStateException("broker is down");
+                }
+                handled.incrementAndGet();
+            }
+        }, callback);
+
+        for (int i = 0; i < 1000; i++) {
+            pipeline.submit(i % 10 == 0 ? "fail" : "ok", "id" + i);
+        }
+        pipeline.awaitCompletion();
+        assertEquals(0, pipeline.getInFlightCount());
+        assertEquals(900, handled.get());
+        assertEquals(100, failed.get());
+
+        pipeline.close();
+    }
+
+    @Test
+    public void testLaneKeepsRunningAfterAnError() {
+        AsyncSendPipeline pipeline = new AsyncSendPipeline(1, 10, new AsyncSendPipeline.MessageHandler() {
+            @Override
+            public void handle(String messageBody, String correlationId) {
+                if ("fail".equals(messageBody)) {
+                    throw new LinkageError("JMS client class could not be loaded");
+                }
+                handled.incrementAndGet();
+            }
+        }, callback);
+
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(i % 10 == 0 ? "fail" : "ok", "id" + i);
+        }
+        pipeline.awaitCompletion();
+        assertEquals(90, handled.get());
+        assertEquals(10, failed.get());
+
+        pipeline.close();
+    }
+
+    @Test
+    public void testMessagesOfAnIdAreSentInOrder() throws Exception {
+        final Map<String, List<String>> sentPerId = new ConcurrentHashMap<String, List<String>>();
+        final Map<String, Set<String>> threadsPerId = new ConcurrentHashMap<String, Set<String>>();
+        for (int i = 0; i < 10; i++) {
+            sentPerId.put("id" + i, Collections.synchronizedList(new ArrayList<String>()));
+            threadsPerId.put("id" + i, Collections.synchronizedSet(new HashSet<String>()));
+        }
+        final Random random = new Random(1);
+        AsyncSendPipeline pipeline = new AsyncSendPipeline(4, 8, true, new AsyncSendPipeline.MessageHandler() {
+            @Override
+            public void handle(String messageBody, String correlationId) {
+                if (random.nextInt(10) == 0) {
+                    // uneven send times would reorder messages sent on other threads
+                    Thread.yield();
+                }
+                sentPerId.get(correlationId).add(messageBody);
+                threadsPerId.get(correlationId).add(Thread.currentThread().getName());
+            }
+        }, callback);
+
+        for (int i = 0; i < 1000; i++) {
+            pipeline.submit("" + i, "id" + (i % 10));
+        }
+        pipeline.awaitCompletion();
+        pipeline.close();
+
+        final Set<Integer> lanes = new HashSet<Integer>();
+        for (int i = 0; i < 10; i++) {
+            final List<String> sent = sentPerId.get("id" + i);
+            assertEquals(100, sent.size());
+            for (int j = 0; j < sent.size(); j++) {
+                assertEquals("" + (j * 10 + i), sent.get(j));
+            }
+            assertEquals(1, threadsPerId.get("id" + i).size());
+            lanes.add(pipeline.getLaneIndex("id" + i));
+        }
+        // the IDs are spread over the lanes
+        assertTrue(lanes.size() > 1);
+    }
+}
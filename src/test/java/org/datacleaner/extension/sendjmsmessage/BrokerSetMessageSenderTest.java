@@ -0,0 +1,157 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BrokerSetMessageSenderTest {
+
+    /**
+     * Sender of a fake broker, which fails or is slow depending on its url.
+     */
+    static class FakeBrokerSender implements JMSMessageSender {
+
+        final String brokerUrl;
+        final AtomicInteger sent = new AtomicInteger();
+        volatile boolean closed;
+
+        FakeBrokerSender(String brokerUrl) {
+            this.brokerUrl = brokerUrl;
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+                String correlationId) {
+            if (this.brokerUrl.startsWith("failing")) {
+                return SendMessageToJMSQueueResult.failure(correlationId, new IllegalStateException("broker down"));
+            }
+            if (this.brokerUrl.startsWith("slow")) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            sent.incrementAndGet();
+            return SendMessageToJMSQueueResult.success();
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+                Map<String, Object> properties) {
+            return sendMessage(null, null, messageBody, correlationId);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    final Map<String, FakeBrokerSender> senders = new ConcurrentHashMap<String, FakeBrokerSender>();
+    final AtomicInteger connectAttempts = new AtomicInteger();
+    final BrokerSetMessageSender.SenderFactory factory = new BrokerSetMessageSender.SenderFactory() {
+        @Override
+        public JMSMessageSender createSender(String brokerUrl) throws Exception {
+            // the "late" broker only accepts the second connection attempt
+            if (brokerUrl.startsWith("late") && connectAttempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("connection refused");
+            }
+            final FakeBrokerSender sender = new FakeBrokerSender(brokerUrl);
+            senders.put(brokerUrl, sender);
+            return sender;
+        }
+    };
+
+    @Test
+    public void testFailingBrokerIsTakenOutOfRotationWithoutLosingMessages() throws Exception {
+        BrokerSetMessageSender sender = new BrokerSetMessageSender(new String[] { "failing", "fast" }, factory, 3,
+                60000, 60000);
+        int successes = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (sender.sendMessage("vm://ignored", "queue", "body", "id" + i).isSuccessful()) {
+                successes++;
+            }
+        }
+        assertEquals(1000, successes);
+        assertEquals(1000, senders.get("fast").sent.get());
+        // avoided after a failure and ejected after three, each failure handed over to the other broker
+        final int failures = sender.getBrokerStatistics().get(0).getFailureCount();
+        assertTrue(failures >= 1 && failures <= 3);
+        assertEquals(failures, sender.getFailoverCount());
+        sender.close();
+    }
+
+    @Test
+    public void testAllBrokersFailing() throws Exception {
+        BrokerSetMessageSender sender = new BrokerSetMessageSender(new String[] { "failing1", "failing2" }, factory,
+                1, 60000, 60000);
+        assertEquals("broker down", sender.sendMessage("vm://ignored", "queue", "body", "id1").getError()
+                .getMessage());
+        assertTrue(sender.sendMessage("vm://ignored", "queue", "body", "id2").getError() instanceof CircuitBreakerOpenException);
+        sender.close();
+    }
+
+    @Test
+    public void testFasterBrokerReceivesMoreMessages() throws Exception {
+        BrokerSetMessageSender sender = new BrokerSetMessageSender(new String[] { "slow", "fast" }, factory, 3, 60000,
+                60000);
+        for (int i = 0; i < 500; i++) {
+            sender.sendMessage("vm://ignored", "queue", "body", "id" + i);
+        }
+        assertTrue(senders.get("fast").sent.get() > 3 * senders.get("slow").sent.get());
+        sender.close();
+    }
+
+    @Test
+    public void testUnavailableBrokerIsAddedWhenItCanBeConnectedTo() throws Exception {
+        BrokerSetMessageSender sender = new BrokerSetMessageSender(new String[] { "fast", "late" }, factory, 3, 60000,
+                10);
+        Thread.sleep(200);
+        for (int i = 0; i < 200; i++) {
+            sender.sendMessage("vm://ignored", "queue", "body", "id" + i);
+        }
+        assertTrue(senders.get("late").sent.get() > 0);
+        assertEquals(200, senders.get("fast").sent.get() + senders.get("late").sent.get());
+        sender.close();
+    }
+
+    @Test
+    public void testSenderConnectedByProbeWhileClosingIsClosed() throws Exception {
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final AtomicInteger attempts = new AtomicInteger();
+        final BrokerSetMessageSender sender = new BrokerSetMessageSender(new String[] { "fast", "late" },
+                new BrokerSetMessageSender.SenderFactory() {
+                    @Override
+                    public JMSMessageSender createSender(String brokerUrl) throws Exception {
+                        if (brokerUrl.startsWith("late")) {
+                            if (attempts.incrementAndGet() == 1) {
+                                throw new IllegalStateException("connection refused");
+                            }
+                            // a slow connect, which completes while the set is closed
+                            connecting.countDown();
+                            try {
+                                Thread.sleep(200);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        final FakeBrokerSender fakeSender = new FakeBrokerSender(brokerUrl);
+                        senders.put(brokerUrl, fakeSender);
+                        return fakeSender;
+                    }
+                }, 3, 60000, 10);
+        assertTrue(connecting.await(10, TimeUnit.SECONDS));
+        sender.close();
+
+        assertTrue(senders.get("fast").closed);
+        assertTrue(senders.get("late").closed);
+    }
+}
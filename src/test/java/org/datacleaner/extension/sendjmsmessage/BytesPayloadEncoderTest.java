@@ -0,0 +1,88 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+public class BytesPayloadEncoderTest {
+
+    @Test
+    public void testSmallBodyIsNotCompressed() throws Exception {
+        BytesPayloadEncoder encoder = new BytesPayloadEncoder("UTF-8", 100);
+        BytesPayloadEncoder.Payload payload = encoder.encode("h\u00e9llo");
+        assertEquals(BytesPayloadEncoder.CODEC_NONE, payload.getCodec());
+        assertArrayEquals("h\u00e9llo".getBytes("UTF-8"), payload.getBytes());
+        assertEquals(6, encoder.getOriginalBytes());
+        assertEquals(6, encoder.getEncodedBytes());
+    }
+
+    @Test
+    public void testLargeBodyIsCompressedAndCanBeInflated() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            body.append("<record><name>John</name><city>Paris</city></record>");
+        }
+        byte[] original = body.toString().getBytes("UTF-8");
+
+        BytesPayloadEncoder encoder = new BytesPayloadEncoder("UTF-8", 100);
+        BytesPayloadEncoder.Payload payload = encoder.encode(body.toString());
+        assertEquals(BytesPayloadEncoder.CODEC_DEFLATE, payload.getCodec());
+        assertTrue(payload.getBytes().length < original.length / 10);
+        assertEquals(original.length, encoder.getOriginalBytes());
+        assertEquals(payload.getBytes().length, encoder.getEncodedBytes());
+
+        Inflater inflater = new Inflater();
+        inflater.setInput(payload.getBytes());
+        byte[] inflated = new byte[original.length];
+        assertEquals(original.length, inflater.inflate(inflated));
+        assertArrayEquals(original, inflated);
+    }
+
+    @Test
+    public void testNegativeThresholdNeverCompresses() {
+        BytesPayloadEncoder encoder = new BytesPayloadEncoder("UTF-8", -1);
+        assertEquals(BytesPayloadEncoder.CODEC_NONE, encoder.encode(new String(new char[10000])).getCodec());
+    }
+
+    @Test
+    public void testPrefixIsPutInFrontOfEveryBody() throws Exception {
+        BytesPayloadEncoder encoder = new BytesPayloadEncoder("UTF-8", -1, "<template>\n");
+        assertArrayEquals("<template>\nfoo".getBytes("UTF-8"), encoder.encode("foo").getBytes());
+        assertArrayEquals("<template>\nbar".getBytes("UTF-8"), encoder.encode("bar").getBytes());
+        assertEquals(28, encoder.getOriginalBytes());
+    }
+
+    @Test
+    public void testDeflatersArePooledWithAThreadPerMessage() throws Exception {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            body.append("<record><name>John</name><city>Paris</city></record>");
+        }
+        final BytesPayloadEncoder encoder = new BytesPayloadEncoder("UTF-8", 100);
+        final AtomicInteger compressed = new AtomicInteger();
+        final Thread[] threads = new Thread[500];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (BytesPayloadEncoder.CODEC_DEFLATE.equals(encoder.encode(body.toString()).getCodec())) {
+                        compressed.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length, compressed.get());
+        assertTrue(encoder.getPooledCompressorCount() >= 1);
+        assertTrue(encoder.getPooledCompressorCount() <= BytesPayloadEncoder.MAX_POOLED_COMPRESSORS);
+    }
+}
@@ -0,0 +1,92 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class DedupCacheTest {
+
+    @Test
+    public void testMarkIfAbsent() throws Exception {
+        final DedupCache cache = new DedupCache(1024);
+        assertTrue(cache.markIfAbsent("1", "foo"));
+        assertFalse(cache.markIfAbsent("1", "foo"));
+        // same ID with another body, and another ID with the same body
+        assertTrue(cache.markIfAbsent("1", "bar"));
+        assertTrue(cache.markIfAbsent("2", "foo"));
+        assertTrue(cache.markIfAbsent(null, "foo"));
+        assertFalse(cache.markIfAbsent(null, "foo"));
+    }
+
+    @Test
+    public void testForget() throws Exception {
+        final DedupCache cache = new DedupCache(1024);
+        cache.markIfAbsent("1", "foo");
+        cache.markIfAbsent("1", "bar");
+        cache.markIfAbsent("2", "foo");
+
+        cache.forget("1");
+        assertTrue(cache.markIfAbsent("1", "foo"));
+        assertTrue(cache.markIfAbsent("1", "bar"));
+        assertFalse(cache.markIfAbsent("2", "foo"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        // a single bucket
+        final DedupCache cache = new DedupCache(8);
+        assertEquals(8, cache.getCapacity());
+        for (int i = 0; i < 8; i++) {
+            cache.markIfAbsent("" + i, "body");
+        }
+        // uses the oldest entry, so that the second oldest is evicted
+        assertFalse(cache.markIfAbsent("0", "body"));
+        assertTrue(cache.markIfAbsent("8", "body"));
+
+        assertFalse(cache.markIfAbsent("0", "body"));
+        assertTrue(cache.markIfAbsent("1", "body"));
+    }
+
+    @Test
+    public void testMemoryIsBounded() throws Exception {
+        final DedupCache cache = new DedupCache(1000);
+        assertEquals(1000, cache.getCapacity());
+        int duplicates = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (!cache.markIfAbsent("" + i, "body " + i)) {
+                duplicates++;
+            }
+        }
+        assertEquals(0, duplicates);
+        // the most recent rows are remembered
+        assertFalse(cache.markIfAbsent("99999", "body 99999"));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        final File file = new File("target/dedup-cache-test-" + System.nanoTime() + ".bin");
+        try {
+            DedupCache cache = DedupCache.load(file, 1024);
+            assertTrue(cache.markIfAbsent("1", "foo"));
+            assertTrue(cache.markIfAbsent("2", "bar"));
+            cache.save(file);
+
+            cache = DedupCache.load(file, 1024);
+            assertFalse(cache.markIfAbsent("1", "foo"));
+            assertFalse(cache.markIfAbsent("2", "bar"));
+            assertTrue(cache.markIfAbsent("3", "baz"));
+
+            // a cache of another size keeps the entries
+            cache = DedupCache.load(file, 64);
+            assertEquals(64, cache.getCapacity());
+            assertFalse(cache.markIfAbsent("1", "foo"));
+            assertFalse(cache.markIfAbsent("2", "bar"));
+        } finally {
+            file.delete();
+        }
+    }
+}
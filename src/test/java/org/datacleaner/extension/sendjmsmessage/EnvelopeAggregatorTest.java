@@ -0,0 +1,52 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EnvelopeAggregatorTest {
+
+    final List<String> envelopes = new ArrayList<String>();
+    final List<List<String>> envelopeRowIds = new ArrayList<List<String>>();
+    final EnvelopeAggregator.EnvelopeHandler handler = new EnvelopeAggregator.EnvelopeHandler() {
+        @Override
+        public void sendEnvelope(String envelopeBody, List<String> rowIds) {
+            envelopes.add(envelopeBody);
+            envelopeRowIds.add(rowIds);
+        }
+    };
+
+    @Test
+    public void testEnvelopeIsSentWhenFull() {
+        EnvelopeAggregator aggregator = new EnvelopeAggregator("[", ",", "]", 3, 1000, handler);
+        for (int i = 1; i <= 7; i++) {
+            aggregator.add("r" + i, "id" + i);
+        }
+        assertEquals(Arrays.asList("[r1,r2,r3]", "[r4,r5,r6]"), envelopes);
+
+        aggregator.flush();
+        assertEquals("[r7]", envelopes.get(2));
+        assertEquals(Arrays.asList("id4", "id5", "id6"), envelopeRowIds.get(1));
+
+        // nothing left to flush
+        aggregator.flush();
+        assertEquals(3, envelopes.size());
+    }
+
+    @Test
+    public void testEnvelopeIsSentBeforeExceedingMaxSize() {
+        EnvelopeAggregator aggregator = new EnvelopeAggregator("<", "|", ">", 100, 11, handler);
+        aggregator.add("aaaa", "1");
+        aggregator.add("bbbb", "2");
+        aggregator.add("cccc", "3");
+        // a single row larger than the max size is still sent
+        aggregator.add("dddddddddddd", "4");
+        aggregator.flush();
+
+        assertEquals(Arrays.asList("<aaaa|bbbb>", "<cccc>", "<dddddddddddd>"), envelopes);
+    }
+}
@@ -0,0 +1,157 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FailureStoreTest {
+
+    @Test
+    public void testFailuresAreSpilledAndIteratedInOrder() throws Exception {
+        final FailureStore store = new FailureStore(100, 2);
+        store.add(SendMessageToJMSQueueResult.failure("id0", new IOException("connection refused")));
+        for (int i = 1; i < 1050; i++) {
+            store.add(SendMessageToJMSQueueResult.failure(i == 7 ? null : "id" + i,
+                    i % 2 == 0 ? new IOException("connection refused") : new IllegalStateException("closed")));
+        }
+
+        assertEquals(1050, store.size());
+        assertEquals(525, store.getErrorTypeCounts().get(IOException.class.getName()).intValue());
+        assertEquals(525, store.getErrorTypeCounts().get(IllegalStateException.class.getName()).intValue());
+        assertEquals(2, store.getSamples().size());
+
+        assertFailures(store);
+        store.delete();
+    }
+
+    @Test
+    public void testSerializationIncludesSpilledFailures() throws Exception {
+        final FailureStore store = new FailureStore(100, 2);
+        store.add(SendMessageToJMSQueueResult.failure("id0", new IOException("connection refused")));
+        for (int i = 1; i < 1050; i++) {
+            store.add(SendMessageToJMSQueueResult.failure(i == 7 ? null : "id" + i,
+                    i % 2 == 0 ? new IOException("connection refused") : new IllegalStateException("closed")));
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(store);
+        out.close();
+        store.delete();
+
+        final FailureStore copy = (FailureStore) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))
+                .readObject();
+        assertEquals(1050, copy.size());
+        assertFailures(copy);
+        copy.delete();
+    }
+
+    @Test
+    public void testDeletedStoreCannotBeSerialized() throws Exception {
+        final FailureStore store = new FailureStore(100, 2);
+        for (int i = 0; i < 150; i++) {
+            store.add(SendMessageToJMSQueueResult.failure("id" + i, new IOException("connection refused")));
+        }
+        store.delete();
+
+        try {
+            new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(store);
+            fail("Exception expected");
+        } catch (NotSerializableException e) {
+            assertEquals("Spilled failures have been deleted", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testFailuresCanBeAddedAfterSealing() throws Exception {
+        final FailureStore store = new FailureStore(100, 2);
+        for (int i = 0; i < 250; i++) {
+            store.add(SendMessageToJMSQueueResult.failure("id" + i, new IOException("connection refused")));
+        }
+        store.seal();
+        assertEquals("id249", store.getPage(249, 1).get(0).getMessageIdentifier());
+
+        for (int i = 250; i < 400; i++) {
+            store.add(SendMessageToJMSQueueResult.failure("id" + i, new IOException("connection refused")));
+        }
+        store.seal();
+
+        final List<SendMessageToJMSQueueResult> page = store.getPage(0, 1000);
+        assertEquals(400, page.size());
+        for (int i = 0; i < page.size(); i++) {
+            assertEquals("id" + i, page.get(i).getMessageIdentifier());
+        }
+        store.delete();
+    }
+
+    private void assertFailures(FailureStore store) {
+        final Iterator<SendMessageToJMSQueueResult> it = store.asCollection().iterator();
+        int i = 0;
+        while (it.hasNext()) {
+            final SendMessageToJMSQueueResult failure = it.next();
+            if (i == 7) {
+                assertNull(failure.getMessageIdentifier());
+            } else {
+                assertEquals("id" + i, failure.getMessageIdentifier());
+            }
+            if (i >= 2) {
+                final FailureSummaryException error = (FailureSummaryException) failure.getError();
+                assertEquals(i % 2 == 0 ? "connection refused" : "closed", error.getMessage());
+                assertEquals(i % 2 == 0 ? IOException.class.getName() : IllegalStateException.class.getName(),
+                        error.getErrorType());
+            }
+            i++;
+        }
+        assertEquals(1050, i);
+    }
+
+    @Test
+    public void testSamplesKeepTheOriginalException() {
+        final FailureStore store = new FailureStore();
+        final IOException error = new IOException("connection refused");
+        store.add(SendMessageToJMSQueueResult.failure("id", error));
+        assertSame(error, store.asCollection().iterator().next().getError());
+    }
+
+    @Test
+    public void testPagesFromAnyPosition() throws Exception {
+        final FailureStore store = new FailureStore(100, 2);
+        for (int i = 0; i < 2550; i++) {
+            store.add(SendMessageToJMSQueueResult.failure("id" + i, new IOException("connection refused")));
+        }
+
+        for (int fromIndex : new int[] { 0, 1, 1023, 1024, 2047, 2499, 2500, 2540 }) {
+            final List<SendMessageToJMSQueueResult> page = store.getPage(fromIndex, 20);
+            assertEquals(Math.min(20, 2550 - fromIndex), page.size());
+            for (int i = 0; i < page.size(); i++) {
+                assertEquals("id" + (fromIndex + i), page.get(i).getMessageIdentifier());
+            }
+        }
+        // the samples keep their original exception
+        assertSame(IOException.class, store.getPage(1, 1).get(0).getError().getClass());
+        assertEquals(0, store.getPage(2550, 20).size());
+        store.delete();
+    }
+
+    @Test
+    public void testGetErrorType() {
+        assertEquals(IOException.class.getName(), FailureStore.getErrorType(SendMessageToJMSQueueResult.failure("1",
+                new IOException())));
+        assertEquals(IOException.class.getName(), FailureStore.getErrorType(SendMessageToJMSQueueResult.failure("1",
+                new FailureSummaryException(IOException.class.getName(), "connection refused"))));
+        assertEquals(FailureStore.UNKNOWN_ERROR_TYPE, FailureStore.getErrorType(SendMessageToJMSQueueResult.failure(
+                "1", null)));
+    }
+}
@@ -0,0 +1,97 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JMSBatchMessageSenderTest {
+
+    BrokerService broker;
+    MessageConsumer consumer;
+    Connection connection;
+    Session session;
+
+    String brokerUrl = "tcp://localhost:61618";
+    String queueName = "some.batch.queue.name";
+
+    final List<String> sent = new CopyOnWriteArrayList<String>();
+    final List<SendMessageToJMSQueueResult> failed = new CopyOnWriteArrayList<SendMessageToJMSQueueResult>();
+    final SendMessageCallback callback = new SendMessageCallback() {
+        @Override
+        public void onSuccess(String correlationId) {
+            sent.add(correlationId);
+        }
+
+        @Override
+        public void onFailure(SendMessageToJMSQueueResult failure) {
+            failed.add(failure);
+        }
+    };
+
+    @Before
+    public void prepare() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        TransportConnector connector = new TransportConnector();
+        connector.setUri(new URI(brokerUrl));
+        broker.addConnector(connector);
+        broker.start();
+
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Destination destination = session.createQueue(queueName);
+        consumer = session.createConsumer(destination);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        consumer.close();
+        session.close();
+        connection.close();
+        broker.stop();
+    }
+
+    @Test
+    public void testMessagesAreOnlyVisibleWhenBatchIsCommitted() throws Exception {
+        JMSBatchMessageSender sender = new JMSBatchMessageSender(brokerUrl, queueName, 3, 0, callback);
+
+        sender.addMessage("m1", "id1");
+        sender.addMessage("m2", "id2");
+        assertNull(consumer.receive(200));
+        assertEquals(0, sent.size());
+
+        sender.addMessage("m3", "id3");
+        assertEquals(3, sent.size());
+        for (int i = 1; i <= 3; i++) {
+            Message message = consumer.receive(1000);
+            assertEquals("m" + i, ((TextMessage) message).getText());
+            assertEquals("id" + i, message.getJMSCorrelationID());
+        }
+
+        // partial batch is committed on close
+        sender.addMessage("m4", "id4");
+        sender.close();
+        assertEquals(4, sent.size());
+        assertEquals("m4", ((TextMessage) consumer.receive(1000)).getText());
+        assertEquals(0, failed.size());
+    }
+}
@@ -0,0 +1,81 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverRecordedValues() {
+        for (long value : new long[] { 0, 1, 15, 16, 17, 100, 1023, 1024, 123456789L }) {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertTrue("upper bound of " + value, LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue("previous upper bound of " + value, LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentilesAreMergedAcrossThreads() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= 1000; i++) {
+                        histogram.recordMicros(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(4000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMaxMicros());
+        assertEquals(500, snapshot.getMeanMicros());
+        assertEquals(500, snapshot.getPercentileMicros(50), 500 * 0.07);
+        assertEquals(990, snapshot.getPercentileMicros(99), 990 * 0.07);
+        assertEquals(1000, snapshot.getPercentileMicros(100));
+    }
+
+    @Test
+    public void testMemoryIsBoundedWithAThreadPerMessage() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(64,
+                new AsyncSendPipeline.MessageHandler() {
+                    @Override
+                    public void handle(String messageBody, String correlationId) {
+                        histogram.recordMicros(100);
+                    }
+                }, new SendMessageCallback() {
+                    @Override
+                    public void onSuccess(String correlationId) {
+                    }
+
+                    @Override
+                    public void onFailure(SendMessageToJMSQueueResult failure) {
+                    }
+                });
+        for (int i = 0; i < 20000; i++) {
+            executor.submit("body", "id" + i);
+        }
+        executor.close();
+
+        assertEquals(20000, histogram.snapshot().getCount());
+        assertTrue("Stripes in use: " + histogram.getStripesInUse(),
+                histogram.getStripesInUse() <= LatencyHistogram.STRIPE_COUNT);
+    }
+
+    @Test
+    public void testEmptySnapshot() {
+        assertEquals(0, LatencyHistogram.Snapshot.empty().getPercentileMicros(95));
+    }
+}
@@ -0,0 +1,105 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.MapMessage;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MapMessageSenderTest {
+
+    BrokerService broker;
+    MessageConsumer consumer;
+    Connection connection;
+    Session session;
+
+    String brokerUrl = "tcp://localhost:61621";
+    String queueName = "some.queue.name";
+
+    @Before
+    public void prepare() throws Exception {
+        // broker
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        TransportConnector connector = new TransportConnector();
+        connector.setUri(new URI(brokerUrl));
+        broker.addConnector(connector);
+        broker.start();
+
+        // consumer
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Destination destination = session.createQueue(queueName);
+        consumer = session.createConsumer(destination);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        broker.stop();
+        consumer.close();
+        session.close();
+        connection.close();
+    }
+
+    @Test
+    public void testSendValues() throws Exception {
+        final String[] fields = { "id", "name", "amount", "price", "created", "active", "data", "note", " " };
+        final MapMessageSender sender = new MapMessageSender(brokerUrl, queueName, fields,
+                Collections.<String, Object> singletonMap("source", "test"), new ProducerTuning());
+        final Date created = new Date(1445000000000L);
+        final List<Object> values = Arrays.<Object> asList(42, "J\u00f6rg", 12345678901L, new BigDecimal("9.99"),
+                created, true, new byte[] { 1, 2 }, null, "unnamed");
+        assertTrue(sender.sendValues(values, "42").isSuccessful());
+
+        final MapMessage message = (MapMessage) consumer.receive(1000);
+        assertEquals("42", message.getJMSCorrelationID());
+        assertEquals("test", message.getStringProperty("source"));
+        assertEquals(Integer.valueOf(42), message.getObject("id"));
+        assertEquals("J\u00f6rg", message.getObject("name"));
+        assertEquals(Long.valueOf(12345678901L), message.getObject("amount"));
+        assertEquals("9.99", message.getObject("price"));
+        assertEquals(Long.valueOf(created.getTime()), message.getObject("created"));
+        assertEquals(Boolean.TRUE, message.getObject("active"));
+        assertArrayEquals(new byte[] { 1, 2 }, message.getBytes("data"));
+        // null values and blank field names are left out
+        assertFalse(message.itemExists("note"));
+        assertEquals(7, Collections.list(message.getMapNames()).size());
+
+        sender.close();
+    }
+
+    @Test
+    public void testSendText() throws Exception {
+        final MapMessageSender sender = new MapMessageSender(brokerUrl, queueName, new String[] { "id" },
+                Collections.<String, Object> emptyMap(), new ProducerTuning());
+        assertTrue(sender.sendMessage(brokerUrl, queueName, "header", "1").isSuccessful());
+
+        final TextMessage message = (TextMessage) consumer.receive(1000);
+        assertEquals("header", message.getText());
+        assertEquals("1", message.getJMSCorrelationID());
+
+        sender.close();
+    }
+}
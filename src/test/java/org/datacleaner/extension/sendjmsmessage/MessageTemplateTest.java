@@ -0,0 +1,74 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MessageTemplateTest {
+
+    @Test
+    public void testRenderWithMultipleOccurrences() {
+        MessageTemplate template = MessageTemplate.compile("<a>name</a><b>name</b><c>city</c>", new String[] { "name",
+                "city" });
+        assertEquals(3, template.getSlotCount());
+        assertEquals("<a>John</a><b>John</b><c>Paris</c>", template.render(Arrays.<Object> asList("John", "Paris")));
+    }
+
+    @Test
+    public void testKeysAreMatchedAsPlainText() {
+        MessageTemplate template = MessageTemplate.compile("a.b;axb", new String[] { "a.b" });
+        assertEquals("1;axb", template.render(Arrays.<Object> asList("1")));
+    }
+
+    @Test
+    public void testEarlierKeysClaimTheirOccurrencesFirst() {
+        MessageTemplate template = MessageTemplate.compile("firstname;name", new String[] { "firstname", "name" });
+        assertEquals("John;Doe", template.render(Arrays.<Object> asList("John", "Doe")));
+    }
+
+    @Test
+    public void testBlankKeysAreIgnored() {
+        MessageTemplate template = MessageTemplate.compile("a; ;b", new String[] { "a", " ", "b" });
+        assertEquals("1; ;3", template.render(Arrays.<Object> asList("1", "2", "3")));
+    }
+
+    @Test
+    public void testNullValuesRenderEmpty() {
+        MessageTemplate template = MessageTemplate.compile("[a]", new String[] { "a" });
+        assertEquals("[]", template.render(Arrays.<Object> asList((Object) null)));
+    }
+
+    @Test
+    public void testTemplateIdIsStableAndCompact() {
+        String id = MessageTemplate.compile("<a>name</a>", new String[] { "name" }).getTemplateId();
+        assertEquals(16, id.length());
+        assertEquals(id, MessageTemplate.compile("<a>name</a>", new String[] { "other" }).getTemplateId());
+        assertFalse(id.equals(MessageTemplate.compile("<b>name</b>", new String[] { "name" }).getTemplateId()));
+    }
+
+    @Test
+    public void testEncodeLiterals() {
+        MessageTemplate template = MessageTemplate.compile("<a>x</a><b>y</b>", new String[] { "y", "x" });
+        byte[][] literals = template.encodeLiterals(StandardCharsets.UTF_8);
+        assertEquals(3, literals.length);
+        assertEquals("<a>", new String(literals[0], StandardCharsets.UTF_8));
+        assertEquals("</a><b>", new String(literals[1], StandardCharsets.UTF_8));
+        assertEquals("</b>", new String(literals[2], StandardCharsets.UTF_8));
+        assertEquals(1, template.getSlotKeyIndex(0));
+        assertEquals(0, template.getSlotKeyIndex(1));
+    }
+
+    @Test
+    public void testRenderWithFormatters() {
+        MessageTemplate template = MessageTemplate.compile("[a;b;c]", new String[] { "a", "b", "c" })
+                .withFormatters(new ValueFormatter[] { ValueFormatter.create(Double.class, "0.00"), null });
+        assertEquals("[1.50;1.5;x]", template.render(Arrays.<Object> asList(1.5d, 1.5d, "x")));
+        assertEquals("1.50", template.formatSlotValue(0, Arrays.<Object> asList(1.5d, 1.5d, "x")));
+        assertNull(template.formatSlotValue(1, Arrays.<Object> asList(1.5d, null, "x")));
+    }
+}
@@ -0,0 +1,346 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OutboxJournalTest {
+
+    private File _directory;
+
+    @Before
+    public void setUp() {
+        _directory = new File("target/outbox-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = _directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        _directory.delete();
+    }
+
+    @Test
+    public void testAppendAndAcknowledgeInOrder() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        journal.append(OutboxJournal.TYPE_HEADER, "template", "<template/>");
+        journal.append(OutboxJournal.TYPE_ROW, "1", "first");
+        journal.append(OutboxJournal.TYPE_ROW, null, "s\u00e9cond");
+        assertEquals(2, journal.getAppendedRowCount());
+
+        OutboxJournal.Record record = journal.peek();
+        assertEquals(OutboxJournal.TYPE_HEADER, record.getType());
+        assertEquals("template", record.getId());
+        assertEquals("<template/>", record.getBody());
+        assertFalse(record.isReplayed());
+        // peeking again returns the same record until it is acknowledged
+        assertEquals("template", journal.peek().getId());
+        journal.acknowledge();
+
+        assertEquals("first", journal.peek().getBody());
+        journal.acknowledge();
+
+        record = journal.peek();
+        assertNull(record.getId());
+        assertEquals("s\u00e9cond", record.getBody());
+        journal.acknowledge();
+
+        assertNull(journal.peek());
+        assertTrue(journal.isDrained());
+        journal.close();
+        assertEquals(Collections.emptyList(), getSegmentNames());
+    }
+
+    @Test
+    public void testReplayAfterReopen() throws Exception {
+        OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        for (int i = 0; i < 5; i++) {
+            journal.append(OutboxJournal.TYPE_ROW, "" + i, "body " + i);
+        }
+        journal.peek();
+        journal.acknowledge();
+        journal.peek();
+        journal.acknowledge();
+        journal.close();
+
+        journal = new OutboxJournal(_directory, 1024);
+        assertEquals(0, journal.getAppendedRowCount());
+        journal.append(OutboxJournal.TYPE_ROW, "5", "body 5");
+
+        final List<String> ids = new ArrayList<String>();
+        final List<Boolean> replayed = new ArrayList<Boolean>();
+        OutboxJournal.Record record;
+        while ((record = journal.peek()) != null) {
+            ids.add(record.getId());
+            replayed.add(record.isReplayed());
+            journal.acknowledge();
+        }
+        assertEquals("[2, 3, 4, 5]", ids.toString());
+        assertEquals("[true, true, true, false]", replayed.toString());
+        journal.close();
+        assertEquals(Collections.emptyList(), getSegmentNames());
+    }
+
+    @Test
+    public void testSegmentRollover() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 64);
+        for (int i = 0; i < 10; i++) {
+            journal.append(OutboxJournal.TYPE_ROW, "" + i, "a body of about thirty characters");
+        }
+        assertEquals(10, getSegmentNames().size());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("" + i, journal.peek().getId());
+            journal.acknowledge();
+        }
+        assertTrue(journal.isDrained());
+        // only the segment which is appended to is left
+        assertEquals(1, getSegmentNames().size());
+        journal.close();
+        assertEquals(0, getSegmentNames().size());
+    }
+
+    @Test
+    public void testCorruptRecordIsSkipped() throws Exception {
+        OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        journal.append(OutboxJournal.TYPE_ROW, "1", "first");
+        journal.append(OutboxJournal.TYPE_ROW, "2", "second");
+        journal.append(OutboxJournal.TYPE_ROW, "3", "third");
+        journal.close();
+
+        // flip a byte in the body of the second record
+        corruptSecondRecord();
+
+        journal = new OutboxJournal(_directory, 1024);
+        assertEquals("1", journal.peek().getId());
+        assertFalse(journal.peek().isCorrupt());
+        journal.acknowledge();
+        final OutboxJournal.Record corrupt = journal.peek();
+        assertTrue(corrupt.isCorrupt());
+        assertEquals("2", corrupt.getId());
+        assertNull(corrupt.getBody());
+        journal.acknowledge();
+        // the records after the corrupt one are not lost
+        assertEquals("third", journal.peek().getBody());
+        journal.acknowledge();
+        assertNull(journal.peek());
+        journal.close();
+    }
+
+    @Test
+    public void testForwarderFailsCorruptRecords() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        journal.append(OutboxJournal.TYPE_ROW, "1", "first");
+        journal.append(OutboxJournal.TYPE_ROW, "2", "second");
+        journal.append(OutboxJournal.TYPE_ROW, "3", "third");
+        corruptSecondRecord();
+
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+        final OutboxForwarder forwarder = new OutboxForwarder(journal, new OutboxForwarder.RecordHandler() {
+            @Override
+            public SendMessageToJMSQueueResult forward(OutboxJournal.Record record) {
+                return SendMessageToJMSQueueResult.success();
+            }
+        }, new SendMessageCallback() {
+            @Override
+            public void onSuccess(String correlationId) {
+                sent.add(correlationId);
+            }
+
+            @Override
+            public void onFailure(SendMessageToJMSQueueResult failure) {
+                failed.add(failure.getMessageIdentifier());
+            }
+        }, 1, 4, -1);
+        assertTrue(forwarder.awaitDrained(10000));
+        forwarder.close(0);
+        journal.close();
+
+        assertEquals("[1, 3]", sent.toString());
+        assertEquals("[2]", failed.toString());
+        assertEquals(2, forwarder.getForwardedCount());
+        assertEquals(1, forwarder.getFailedCount());
+    }
+
+    @Test
+    public void testCloseLetsTheCurrentSendFinish() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        final CountDownLatch sending = new CountDownLatch(1);
+        final AtomicInteger interrupted = new AtomicInteger();
+        final OutboxForwarder forwarder = new OutboxForwarder(journal, new OutboxForwarder.RecordHandler() {
+            @Override
+            public SendMessageToJMSQueueResult forward(OutboxJournal.Record record) {
+                sending.countDown();
+                try {
+                    // a slow broker
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+                return SendMessageToJMSQueueResult.success();
+            }
+        }, new SendMessageCallback() {
+            @Override
+            public void onSuccess(String correlationId) {
+            }
+
+            @Override
+            public void onFailure(SendMessageToJMSQueueResult failure) {
+            }
+        }, 1, 4, -1);
+        journal.append(OutboxJournal.TYPE_ROW, "1", "first");
+        assertTrue(sending.await(10, TimeUnit.SECONDS));
+        forwarder.close(0);
+
+        assertEquals(0, interrupted.get());
+        assertEquals(1, forwarder.getForwardedCount());
+        // acknowledged, so that the next run does not send it again
+        assertTrue(journal.isDrained());
+        journal.close();
+    }
+
+    private void corruptSecondRecord() throws IOException {
+        final File segment = new File(_directory, getSegmentNames().get(0));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            final long position = 8 + 8 + 5 + 1 + 5 + 8 + 5 + 1;
+            file.seek(position);
+            final int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void testDirectoryIsLocked() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        try {
+            new OutboxJournal(_directory, 1024);
+            fail("Exception expected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Outbox directory is in use by another job"));
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testForwarderRetriesUntilSent() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        final AtomicInteger attempts = new AtomicInteger();
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger succeeded = new AtomicInteger();
+        final OutboxForwarder forwarder = new OutboxForwarder(journal, new OutboxForwarder.RecordHandler() {
+            @Override
+            public SendMessageToJMSQueueResult forward(OutboxJournal.Record record) {
+                // the broker is unavailable for the first attempts
+                if (attempts.incrementAndGet() <= 3) {
+                    return SendMessageToJMSQueueResult.failure(record.getId(), new IllegalStateException("down"));
+                }
+                sent.add(record.getId());
+                return SendMessageToJMSQueueResult.success();
+            }
+        }, new SendMessageCallback() {
+            @Override
+            public void onSuccess(String correlationId) {
+                succeeded.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(SendMessageToJMSQueueResult failure) {
+                fail("Outbox records are never failed");
+            }
+        }, 1, 4, -1);
+
+        for (int i = 0; i < 20; i++) {
+            journal.append(OutboxJournal.TYPE_ROW, "" + i, "body " + i);
+        }
+        assertTrue(forwarder.awaitDrained(10000));
+        forwarder.close(0);
+        journal.close();
+
+        assertEquals(20, sent.size());
+        assertEquals("0", sent.get(0));
+        assertEquals("19", sent.get(19));
+        assertEquals(20, succeeded.get());
+        assertEquals(20, forwarder.getForwardedCount());
+        assertEquals(0, forwarder.getReplayedCount());
+    }
+
+    @Test
+    public void testRecordWhichAlwaysFailsIsGivenUpOn() throws Exception {
+        final OutboxJournal journal = new OutboxJournal(_directory, 1024);
+        final AtomicInteger attempts = new AtomicInteger();
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+        final OutboxForwarder forwarder = new OutboxForwarder(journal, new OutboxForwarder.RecordHandler() {
+            @Override
+            public SendMessageToJMSQueueResult forward(OutboxJournal.Record record) {
+                // rejected by the broker, however often it is sent
+                if ("2".equals(record.getId())) {
+                    attempts.incrementAndGet();
+                    return SendMessageToJMSQueueResult.failure(record.getId(), new IllegalStateException(
+                            "too large"));
+                }
+                return SendMessageToJMSQueueResult.success();
+            }
+        }, new SendMessageCallback() {
+            @Override
+            public void onSuccess(String correlationId) {
+                sent.add(correlationId);
+            }
+
+            @Override
+            public void onFailure(SendMessageToJMSQueueResult failure) {
+                failed.add(failure.getMessageIdentifier());
+            }
+        }, 1, 4, 3);
+        journal.append(OutboxJournal.TYPE_ROW, "1", "first");
+        journal.append(OutboxJournal.TYPE_ROW, "2", "second");
+        journal.append(OutboxJournal.TYPE_ROW, "3", "third");
+        assertTrue(forwarder.awaitDrained(10000));
+        forwarder.close(0);
+        journal.close();
+
+        assertEquals(4, attempts.get());
+        assertEquals("[1, 3]", sent.toString());
+        assertEquals("[2]", failed.toString());
+        assertEquals(1, forwarder.getFailedCount());
+
+        // removed from the journal, so that the next run does not send it again
+        final OutboxJournal reopened = new OutboxJournal(_directory, 1024);
+        assertTrue(reopened.isDrained());
+        reopened.close();
+    }
+
+    private List<String> getSegmentNames() {
+        final List<String> names = new ArrayList<String>();
+        for (String name : _directory.list()) {
+            if (name.endsWith(".seg")) {
+                names.add(name);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
@@ -0,0 +1,37 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.jms.Connection;
+
+import org.apache.activemq.jms.pool.PooledConnection;
+import org.junit.Test;
+
+public class PooledConnectionsTest {
+
+    @Test
+    public void testConnectionsAreHandedOutRoundRobin() throws Exception {
+        final ProducerTuning tuning = new ProducerTuning(3, ProducerTuning.DEFAULT_MAX_SESSIONS_PER_CONNECTION,
+                false, 0, true, false);
+        final PooledConnections connections = new PooledConnections("vm://pooled?broker.persistent=false",
+                tuning);
+        assertEquals(3, connections.getConnectionCount());
+
+        final Map<Connection, Integer> uses = new IdentityHashMap<Connection, Integer>();
+        for (int i = 0; i < 9; i++) {
+            // the physical connection behind the pooled one
+            final Connection connection = ((PooledConnection) connections.next()).getConnection();
+            final Integer count = uses.get(connection);
+            uses.put(connection, count == null ? 1 : count + 1);
+        }
+        assertEquals(3, uses.size());
+        for (Integer count : uses.values()) {
+            assertEquals(3, count.intValue());
+        }
+
+        connections.close();
+    }
+}
@@ -0,0 +1,44 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.jms.DeliveryMode;
+
+import org.junit.Test;
+
+public class ProducerTuningTest {
+
+    private final ProducerTuning custom = new ProducerTuning(4, 50, false, 0, true, false);
+
+    @Test
+    public void testCustomPresetKeepsSettings() {
+        assertSame(custom, custom.withPreset(TuningPreset.CUSTOM));
+        assertEquals(DeliveryMode.PERSISTENT, custom.getDeliveryMode());
+    }
+
+    @Test
+    public void testThroughputPreset() {
+        ProducerTuning tuning = custom.withPreset(TuningPreset.THROUGHPUT);
+        assertTrue(tuning.isUseAsyncSend());
+        assertEquals(ProducerTuning.THROUGHPUT_PRODUCER_WINDOW_SIZE, tuning.getProducerWindowSize());
+        assertEquals(DeliveryMode.NON_PERSISTENT, tuning.getDeliveryMode());
+        assertTrue(tuning.isOptimizeAcknowledge());
+        assertEquals(4, tuning.getMaxConnections());
+        assertEquals(50, tuning.getMaxSessionsPerConnection());
+        assertEquals("async send (window 1048576 bytes), non persistent, optimized acknowledge, "
+                + "4 connections x 50 sessions", tuning.getSummary());
+    }
+
+    @Test
+    public void testSafetyPreset() {
+        ProducerTuning tuning = new ProducerTuning(4, 50, true, 1000, false, true).withPreset(TuningPreset.SAFETY);
+        assertFalse(tuning.isUseAsyncSend());
+        assertEquals(0, tuning.getProducerWindowSize());
+        assertTrue(tuning.isPersistentDelivery());
+        assertFalse(tuning.isOptimizeAcknowledge());
+        assertEquals("sync send, persistent, 4 connections x 50 sessions", tuning.getSummary());
+    }
+}
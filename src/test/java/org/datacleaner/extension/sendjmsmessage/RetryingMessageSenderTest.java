@@ -0,0 +1,160 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RetryingMessageSenderTest {
+
+    final List<String> sent = new CopyOnWriteArrayList<String>();
+    final List<SendMessageToJMSQueueResult> failed = new CopyOnWriteArrayList<SendMessageToJMSQueueResult>();
+    final SendMessageCallback callback = new SendMessageCallback() {
+        @Override
+        public void onSuccess(String correlationId) {
+            sent.add(correlationId);
+        }
+
+        @Override
+        public void onFailure(SendMessageToJMSQueueResult failure) {
+            failed.add(failure);
+        }
+    };
+
+    /**
+     * Sender which fails a number of times before it starts succeeding.
+     */
+    static class FlakySender implements JMSMessageSender {
+
+        final AtomicInteger remainingFailures;
+        final AtomicInteger attempts = new AtomicInteger();
+
+        FlakySender(int failures) {
+            remainingFailures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+                String correlationId) {
+            attempts.incrementAndGet();
+            if (remainingFailures.getAndDecrement() > 0) {
+                throw new IllegalStateException("broker unavailable");
+            }
+            return SendMessageToJMSQueueResult.success();
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+                Map<String, Object> properties) {
+            return sendMessage(null, null, messageBody, correlationId);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testFailedMessageIsRetried() {
+        FlakySender delegate = new FlakySender(2);
+        RetryingMessageSender sender = new RetryingMessageSender(delegate, "vm://test", "queue", 3, 1, 10,
+                new CircuitBreaker(0, 0), false, 0, 100, callback);
+
+        sender.send("body", "id1");
+        assertTrue(sender.awaitCompletion(10000));
+        sender.close(10000);
+
+        assertEquals(1, sent.size());
+        assertEquals(0, failed.size());
+        assertEquals(3, delegate.attempts.get());
+        assertEquals(2, sender.getRetryCount());
+    }
+
+    @Test
+    public void testMessageFailsWhenRetriesAreExhausted() {
+        FlakySender delegate = new FlakySender(10);
+        RetryingMessageSender sender = new RetryingMessageSender(delegate, "vm://test", "queue", 2, 1, 10,
+                new CircuitBreaker(0, 0), false, 0, 100, callback);
+
+        sender.send("body", "id1");
+        sender.close(10000);
+
+        assertEquals(0, sent.size());
+        assertEquals(1, failed.size());
+        assertEquals(3, delegate.attempts.get());
+    }
+
+    @Test
+    public void testOpenCircuitFailsFast() {
+        FlakySender delegate = new FlakySender(10);
+        RetryingMessageSender sender = new RetryingMessageSender(delegate, "vm://test", "queue", 0, 1, 10,
+                new CircuitBreaker(2, 60000), false, 0, 100, callback);
+
+        for (int i = 0; i < 5; i++) {
+            sender.send("body", "id" + i);
+        }
+        sender.close(10000);
+
+        assertEquals(5, failed.size());
+        assertEquals(2, delegate.attempts.get());
+        assertEquals(1, sender.getCircuitOpenCount());
+        assertTrue(failed.get(4).getError() instanceof CircuitBreakerOpenException);
+    }
+
+    @Test
+    public void testBufferedMessagesAreSentWhenCircuitCloses() {
+        FlakySender delegate = new FlakySender(2);
+        RetryingMessageSender sender = new RetryingMessageSender(delegate, "vm://test", "queue", 0, 1, 10,
+                new CircuitBreaker(2, 50), true, 60000, 100, callback);
+
+        for (int i = 0; i < 5; i++) {
+            sender.send("body", "id" + i);
+        }
+        sender.close(10000);
+
+        assertEquals(2, failed.size());
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void testBufferedMessagesFailAfterMaxBufferTime() {
+        FlakySender delegate = new FlakySender(1000);
+        RetryingMessageSender sender = new RetryingMessageSender(delegate, "vm://test", "queue", 0, 1, 10,
+                new CircuitBreaker(2, 60000), true, 200, 100, callback);
+
+        for (int i = 0; i < 5; i++) {
+            sender.send("body", "id" + i);
+        }
+        // the broker does not recover, the buffered messages fail rather than wait forever
+        assertTrue(sender.awaitCompletion(10000));
+        sender.close(0);
+
+        assertEquals(0, sent.size());
+        assertEquals(5, failed.size());
+        assertTrue(failed.get(4).getError() instanceof CircuitBreakerOpenException);
+    }
+
+    @Test
+    public void testPendingMessagesFailWhenCompletionTimesOut() {
+        FlakySender delegate = new FlakySender(1000);
+        RetryingMessageSender sender = new RetryingMessageSender(delegate, "vm://test", "queue", 0, 1, 10,
+                new CircuitBreaker(1, 60000), true, 60000, 100, callback);
+
+        sender.send("body", "id0");
+        sender.send("body", "id1");
+        assertFalse(sender.awaitCompletion(50));
+        assertEquals(1, sender.getPendingCount());
+
+        sender.close(50);
+        assertEquals(0, sender.getPendingCount());
+        assertEquals(2, failed.size());
+        assertTrue(failed.get(1).getError() instanceof TimeoutException);
+    }
+}
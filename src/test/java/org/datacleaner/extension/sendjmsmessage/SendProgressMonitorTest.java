@@ -0,0 +1,144 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class SendProgressMonitorTest {
+
+    final AtomicInteger sent = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final SendProgressMonitor.Counters counters = new SendProgressMonitor.Counters() {
+        @Override
+        public int getSentCount() {
+            return sent.get();
+        }
+
+        @Override
+        public int getFailedCount() {
+            return failed.get();
+        }
+
+        @Override
+        public int getSkippedCount() {
+            return 2;
+        }
+
+        @Override
+        public int getInFlightCount() {
+            return 7;
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return 40;
+        }
+
+        @Override
+        public int getConcurrencyLimit() {
+            return 0;
+        }
+
+        @Override
+        public int getOpenConnectionCount() {
+            return 4;
+        }
+
+        @Override
+        public int getOpenSessionCount() {
+            return 9;
+        }
+    };
+
+    @Test
+    public void testTickerPublishesSummaries() throws Exception {
+        final List<String> summaries = new CopyOnWriteArrayList<String>();
+        final SendProgressMonitor monitor = new SendProgressMonitor("vm://localhost", "queue", "sync send",
+                counters);
+        sent.set(1000);
+        failed.set(3);
+        monitor.start(20, new SendProgressMonitor.ProgressListener() {
+            @Override
+            public void onProgress(String summary) {
+                summaries.add(summary);
+            }
+        });
+        for (int i = 0; i < 100 && summaries.size() < 2; i++) {
+            Thread.sleep(20);
+        }
+        monitor.close();
+
+        assertTrue("Summaries: " + summaries, summaries.size() >= 2);
+        final String summary = summaries.get(0);
+        assertTrue(summary, summary.startsWith("Progress after 0:00:00: 1000 sent, 3 failed, 2 skipped, "
+                + "7 in flight, queue depth 40, "));
+        assertTrue(summary, summary.contains(" msgs/sec (average "));
+        assertFalse(summary, summary.contains("concurrency limit"));
+
+        // no more summaries once closed
+        final int count = summaries.size();
+        Thread.sleep(100);
+        assertEquals(count, summaries.size());
+    }
+
+    @Test
+    public void testMessagesPerSecondSinceLastSample() throws Exception {
+        final SendProgressMonitor monitor = new SendProgressMonitor("vm://localhost", "queue", "sync send",
+                counters);
+        monitor.sample();
+        assertEquals(0, monitor.getMessagesPerSecond(), 0);
+
+        sent.set(90);
+        failed.set(10);
+        Thread.sleep(100);
+        monitor.sample();
+        final double rate = monitor.getMessagesPerSecond();
+        assertTrue("Rate: " + rate, rate > 100 && rate <= 1000);
+
+        // no messages since the previous sample
+        Thread.sleep(10);
+        monitor.sample();
+        assertEquals(0, monitor.getMessagesPerSecond(), 0);
+        assertTrue(monitor.getAverageMessagesPerSecond() > 0);
+    }
+
+    @Test
+    public void testMBeanIsRegisteredUntilClosed() throws Exception {
+        final SendProgressMonitor monitor = new SendProgressMonitor("vm://localhost", "orders, eu", "sync send",
+                counters);
+        final ObjectName objectName = monitor.registerMBean();
+        assertNotNull(objectName);
+        assertEquals(SendProgressMonitor.OBJECT_NAME_DOMAIN, objectName.getDomain());
+
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        sent.set(42);
+        assertEquals(42, mBeanServer.getAttribute(objectName, "SentCount"));
+        assertEquals(40, mBeanServer.getAttribute(objectName, "QueueDepth"));
+        assertEquals("orders, eu", mBeanServer.getAttribute(objectName, "QueueName"));
+        assertEquals("sync send", mBeanServer.getAttribute(objectName, "ProducerTuning"));
+        assertEquals(4, mBeanServer.getAttribute(objectName, "OpenConnectionCount"));
+        assertEquals(9, mBeanServer.getAttribute(objectName, "OpenSessionCount"));
+
+        // a second monitor of the same queue gets a name of its own
+        final SendProgressMonitor other = new SendProgressMonitor("vm://localhost", "orders, eu", "sync send",
+                counters);
+        final ObjectName otherName = other.registerMBean();
+        assertNotNull(otherName);
+        assertFalse(objectName.equals(otherName));
+        other.close();
+
+        monitor.close();
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+}
@@ -0,0 +1,111 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SenderRegistryTest {
+
+    /**
+     * Factory of fake senders which counts the senders created and closed.
+     */
+    static class CountingFactory implements SenderRegistry.SenderFactory {
+
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public JMSMessageSender createSender() {
+            created.incrementAndGet();
+            return new BrokerSetMessageSenderTest.FakeBrokerSender("fake") {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testSharesSenderOfSameQueue() throws Exception {
+        final SenderRegistry registry = new SenderRegistry();
+        final CountingFactory factory = new CountingFactory();
+
+        final JMSMessageSender lease1 = registry.lease("tcp://a", "queue", "config", 0, factory);
+        final JMSMessageSender lease2 = registry.lease("tcp://a", "queue", "config", 0, factory);
+        assertTrue(lease1.sendMessage("tcp://a", "queue", "body", "1").isSuccessful());
+        assertEquals(1, factory.created.get());
+        assertEquals(1, registry.getSenderCount());
+
+        lease1.close();
+        // closing twice does not release twice
+        lease1.close();
+        assertEquals(0, factory.closed.get());
+        lease2.close();
+        assertEquals(1, factory.closed.get());
+        assertEquals(0, registry.getSenderCount());
+    }
+
+    @Test
+    public void testSeparateSenderForOtherQueueOrConfiguration() throws Exception {
+        final SenderRegistry registry = new SenderRegistry();
+        final CountingFactory factory = new CountingFactory();
+
+        final JMSMessageSender lease1 = registry.lease("tcp://a", "queue", "config", 0, factory);
+        final JMSMessageSender lease2 = registry.lease("tcp://a", "other", "config", 0, factory);
+        final JMSMessageSender lease3 = registry.lease("tcp://b", "queue", "config", 0, factory);
+        final JMSMessageSender lease4 = registry.lease("tcp://a", "queue", "other config", 0, factory);
+        assertEquals(4, factory.created.get());
+
+        lease1.close();
+        lease2.close();
+        lease3.close();
+        lease4.close();
+        assertEquals(4, factory.closed.get());
+    }
+
+    @Test
+    public void testIdleSenderIsReusedAndEvicted() throws Exception {
+        final SenderRegistry registry = new SenderRegistry();
+        final CountingFactory factory = new CountingFactory();
+
+        registry.lease("tcp://a", "queue", "config", 200, factory).close();
+        assertEquals(0, factory.closed.get());
+
+        // the next run within the idle time reuses the sender
+        registry.lease("tcp://a", "queue", "config", 200, factory).close();
+        assertEquals(1, factory.created.get());
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (factory.closed.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, factory.closed.get());
+        assertEquals(0, registry.getSenderCount());
+    }
+
+    @Test
+    public void testFailedCreationIsNotRegistered() throws Exception {
+        final SenderRegistry registry = new SenderRegistry();
+        try {
+            registry.lease("tcp://a", "queue", "config", 0, new SenderRegistry.SenderFactory() {
+                @Override
+                public JMSMessageSender createSender() throws Exception {
+                    throw new IllegalStateException("broker down");
+                }
+            });
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("broker down", e.getMessage());
+        }
+        assertEquals(0, registry.getSenderCount());
+
+        final CountingFactory factory = new CountingFactory();
+        registry.lease("tcp://a", "queue", "config", 0, factory).close();
+        assertEquals(1, factory.created.get());
+    }
+}
@@ -0,0 +1,84 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class ShardedMessageSenderTest {
+
+    /**
+     * Sender which records the correlation IDs it is asked to send.
+     */
+    static class RecordingSender implements JMSMessageSender {
+
+        final List<String> correlationIds = new CopyOnWriteArrayList<String>();
+        String queueName;
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String brokerUrl, String jmsQueueName, String messageBody,
+                String correlationId) {
+            queueName = jmsQueueName;
+            correlationIds.add(correlationId);
+            return SendMessageToJMSQueueResult.success();
+        }
+
+        @Override
+        public SendMessageToJMSQueueResult sendMessage(String messageBody, String correlationId,
+                Map<String, Object> properties) {
+            if ("fail".equals(messageBody)) {
+                throw new IllegalStateException("broker unavailable");
+            }
+            correlationIds.add(correlationId);
+            return SendMessageToJMSQueueResult.success();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final RecordingSender[] senders = new RecordingSender[] { new RecordingSender(), new RecordingSender(),
+            new RecordingSender() };
+    private final ShardedMessageSender sender = new ShardedMessageSender(new String[] { "vm://a", "vm://a",
+            "vm://b" }, new String[] { "q1", "q2", "q3" }, senders);
+
+    @Test
+    public void testSameIdAlwaysGoesToSameShard() {
+        for (int i = 0; i < 3000; i++) {
+            sender.sendMessage("vm://ignored", "ignored", "body", "id" + (i % 100));
+        }
+        for (int shard = 0; shard < senders.length; shard++) {
+            final List<String> ids = senders[shard].correlationIds;
+            // roughly a third of the IDs per shard
+            assertTrue(ids.size() > 600);
+            for (String id : ids) {
+                assertEquals(shard, sender.getShardIndex(id));
+            }
+            assertEquals("q" + (shard + 1), senders[shard].queueName);
+        }
+        assertEquals(sender.getShardIndex("id42"), new ShardedMessageSender(new String[] { "x", "y", "z" },
+                new String[] { "x", "y", "z" }, senders).getShardIndex("id42"));
+    }
+
+    @Test
+    public void testStatisticsPerShard() {
+        final int shard = sender.getShardIndex("id1");
+        sender.sendMessage("body", "id1", null);
+        sender.sendMessage("fail", "id1", null);
+
+        final List<DestinationStatistics> statistics = sender.getShardStatistics();
+        assertEquals(3, statistics.size());
+        assertEquals("q" + (shard + 1) + "@" + (shard == 2 ? "vm://b" : "vm://a"), statistics.get(shard)
+                .getName());
+        assertEquals(1, statistics.get(shard).getSuccessCount());
+        assertEquals(1, statistics.get(shard).getFailureCount());
+        assertEquals(2, statistics.get(shard).getSendTimes().getCount());
+        assertFalse(sender.sendMessage("fail", "id1", null).isSuccessful());
+    }
+}
@@ -0,0 +1,117 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingMessageSenderTest {
+
+    BrokerService broker;
+    MessageConsumer consumer;
+    Connection connection;
+    Session session;
+
+    String brokerUrl = "tcp://localhost:61620";
+    String queueName = "some.queue.name";
+
+    MessageTemplate template = MessageTemplate.compile("<doc><id>ID</id><name>NAME</name></doc>", new String[] {
+            "ID", "NAME" });
+
+    @Before
+    public void prepare() throws Exception {
+        // broker
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        TransportConnector connector = new TransportConnector();
+        connector.setUri(new URI(brokerUrl));
+        broker.addConnector(connector);
+        broker.start();
+
+        // consumer
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(brokerUrl);
+        connection = connectionFactory.createConnection();
+        connection.start();
+        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Destination destination = session.createQueue(queueName);
+        consumer = session.createConsumer(destination);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        broker.stop();
+        consumer.close();
+        session.close();
+        connection.close();
+    }
+
+    @Test
+    public void testSendTemplate() throws Exception {
+        final StreamingMessageSender sender = new StreamingMessageSender(brokerUrl, queueName, template, "UTF-8",
+                "header\n", 0, Collections.<String, Object> emptyMap(), new ProducerTuning());
+        final List<Object> values = Arrays.<Object> asList(42, "J\u00f6rg");
+        assertTrue(sender.sendTemplate(values, "42").isSuccessful());
+
+        final BytesMessage message = (BytesMessage) consumer.receive(1000);
+        assertEquals("header\n<doc><id>42</id><name>J\u00f6rg</name></doc>", readBody(message));
+        assertEquals("42", message.getJMSCorrelationID());
+        assertEquals(BytesPayloadEncoder.CODEC_NONE, message.getStringProperty(BytesPayloadEncoder.CODEC_PROPERTY));
+        assertEquals("UTF-8", message.getStringProperty(BytesPayloadEncoder.CHARSET_PROPERTY));
+        assertNull(message.getStringProperty(StreamingMessageSender.CHUNK_GROUP_PROPERTY));
+        assertEquals(message.getBodyLength(), sender.getSentBytes());
+
+        sender.close();
+    }
+
+    @Test
+    public void testSendTemplateInChunks() throws Exception {
+        final StreamingMessageSender sender = new StreamingMessageSender(brokerUrl, queueName, template, "UTF-8",
+                null, 16, Collections.<String, Object> emptyMap(), new ProducerTuning());
+        final List<Object> values = Arrays.<Object> asList(42, null);
+        assertTrue(sender.sendTemplate(values, "42").isSuccessful());
+
+        // "<doc><id>42</id><name></name></doc>" is 35 bytes
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String chunkGroup = null;
+        for (int i = 0; i < 3; i++) {
+            final BytesMessage message = (BytesMessage) consumer.receive(1000);
+            assertEquals(i, message.getIntProperty(StreamingMessageSender.CHUNK_INDEX_PROPERTY));
+            assertEquals(3, message.getIntProperty(StreamingMessageSender.CHUNK_COUNT_PROPERTY));
+            if (chunkGroup == null) {
+                chunkGroup = message.getStringProperty(StreamingMessageSender.CHUNK_GROUP_PROPERTY);
+            }
+            assertEquals(chunkGroup, message.getStringProperty(StreamingMessageSender.CHUNK_GROUP_PROPERTY));
+            assertEquals(chunkGroup, message.getStringProperty("JMSXGroupID"));
+            assertEquals("42", message.getJMSCorrelationID());
+            body.write(readBody(message).getBytes("UTF-8"));
+        }
+        assertEquals("<doc><id>42</id><name></name></doc>", body.toString("UTF-8"));
+        assertNull(consumer.receive(100));
+
+        sender.close();
+    }
+
+    private static String readBody(BytesMessage message) throws Exception {
+        final byte[] bytes = new byte[(int) message.getBodyLength()];
+        message.readBytes(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,53 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ThreadSessionsTest {
+
+    @Test
+    public void testEachThreadKeepsItsOwnSession() throws Exception {
+        final ThreadSessions<ThreadSession> threadSessions = new ThreadSessions<ThreadSession>(
+                "vm://threadsessions?broker.persistent=false", "queue", new ProducerTuning(), false) {
+            @Override
+            protected ThreadSession createThreadSession() {
+                return new ThreadSession(this);
+            }
+        };
+        final ThreadSession threadSession = threadSessions.get();
+        assertSame(threadSession, threadSessions.get());
+        assertFalse(threadSession.isOpen());
+        threadSession.send(threadSession.getSession().createTextMessage("hello"));
+        assertEquals(1, threadSessions.getOpenSessionCount());
+
+        final AtomicReference<ThreadSession> otherSession = new AtomicReference<ThreadSession>();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                otherSession.set(threadSessions.get());
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotSame(threadSession, otherSession.get());
+        assertEquals(2, threadSessions.getAll().size());
+        // opened on first use only
+        assertEquals(1, threadSessions.getOpenSessionCount());
+
+        // after an error the next use opens a new session
+        threadSession.closeSession();
+        assertEquals(0, threadSessions.getOpenSessionCount());
+        threadSession.send(threadSession.getSession().createTextMessage("hello again"));
+        assertTrue(threadSession.isOpen());
+
+        threadSessions.close();
+        assertEquals(0, threadSessions.getOpenSessionCount());
+    }
+}
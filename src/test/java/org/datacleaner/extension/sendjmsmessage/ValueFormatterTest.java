@@ -0,0 +1,77 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ValueFormatterTest {
+
+    @Test
+    public void testNumbersWithoutPattern() {
+        final ValueFormatter formatter = ValueFormatter.create(Number.class, null);
+        assertEquals("42", formatter.format(42));
+        assertEquals("-12345678901", formatter.format(-12345678901L));
+        assertEquals("1.5", formatter.format(1.5d));
+        assertEquals("2.5", formatter.format(2.5f));
+        assertEquals("1E+3", formatter.format(new BigDecimal("1E+3")));
+        // values of another type than the column's
+        assertEquals("abc", formatter.format("abc"));
+    }
+
+    @Test
+    public void testNumbersWithPattern() {
+        final ValueFormatter formatter = ValueFormatter.create(Double.class, "#0.00");
+        assertEquals("1.50", formatter.format(1.5d));
+        assertEquals("42.00", formatter.format(42));
+        assertEquals("0.10", formatter.format(new BigDecimal("0.1")));
+    }
+
+    @Test
+    public void testDates() {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2015, Calendar.OCTOBER, 16, 13, 45, 30);
+        final Date date = calendar.getTime();
+
+        assertEquals("2015-10-16T13:45:30", ValueFormatter.create(Date.class, "yyyy-MM-dd'T'HH:mm:ss").format(date));
+        assertSame(ValueFormatter.DEFAULT, ValueFormatter.create(Date.class, " "));
+        assertEquals(date.toString(), ValueFormatter.create(Date.class, null).format(date));
+    }
+
+    @Test
+    public void testUnknownTypeChoosesPatternPerValue() {
+        final ValueFormatter dateFormatter = ValueFormatter.create(Object.class, "yyyy");
+        final Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2015, Calendar.OCTOBER, 16);
+        assertEquals("2015", dateFormatter.format(calendar.getTime()));
+        assertEquals("7", dateFormatter.format(7));
+
+        final ValueFormatter numberFormatter = ValueFormatter.create(null, "0.0");
+        assertEquals("7.0", numberFormatter.format(7));
+        assertEquals("abc", numberFormatter.format("abc"));
+    }
+
+    @Test
+    public void testStringsArePassedThrough() {
+        assertSame(ValueFormatter.DEFAULT, ValueFormatter.create(String.class, "#0.00"));
+        final String value = "abc";
+        assertSame(value, ValueFormatter.DEFAULT.format(value));
+    }
+
+    @Test
+    public void testInvalidPattern() {
+        try {
+            ValueFormatter.create(Date.class, "yyyy-qq");
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.datacleaner.extension.sendjmsmessage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class VirtualThreadSendExecutorTest {
+
+    final AtomicInteger handled = new AtomicInteger();
+    final AtomicInteger failed = new AtomicInteger();
+    final SendMessageCallback callback = new SendMessageCallback() {
+        @Override
+        public void onSuccess(String correlationId) {
+        }
+
+        @Override
+        public void onFailure(SendMessageToJMSQueueResult failure) {
+            failed.incrementAndGet();
+        }
+    };
+
+    @Test
+    public void testAllSubmittedMessagesAreHandledWithinTheLimit() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(8,
+                new AsyncSendPipeline.MessageHandler() {
+                    @Override
+                    public void handle(String messageBody, String correlationId) {
+                        final int current = inFlight.incrementAndGet();
+                        synchronized (maxInFlight) {
+                            maxInFlight.set(Math.max(maxInFlight.get(), current));
+                        }
+                        try {
+                            // a blocking send to a slow broker
+                            Thread.sleep(2);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        inFlight.decrementAndGet();
+                        if ("fail".equals(messageBody)) {
+                            throw new IllegalStateException("broker is down");
+                        }
+                        handled.incrementAndGet();
+                    }
+                }, callback);
+        assertEquals(VirtualThreadSendExecutor.isVirtualThreadsSupported(), executor.isUsingVirtualThreads());
+
+        for (int i = 0; i < 500; i++) {
+            executor.submit(i % 10 == 0 ? "fail" : "ok", "id" + i);
+        }
+        executor.awaitCompletion();
+        assertEquals(0, executor.getInFlightCount());
+        assertEquals(450, handled.get());
+        assertEquals(50, failed.get());
+        assertTrue("Max in flight: " + maxInFlight.get(), maxInFlight.get() <= 8);
+        // sends overlap rather than running one at a time
+        assertTrue("Max in flight: " + maxInFlight.get(), maxInFlight.get() > 1);
+
+        executor.close();
+    }
+
+    @Test
+    public void testErrorsAreReportedAsFailures() throws Exception {
+        final VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(8,
+                new AsyncSendPipeline.MessageHandler() {
+                    @Override
+                    public void handle(String messageBody, String correlationId) {
+                        if ("fail".equals(messageBody)) {
+                            throw new LinkageError("JMS client class could not be loaded");
+                        }
+                        handled.incrementAndGet();
+                    }
+                }, callback);
+
+        for (int i = 0; i < 100; i++) {
+            executor.submit(i % 10 == 0 ? "fail" : "ok", "id" + i);
+        }
+        executor.awaitCompletion();
+        assertEquals(90, handled.get());
+        assertEquals(10, failed.get());
+
+        executor.close();
+    }
+}